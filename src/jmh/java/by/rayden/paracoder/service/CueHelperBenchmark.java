@@ -0,0 +1,88 @@
+package by.rayden.paracoder.service;
+
+import by.rayden.paracoder.utils.OutUtils;
+import org.apache.commons.io.file.PathUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of a synthetic CUE file into the track payloads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CueHelperBenchmark {
+    private static final String AUDIO_FILE_NAME = "Artist - Album.flac";
+
+    @Param({"12", "99"})
+    private int trackCount;
+
+    private final CueHelper cueHelper = new CueHelper();
+    private Path cueDir;
+    private Path cueFilePath;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.cueDir = Files.createTempDirectory("paracoder-cue");
+        Files.createFile(this.cueDir.resolve(AUDIO_FILE_NAME));
+        this.cueFilePath = Files.writeString(this.cueDir.resolve("Artist - Album.cue"), createCueSheet(),
+            StandardCharsets.UTF_8);
+
+        // The parsing messages are printed to the console asynchronously, so they are dropped instead
+        // of redirecting System.out
+        OutUtils.setSilent(true);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        OutUtils.setSilent(false);
+        PathUtils.deleteDirectory(this.cueDir);
+    }
+
+    @Benchmark
+    public List<CueTrackPayload> getAllCueTracksPayloadList() throws IOException {
+        return this.cueHelper.getAllCueTracksPayloadList(this.cueFilePath);
+    }
+
+    private String createCueSheet() {
+        var cueSheet = new StringBuilder()
+            .append("REM GENRE \"Pop Rock\"\n")
+            .append("REM DATE 2013\n")
+            .append("REM DISCID AE09C50C\n")
+            .append("REM COMMENT \"ExactAudioCopy v1.0b3\"\n")
+            .append("PERFORMER \"Artist\"\n")
+            .append("TITLE \"Album\"\n")
+            .append("FILE \"").append(AUDIO_FILE_NAME).append("\" WAVE\n");
+
+        for (int track = 1; track <= this.trackCount; track++) {
+            int startSeconds = (track - 1) * 45;
+            cueSheet.append(String.format(Locale.ROOT, "  TRACK %02d AUDIO\n", track))
+                    .append("    TITLE \"Track title ").append(track).append("\"\n")
+                    .append("    PERFORMER \"Artist\"\n")
+                    .append(String.format(Locale.ROOT, "    INDEX 01 %02d:%02d:%02d\n",
+                        startSeconds / 60, startSeconds % 60, track % 75));
+        }
+        return cueSheet.toString();
+    }
+}
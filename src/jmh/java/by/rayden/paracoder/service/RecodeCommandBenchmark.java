@@ -0,0 +1,101 @@
+package by.rayden.paracoder.service;
+
+import by.rayden.paracoder.config.PatternProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The command building of one job, which is done for each file of the input tree.
+ * The templates are like the ones of "paracoder_commands.yml".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecodeCommandBenchmark {
+    private static final String FFMPEG =
+        "\"c:\\Rip\\ffmpeg\\bin\\ffmpeg.exe\" -hide_banner -loglevel error -nostats -nostdin";
+    private static final String OPUS = "\"c:\\Rip\\opus-tools\\opusenc.exe\" --quiet --music --vbr";
+
+    private RecodeCommand recodeCommand;
+    private Path filePath;
+    private CueTrackPayload cueTrackPayload;
+    private String dirtyFileName;
+
+    @Setup
+    public void setUp() {
+        var patternProperties = new PatternProperties();
+        patternProperties.setCommandTemplate(Map.of(
+            "flac", OPUS + " --bitrate 192 \"{{F}}\" \"{{D}}{{P}}{{N}}.opus\"",
+            "any", FFMPEG + " -i \"{{F}}\" -c:a libopus -b:a 192k \"{{D}}{{P}}{{N}}.opus\"",
+            "cue_any", FFMPEG + " -i \"{{F}}\" -c:a libopus -b:a 192k -ss {{CUE_ST}} {{CUE_TO}} {{CUE_METADATA}}"
+                + " \"{{D}}{{P}}{{CUE_NUM}}. {{CUE_TITLE}}.opus\""));
+        this.recodeCommand = new RecodeCommand(patternProperties);
+
+        this.filePath = Path.of("/music/Artist/2013 - Album/07. Some track title.flac");
+        Path audioFilePath = Path.of("/music/Artist/2013 - Album/Artist - Album.wav");
+        this.cueTrackPayload = CueTrackPayload
+            .builder()
+            .trackNumber(7)
+            .totalTracks(12)
+            .title("Some track: \"title\" / part 2?")
+            .performer("Some performer")
+            .album("Some album")
+            .year(2013)
+            .genre("Pop Rock")
+            .comment("ExactAudioCopy v1.0b3")
+            .discId("AE09C50C")
+            .startTime(CueTime.ofMsf(21, 3, 42))
+            .endTime(CueTime.ofMsf(25, 41, 9))
+            .audioFilePath(audioFilePath)
+            .sourceFilePath(audioFilePath.resolveSibling("Artist - Album.cue"))
+            .audioFileTime(FileTime.fromMillis(0))
+            .build();
+        this.dirtyFileName = "AC/DC: Who Made Who? <Live> \"1986\" | Remastered *";
+    }
+
+    @Benchmark
+    public String getFileCommand() {
+        return this.recodeCommand.getCommand(this.filePath);
+    }
+
+    @Benchmark
+    public String getCueTrackCommand() {
+        return this.recodeCommand.getCommand(this.cueTrackPayload);
+    }
+
+    @Benchmark
+    public ResolvedCommand resolveFileCommand() {
+        return this.recodeCommand.resolveCommand(this.filePath);
+    }
+
+    @Benchmark
+    public ResolvedCommand resolveCueTrackCommand() {
+        return this.recodeCommand.resolveCommand(this.cueTrackPayload);
+    }
+
+    @Benchmark
+    public String makeFFMpegMetadata() {
+        return this.recodeCommand.makeFFMpegMetadata(this.cueTrackPayload);
+    }
+
+    @Benchmark
+    public String sanitizeFileName() {
+        return this.recodeCommand.sanitizeFileName(this.dirtyFileName);
+    }
+}
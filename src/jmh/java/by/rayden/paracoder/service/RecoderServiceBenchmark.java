@@ -0,0 +1,35 @@
+package by.rayden.paracoder.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting the target file of a job from its command (the last quoted string).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RecoderServiceBenchmark {
+    private final String fileCommand = "\"c:\\Rip\\ffmpeg\\bin\\ffmpeg.exe\" -hide_banner -loglevel error -nostats"
+        + " -nostdin -i \"/music/Artist/2013 - Album/Artist - Album.wav\" -c:a libopus -b:a 192k"
+        + " -ss 00:21:03.560 -to 00:25:41.120 -metadata TITLE=\"Some track title\" -metadata TRACK=\"07\""
+        + " \"/music/Artist/2013 - Album/07. Some track title.opus\"";
+
+    @Benchmark
+    public Path getTargetFilePath() {
+        return RecoderService.getTargetFilePath(this.fileCommand);
+    }
+}
@@ -0,0 +1,87 @@
+package by.rayden.paracoder.service;
+
+import org.apache.commons.io.file.PathUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The walk of a synthetic "artist/album/track" tree by the sequential {@link CollectToMapFileVisitor}
+ * (the baseline) and by the {@link ParallelTreeWalker}.
+ * <p>
+ * Set the "paracoder.benchmark.dir" system property to build the tree on a specific (e.g. network) drive.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeWalkerBenchmark {
+    private static final Set<String> EXTENSIONS = Set.of("flac", "cue");
+    private static final int TRACK_COUNT = 20;
+
+    /**
+     * The number of artists and of albums per artist. The largest tree has about 100k files (71 * 71 * 20).
+     */
+    @Param({"5", "30", "71"})
+    private int dirCount;
+
+    private Path treeRoot;
+
+    @Setup
+    public void createTree() throws IOException {
+        String benchmarkDir = System.getProperty("paracoder.benchmark.dir");
+        this.treeRoot = benchmarkDir == null
+            ? Files.createTempDirectory("paracoder-tree")
+            : Files.createTempDirectory(Path.of(benchmarkDir), "paracoder-tree");
+
+        for (int artist = 0; artist < this.dirCount; artist++) {
+            for (int album = 0; album < this.dirCount; album++) {
+                Path albumDir = Files.createDirectories(
+                    this.treeRoot.resolve("artist" + artist).resolve("album" + album));
+                for (int track = 0; track < TRACK_COUNT; track++) {
+                    // Every other file doesn't match, so the filter is a part of the work
+                    String extension = (track % 2 == 0) ? ".flac" : ".log";
+                    Files.createFile(albumDir.resolve(track + extension));
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void deleteTree() throws IOException {
+        PathUtils.deleteDirectory(this.treeRoot);
+    }
+
+    @Benchmark
+    public Map<Path, BasicFileAttributes> sequentialWalk() throws IOException {
+        var fileVisitor = new CollectToMapFileVisitor(EXTENSIONS);
+        Files.walkFileTree(this.treeRoot, Set.<FileVisitOption>of(), Integer.MAX_VALUE, fileVisitor);
+        return fileVisitor.getPathTree();
+    }
+
+    @Benchmark
+    public Map<Path, BasicFileAttributes> parallelWalk() throws IOException {
+        return new ParallelTreeWalker(EXTENSIONS, Integer.MAX_VALUE, null).walk(List.of(this.treeRoot));
+    }
+}
@@ -1,6 +1,7 @@
 package by.rayden.paracoder.cli;
 
 import by.rayden.paracoder.cli.command.CommandController;
+import by.rayden.paracoder.utils.OutUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.fusesource.jansi.AnsiConsole;
 import org.springframework.boot.CommandLineRunner;
@@ -71,6 +72,7 @@ public class ParaCoderCliRunner implements CommandLineRunner, ExitCodeGenerator
             AnsiConsole.systemInstall();
             this.exitCode = new CommandLine(this.commandController, this.cliFactory).execute(unicodeArgs);
         } finally {
+            OutUtils.flush();
             AnsiConsole.systemUninstall();
             log.info("ParaCoder completed.");
         }
@@ -1,8 +1,11 @@
 package by.rayden.paracoder.cli.command;
 
 import by.rayden.paracoder.cli.PropertiesVersionProvider;
+import by.rayden.paracoder.service.FolderWatchService;
 import by.rayden.paracoder.service.RecoderService;
+import by.rayden.paracoder.service.StorageConcurrencyLimiter;
 import lombok.Getter;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
@@ -10,6 +13,7 @@ import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -33,7 +37,13 @@ public class CommandController implements Callable<Integer> {
         This is a ParaCoder application
         to recode lossless audio files to different format using multiple threads.""";
 
+    /**
+     * The "--thread-count=auto" value: the thread count is adjusted to the system load while recoding.
+     */
+    public static final int AUTO_THREAD_COUNT = 0;
+
     private final RecoderService recoderService;
+    private final FolderWatchService folderWatchService;
 
     @Option(names = {"-pf", "--preserve-file-timestamp"},
         description = "Preserve original file timestamp (default: ${DEFAULT-VALUE}).")
@@ -55,18 +65,146 @@ public class CommandController implements Callable<Integer> {
     @Getter
     private boolean deleteSourceFilesToTrash = false;
 
+    @Option(names = {"-i", "--incremental"},
+        description = "Skip the source files which have not changed since their last successful recode. "
+            + "The recoded files are remembered in the '.paracoder-manifest' file of each input directory "
+            + "(default: ${DEFAULT-VALUE}).")
+    @Getter
+    private boolean incremental = false;
+
+    @Option(names = {"--journal"},
+        description = "Keep the state of the run in the '.paracoder-journal' file of each input directory, "
+            + "so a killed run can be continued by '--resume'. On start, the partial target files left by "
+            + "the journaled run are deleted. The journal is deleted when all the target files are done "
+            + "(default: ${DEFAULT-VALUE}).")
+    @Getter
+    private boolean journal = false;
+
+    @Option(names = {"--resume"},
+        description = "Continue the killed or failed journaled run: the target files done by it are skipped. "
+            + "Implies '--journal' (default: ${DEFAULT-VALUE}).")
+    @Getter
+    private boolean resume = false;
+
+    @Option(names = {"-s", "--stream"},
+        description = "Start recoding the files of each directory as soon as it is scanned, "
+            + "without waiting for the whole tree to be scanned (default: ${DEFAULT-VALUE}).")
+    @Getter
+    private boolean stream = false;
+
     @Option(names = {"-t", "--thread-count"},
         showDefaultValue = CommandLine.Help.Visibility.NEVER,
-        description = "The number of threads to use for recode (default: ${DEFAULT-VALUE}).")
+        converter = ThreadCountConverter.class,
+        description = "The number of threads to use for recode, or 'auto' to adjust it to the system load "
+            + "while recoding (default: ${DEFAULT-VALUE}).")
     @Getter
     private int threadCount = 4;
 
+    @Option(names = {"--max-reads-per-device"},
+        description = "The max number of jobs reading their source files from one storage device at once, "
+            + "e.g. 1 or 2 for a spinning disk. The other threads run the jobs of the other devices meanwhile "
+            + "(default: unlimited).")
+    @Getter
+    private int maxReadsPerDevice = StorageConcurrencyLimiter.UNLIMITED;
+
+    @Option(names = {"--max-writes-per-device"},
+        description = "The max number of jobs writing their target files to one storage device at once "
+            + "(default: unlimited).")
+    @Getter
+    private int maxWritesPerDevice = StorageConcurrencyLimiter.UNLIMITED;
+
+    @Option(names = {"--staging-dir"},
+        description = "Copy the audio files of the next jobs to this local directory ahead of their recoding, "
+            + "so the sources on a network share are read by large sequential copies (default: not copied).")
+    private Path stagingDir;
+
+    @Option(names = {"--staging-budget-mb"},
+        description = "The max total size of the audio files copied to the staging directory at once "
+            + "(default: ${DEFAULT-VALUE}).")
+    @Getter
+    private int stagingBudgetMb = 2048;
+
+    @Option(names = {"--stall-timeout-seconds"},
+        description = "Kill the processes of a job, which has made no progress for this time: neither its processes "
+            + "have used the CPU nor its output files have grown. 0 to wait until the deadline, which is scaled "
+            + "from the audio duration (default: ${DEFAULT-VALUE}).")
+    @Getter
+    private int stallTimeoutSeconds = 30;
+
+    @Option(names = {"--bridge-pipes"},
+        description = "Pump the data between the piped processes of a recode command through the application "
+            + "instead of connecting them directly (default: ${DEFAULT-VALUE}).")
+    @Getter
+    private boolean bridgePipes = false;
+
+    @Option(names = {"--virtual-threads"},
+        description = "Run each recode job in a virtual thread, so waiting for the processes doesn't hold OS threads. "
+            + "The thread count limits the number of recode commands running at once (default: ${DEFAULT-VALUE}).")
+    @Getter
+    private boolean virtualThreads = false;
+
+    @Option(names = {"--cache-dir"},
+        description = "The directory of the cache of recoded files. A byte-identical source recoded "
+            + "by the same command is copied from the cache instead of recoding (default: no cache).")
+    private Path cacheDir;
+
+    @Option(names = {"--metrics-json"},
+        description = "Write the run metrics (the end-of-run report and the metrics of every job) "
+            + "to this JSON file (default: not written).")
+    private Path metricsJson;
+
+    @Option(names = {"--plain-output"},
+        description = "Don't draw the live progress view, just append the messages. It is never drawn "
+            + "when the output is redirected (default: ${DEFAULT-VALUE}).")
+    @Getter
+    private boolean plainOutput = false;
+
+    @Option(names = {"--process-log-dir"},
+        description = "Keep the output of the processes of every job in a log file in this directory. "
+            + "The output is never shown on the console, only its tail when a job fails "
+            + "(default: the output is deleted when its job is completed).")
+    private Path processLogDir;
+
+    @Option(names = {"-w", "--watch"},
+        description = "Keep running after the input directories are recoded, and recode the new files "
+            + "dropped into them. Combine with '--incremental' to skip the files recoded before "
+            + "(default: ${DEFAULT-VALUE}).")
+    @Getter
+    private boolean watch = false;
+
+    @Option(names = {"--watch-settle-seconds"},
+        description = "In the watch mode, a new file is recoded when it hasn't changed for this time, "
+            + "so it is not being copied anymore (default: ${DEFAULT-VALUE}).")
+    @Getter
+    private int watchSettleSeconds = 10;
+
     @Parameters(description = "Files and directories to recode")
     private List<Path> inputPathList;
 
 
-    public CommandController(RecoderService recoderService) {
+    public CommandController(RecoderService recoderService, FolderWatchService folderWatchService) {
         this.recoderService = recoderService;
+        this.folderWatchService = folderWatchService;
+    }
+
+    @Nullable
+    public Path getCacheDir() {
+        return this.cacheDir;
+    }
+
+    @Nullable
+    public Path getMetricsJson() {
+        return this.metricsJson;
+    }
+
+    @Nullable
+    public Path getStagingDir() {
+        return this.stagingDir;
+    }
+
+    @Nullable
+    public Path getProcessLogDir() {
+        return this.processLogDir;
     }
 
     public List<Path> getInputPathList() {
@@ -76,12 +214,51 @@ public class CommandController implements Callable<Integer> {
     @Override
     public Integer call() {
         var paraCoderParams = new Params(getInputPathList(), this.preserveFileTimestamp, this.preserveDirTimestamp,
-            this.recurse, this.deleteSourceFilesToTrash);
+            this.recurse, this.deleteSourceFilesToTrash, this.incremental, this.journal, this.resume, this.stream,
+            this.threadCount, this.maxReadsPerDevice, this.maxWritesPerDevice, this.stagingDir, this.stagingBudgetMb,
+            this.cacheDir, this.metricsJson, this.plainOutput);
 
+        if (this.watch) {
+            return this.folderWatchService.watch(paraCoderParams, Duration.ofSeconds(this.watchSettleSeconds));
+        }
         return this.recoderService.recode(paraCoderParams);
     }
 
+    static class ThreadCountConverter implements CommandLine.ITypeConverter<Integer> {
+        @Override
+        public Integer convert(String value) {
+            if ("auto".equalsIgnoreCase(value)) {
+                return AUTO_THREAD_COUNT;
+            }
+
+            int threadCount = Integer.parseInt(value);
+            if (threadCount < 1) {
+                throw new CommandLine.TypeConversionException("'" + value + "' is not a positive number or 'auto'");
+            }
+            return threadCount;
+        }
+    }
+
+    /**
+     * @param threadCount        the thread count, or {@link #AUTO_THREAD_COUNT}
+     * @param maxReadsPerDevice  the limit, or {@link StorageConcurrencyLimiter#UNLIMITED}
+     * @param maxWritesPerDevice the limit, or {@link StorageConcurrencyLimiter#UNLIMITED}
+     * @param stagingDir         the staging directory, or null when the audio files are read in place
+     */
     public record Params(List<Path> inputPathList, boolean preserveFileTimestamp, boolean preserveDirTimestamp,
-                         boolean recurse, boolean deleteSourceFilesToTrash) {
+                         boolean recurse, boolean deleteSourceFilesToTrash, boolean incremental, boolean journal,
+                         boolean resume, boolean stream, int threadCount, int maxReadsPerDevice, int maxWritesPerDevice,
+                         @Nullable Path stagingDir, int stagingBudgetMb, @Nullable Path cacheDir,
+                         @Nullable Path metricsJson, boolean plainOutput) {
+
+        /**
+         * The same params for other input paths (the new files in the watch mode).
+         */
+        public Params withInputPathList(List<Path> paths) {
+            return new Params(List.copyOf(paths), this.preserveFileTimestamp, this.preserveDirTimestamp,
+                this.recurse, this.deleteSourceFilesToTrash, this.incremental, this.journal, this.resume,
+                this.stream, this.threadCount, this.maxReadsPerDevice, this.maxWritesPerDevice, this.stagingDir,
+                this.stagingBudgetMb, this.cacheDir, this.metricsJson, this.plainOutput);
+        }
     }
 }
@@ -4,7 +4,9 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -19,4 +21,66 @@ import java.util.Set;
 public class PatternProperties {
     private Set<String> fileExtensions;
     private Map<String, String> commandTemplate;
+
+    /**
+     * The templates to recode the files of an extension into several formats at once.
+     * They take precedence over the {@link #commandTemplate} of the same extension.
+     */
+    private Map<String, TeeTemplate> teeTemplate = Map.of();
+
+    /**
+     * The templates already split into the stages of the pipe and the args, with the same keys as the
+     * {@link #commandTemplate}. They take precedence over the {@link #commandTemplate} of the same key.
+     */
+    private Map<String, ArgvTemplate> argvTemplate = Map.of();
+
+    /**
+     * The templates to split a CUE image by one process, with the same keys as the CUE {@link #commandTemplate}.
+     * They take precedence over the {@link #commandTemplate} and the {@link #argvTemplate} of the same key.
+     */
+    private Map<String, CueSplitTemplate> cueSplitTemplate = Map.of();
+
+    /**
+     * The source is decoded once by the decoder command, which writes to its standard output.
+     * All the encoder commands read that output from their standard input at the same time.
+     */
+    @Getter
+    @Setter
+    public static class TeeTemplate {
+        private String decoder;
+        private List<String> encoders = List.of();
+    }
+
+    /**
+     * Each arg is passed to the process as is (the placeholders are resolved), nothing is quoted or split.
+     */
+    @Getter
+    @Setter
+    public static class ArgvTemplate {
+        private List<List<String>> stages = List.of();
+
+        /**
+         * The target file of the command. If not set, it is the last quoted arg of the command text.
+         */
+        @Nullable
+        private String output;
+    }
+
+    /**
+     * The audio file is decoded once, and all its tracks are written at the same time: the split command is
+     * the input part followed by the output part of each track.
+     */
+    @Getter
+    @Setter
+    public static class CueSplitTemplate {
+        /**
+         * The command up to the input file (the CUE placeholders are not resolved in it).
+         */
+        private String input;
+
+        /**
+         * The output options of one track, which end with its target file.
+         */
+        private String output;
+    }
 }
@@ -0,0 +1,121 @@
+package by.rayden.paracoder.service;
+
+import by.rayden.paracoder.service.SystemLoadMonitor.SystemLoad;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.VisibleForTesting;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Adjusts the number of concurrent recode jobs to the system load ("--thread-count=auto").
+ * <p>
+ * The recoders are mostly CPU-bound, but the best job count depends on the source format, the storage
+ * and on what else runs on the machine. So the job count is started at the CPU count and then changed
+ * by one step at a time: it is increased while the CPUs are not saturated and the run queue is short,
+ * and decreased when the CPUs are saturated and the run queue is longer than the CPU count.
+ */
+@Slf4j
+public class AdaptiveConcurrencyController implements AutoCloseable {
+    private static final long SAMPLE_PERIOD_MILLIS = 2_000;
+
+    /**
+     * The number of samples to wait after a change before the next one,
+     * so the started (or finished) recoders have time to show up in the load.
+     */
+    private static final int SAMPLES_BETWEEN_CHANGES = 2;
+
+    private static final double GROW_BELOW_CPU_UTILISATION = 0.85;
+    private static final double SHRINK_ABOVE_CPU_UTILISATION = 0.97;
+    private static final double SHRINK_ABOVE_RUN_QUEUE_PER_CPU = 1.5;
+
+    /**
+     * A recode job may be a pipe of two processes, and some of the time is spent on I/O,
+     * so more jobs than CPUs may still be useful.
+     */
+    private static final int MAX_JOBS_PER_CPU = 2;
+
+    private final SystemLoadMonitor systemLoadMonitor;
+    private final IntConsumer concurrencySetter;
+    private final ScheduledExecutorService scheduler;
+
+    private int concurrency;
+    private int samplesSinceChange;
+
+    /**
+     * @param concurrencySetter applies the new job count, called from the controller thread
+     */
+    public AdaptiveConcurrencyController(SystemLoadMonitor systemLoadMonitor, IntConsumer concurrencySetter) {
+        this.systemLoadMonitor = systemLoadMonitor;
+        this.concurrencySetter = concurrencySetter;
+        this.concurrency = getInitialConcurrency();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("concurrency-controller").daemon().factory());
+    }
+
+    public static int getInitialConcurrency() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public static int getMaxConcurrency() {
+        return Runtime.getRuntime().availableProcessors() * MAX_JOBS_PER_CPU;
+    }
+
+    public void start() {
+        // The first sample is only the base for the CPU utilisation of the next one
+        this.systemLoadMonitor.sample();
+        this.scheduler.scheduleWithFixedDelay(this::adjust, SAMPLE_PERIOD_MILLIS, SAMPLE_PERIOD_MILLIS,
+            TimeUnit.MILLISECONDS);
+    }
+
+    private void adjust() {
+        try {
+            SystemLoad systemLoad = this.systemLoadMonitor.sample();
+            this.samplesSinceChange++;
+            if (this.samplesSinceChange < SAMPLES_BETWEEN_CHANGES) {
+                return;
+            }
+
+            int newConcurrency = getNextConcurrency(this.concurrency, systemLoad);
+            if (newConcurrency != this.concurrency) {
+                log.debug("Recode thread count {} -> {} (CPU {}%, run queue {})", this.concurrency, newConcurrency,
+                    Math.round(systemLoad.cpuUtilisation() * 100), systemLoad.runQueueLength());
+                this.concurrency = newConcurrency;
+                this.samplesSinceChange = 0;
+                this.concurrencySetter.accept(newConcurrency);
+            }
+        } catch (RuntimeException e) {
+            // An exception would cancel the next runs
+            log.warn("Error on adjusting the recode thread count", e);
+        }
+    }
+
+    @VisibleForTesting
+    static int getNextConcurrency(int concurrency, SystemLoad systemLoad) {
+        int cpuCount = systemLoad.cpuCount();
+        double runQueueLength = systemLoad.runQueueLength();
+        // The run queue is unknown on Windows, so only the CPU utilisation is used there
+        boolean isRunQueueKnown = !Double.isNaN(runQueueLength);
+
+        boolean isOverloaded = systemLoad.cpuUtilisation() > SHRINK_ABOVE_CPU_UTILISATION
+            && (!isRunQueueKnown || runQueueLength > cpuCount * SHRINK_ABOVE_RUN_QUEUE_PER_CPU);
+        if (isOverloaded) {
+            return Math.max(1, concurrency - 1);
+        }
+
+        boolean isUnderloaded = systemLoad.cpuUtilisation() < GROW_BELOW_CPU_UTILISATION
+            && (!isRunQueueKnown || runQueueLength < cpuCount);
+        if (isUnderloaded) {
+            return Math.min(cpuCount * MAX_JOBS_PER_CPU, concurrency + 1);
+        }
+
+        return concurrency;
+    }
+
+    @Override
+    public void close() {
+        this.scheduler.shutdownNow();
+    }
+}
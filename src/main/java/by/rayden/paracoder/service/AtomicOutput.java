@@ -0,0 +1,81 @@
+package by.rayden.paracoder.service;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * The recode commands write the partial files next to the target files, and a partial file is renamed
+ * to its target file only when the job succeeds. So a killed or failed job never leaves a half-written target file.
+ * <p>
+ * The partial file keeps the extension of the target file, since the encoders choose the format by it.
+ */
+@Slf4j
+@UtilityClass
+public class AtomicOutput {
+    public static final String PARTIAL_MARKER = ".paracoder-part";
+
+    /**
+     * "01. Title.opus" -> "01. Title.paracoder-part.opus"
+     */
+    public Path toPartialPath(Path targetFilePath) {
+        String fileName = targetFilePath.getFileName().toString();
+        String extension = FilenameUtils.getExtension(fileName);
+        String partialName = extension.isEmpty()
+            ? fileName + PARTIAL_MARKER
+            : FilenameUtils.removeExtension(fileName) + PARTIAL_MARKER + "." + extension;
+        return targetFilePath.resolveSibling(partialName);
+    }
+
+    /**
+     * Renames each partial file to its target file, replacing the existing one.
+     * A partial file which is the target file itself (the command can't be redirected) is left as is.
+     */
+    public void commit(List<Path> partialFilePaths, List<Path> targetFilePaths) throws IOException {
+        for (int i = 0; i < partialFilePaths.size(); i++) {
+            Path partialFilePath = partialFilePaths.get(i);
+            Path targetFilePath = targetFilePaths.get(i);
+            if (!partialFilePath.equals(targetFilePath)) {
+                move(partialFilePath, targetFilePath);
+            }
+        }
+    }
+
+    /**
+     * Deletes the partial files of a failed job (or the stale ones before the job is run).
+     * An error is logged only: the job result doesn't depend on it.
+     */
+    public void discard(List<Path> partialFilePaths, List<Path> targetFilePaths) {
+        for (int i = 0; i < partialFilePaths.size(); i++) {
+            Path partialFilePath = partialFilePaths.get(i);
+            if (partialFilePath.equals(targetFilePaths.get(i))) {
+                continue;
+            }
+            try {
+                if (Files.deleteIfExists(partialFilePath)) {
+                    log.debug("Partial file deleted: {}", partialFilePath);
+                }
+            } catch (IOException e) {
+                log.warn("Can't delete the partial file: {}", partialFilePath, e);
+            }
+        }
+    }
+
+    private void move(Path partialFilePath, Path targetFilePath) throws IOException {
+        try {
+            Files.move(partialFilePath, targetFilePath, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            log.debug("Atomic move is not supported: {} -> {}", partialFilePath, targetFilePath);
+            Files.move(partialFilePath, targetFilePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+        log.debug("Partial file committed: {} -> {}", partialFilePath, targetFilePath);
+    }
+}
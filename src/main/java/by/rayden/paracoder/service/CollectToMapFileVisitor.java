@@ -10,12 +10,20 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
+/**
+ * The sequential walker of the input paths, used with {@link Files#walkFileTree}.
+ * The recoder uses the {@link ParallelTreeWalker}, this visitor is the baseline of the walker benchmark.
+ */
 @Slf4j
 public class CollectToMapFileVisitor extends SimpleFileVisitor<Path> {
     // The expected number of entries in the pathTree.
@@ -25,8 +33,27 @@ public class CollectToMapFileVisitor extends SimpleFileVisitor<Path> {
     private final Set<String> extensions;
     private boolean isAtLeastOneFileInDirAdded;
 
+    /**
+     * Matching files of the directories that are being visited now (the deepest directory is on the top).
+     */
+    private final Deque<Map<Path, BasicFileAttributes>> dirFilesStack = new ArrayDeque<>();
+
+    @Nullable
+    private final Consumer<Map<Path, BasicFileAttributes>> dirFilesConsumer;
+
     public CollectToMapFileVisitor(Set<String> extensions) {
+        this(extensions, null);
+    }
+
+    /**
+     * @param dirFilesConsumer receives the matching files of each directory (sorted by path)
+     *                         as soon as the directory has been visited,
+     *                         so they can be processed without waiting for the whole tree walk.
+     */
+    public CollectToMapFileVisitor(Set<String> extensions,
+                                   @Nullable Consumer<Map<Path, BasicFileAttributes>> dirFilesConsumer) {
         this.extensions = extensions;
+        this.dirFilesConsumer = dirFilesConsumer;
     }
 
     public Map<Path, BasicFileAttributes> getPathTree() {
@@ -47,6 +74,7 @@ public class CollectToMapFileVisitor extends SimpleFileVisitor<Path> {
                     this.pathTree.computeIfAbsent(fileAbsolutePath.getParent(), this::getFileAttributes);
 
                     this.isAtLeastOneFileInDirAdded = true;
+                    addToDirFiles(fileAbsolutePath, attrs);
                 });
 
         return FileVisitResult.CONTINUE;
@@ -56,6 +84,10 @@ public class CollectToMapFileVisitor extends SimpleFileVisitor<Path> {
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
         this.isAtLeastOneFileInDirAdded = false;
         this.pathTree.put(dir.toAbsolutePath(), attrs);
+
+        if (this.dirFilesConsumer != null) {
+            this.dirFilesStack.push(new TreeMap<>());
+        }
         return FileVisitResult.CONTINUE;
     }
 
@@ -68,9 +100,32 @@ public class CollectToMapFileVisitor extends SimpleFileVisitor<Path> {
         if (!this.isAtLeastOneFileInDirAdded) {
             this.pathTree.remove(dir.toAbsolutePath());
         }
+
+        if (this.dirFilesConsumer != null) {
+            Map<Path, BasicFileAttributes> dirFiles = this.dirFilesStack.pop();
+            if (!dirFiles.isEmpty()) {
+                this.dirFilesConsumer.accept(Collections.unmodifiableMap(dirFiles));
+            }
+        }
         return FileVisitResult.CONTINUE;
     }
 
+    /**
+     * In case when program argument is a file (not a dir) there is no directory to wait for,
+     * so the file is passed to the consumer immediately.
+     */
+    private void addToDirFiles(Path fileAbsolutePath, BasicFileAttributes attrs) {
+        if (this.dirFilesConsumer == null) {
+            return;
+        }
+
+        if (this.dirFilesStack.isEmpty()) {
+            this.dirFilesConsumer.accept(Map.of(fileAbsolutePath, attrs));
+        } else {
+            this.dirFilesStack.getFirst().put(fileAbsolutePath, attrs);
+        }
+    }
+
     private BasicFileAttributes getFileAttributes(Path path) {
         try {
             BasicFileAttributes fileAttributes = Files.readAttributes(path, BasicFileAttributes.class);
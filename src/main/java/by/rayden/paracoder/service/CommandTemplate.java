@@ -0,0 +1,317 @@
+package by.rayden.paracoder.service;
+
+import org.springframework.lang.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A command template of "paracoder_commands.yml", parsed once into the literal segments and the placeholder slots.
+ * <p>
+ * A template is rendered in one pass, both into the command text (for the log and the target file lookup)
+ * and into the argv of each stage of the pipe, so the resolved command is not parsed again before it is run.
+ * The template text is split into the stages by the "|" and into the args by the command line rules of the OS
+ * (see {@link Syntax}), but the placeholder values are never split: a title with quotes or "|" stays one arg.
+ * <p>
+ * An argv template is already split into the stages and the args, so only the placeholders are parsed in it.
+ */
+public final class CommandTemplate {
+
+    public enum Placeholder {
+        F, D, P, N, CUE_ST, CUE_ET, CUE_TO, CUE_METADATA, CUE_NUM, CUE_TITLE, CUE_ARTIST;
+
+        private final String token = "{{" + name() + "}}";
+
+        public String getToken() {
+            return this.token;
+        }
+    }
+
+    /**
+     * The rules to split the template text into the args.
+     */
+    public enum Syntax {
+        /**
+         * The rules of CommandLineToArgvW.
+         */
+        WINDOWS,
+
+        /**
+         * The quoting rules of a POSIX shell, without any expansions.
+         */
+        POSIX;
+
+        public static Syntax ofCurrentOs() {
+            return File.separatorChar == '\\' ? WINDOWS : POSIX;
+        }
+    }
+
+    /**
+     * The placeholder values of one job.
+     */
+    public interface Values {
+        /**
+         * @return the value, or null to leave the placeholder unresolved
+         */
+        @Nullable
+        String get(Placeholder placeholder);
+
+        /**
+         * The value of a placeholder which is a whole arg of the template may be several args.
+         *
+         * @return the args, or null to leave the placeholder unresolved
+         */
+        @Nullable
+        default List<String> getArgs(Placeholder placeholder) {
+            String value = get(placeholder);
+            return value == null ? null : List.of(value);
+        }
+    }
+
+    /**
+     * Either a literal text or a placeholder.
+     */
+    private record Segment(@Nullable String literal, @Nullable Placeholder placeholder) {
+    }
+
+    private final String text;
+    private final List<Segment> textSegments;
+    private final List<List<List<Segment>>> stageArgSegments;
+
+    @Nullable
+    private final List<Segment> outputSegments;
+
+    private CommandTemplate(String text, List<Segment> textSegments, List<List<List<Segment>>> stageArgSegments,
+                            @Nullable List<Segment> outputSegments) {
+        this.text = text;
+        this.textSegments = textSegments;
+        this.stageArgSegments = stageArgSegments;
+        this.outputSegments = outputSegments;
+    }
+
+    /**
+     * The template text is split by the command line rules of the current OS.
+     */
+    public static CommandTemplate compile(String text) {
+        return compile(text, Syntax.ofCurrentOs());
+    }
+
+    public static CommandTemplate compile(String text, Syntax syntax) {
+        return new CommandTemplate(text, parseSegments(text), parseStages(text, syntax), null);
+    }
+
+    /**
+     * @param stages the args of each stage of the pipe
+     * @param output the target file of the command, if it is known
+     */
+    public static CommandTemplate of(List<List<String>> stages, @Nullable String output) {
+        if (stages.isEmpty() || stages.stream().anyMatch(List::isEmpty)) {
+            throw new IllegalArgumentException("The argv template has a stage without args: " + stages);
+        }
+
+        List<List<List<Segment>>> stageArgSegments =
+            stages.stream()
+                  .map(args -> args.stream().map(CommandTemplate::parseSegments).toList())
+                  .toList();
+        String text = stages.stream()
+                            .map(args -> args.stream().map(CommandTemplate::quoteArg).collect(Collectors.joining(" ")))
+                            .collect(Collectors.joining(" | "));
+
+        return new CommandTemplate(text, parseSegments(text), stageArgSegments,
+            output == null ? null : parseSegments(output));
+    }
+
+    public String getText() {
+        return this.text;
+    }
+
+    public String render(Values values) {
+        var command = new StringBuilder(this.text.length() * 2);
+        appendSegments(command, this.textSegments, values);
+        return command.toString();
+    }
+
+    /**
+     * @return the target file, or null if the template has no explicit output
+     */
+    @Nullable
+    public String renderOutput(Values values) {
+        if (this.outputSegments == null) {
+            return null;
+        }
+        var output = new StringBuilder();
+        appendSegments(output, this.outputSegments, values);
+        return output.toString();
+    }
+
+    /**
+     * @return the argv of each stage of the pipe
+     */
+    public List<List<String>> renderArgv(Values values) {
+        List<List<String>> stages = new ArrayList<>(this.stageArgSegments.size());
+        for (List<List<Segment>> argSegments : this.stageArgSegments) {
+            List<String> argv = new ArrayList<>(argSegments.size());
+            for (List<Segment> segments : argSegments) {
+                Placeholder placeholder = segments.size() == 1 ? segments.getFirst().placeholder() : null;
+                List<String> args = placeholder == null ? null : values.getArgs(placeholder);
+                if (args != null) {
+                    argv.addAll(args);
+                } else {
+                    var arg = new StringBuilder();
+                    appendSegments(arg, segments, values);
+                    argv.add(arg.toString());
+                }
+            }
+            stages.add(List.copyOf(argv));
+        }
+        return List.copyOf(stages);
+    }
+
+    private static void appendSegments(StringBuilder builder, List<Segment> segments, Values values) {
+        for (Segment segment : segments) {
+            Placeholder placeholder = segment.placeholder();
+            if (placeholder == null) {
+                builder.append(segment.literal());
+            } else {
+                String value = values.get(placeholder);
+                builder.append(value == null ? placeholder.getToken() : value);
+            }
+        }
+    }
+
+    private static List<Segment> parseSegments(String text) {
+        List<Segment> segments = new ArrayList<>();
+        var literal = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            Placeholder placeholder = findPlaceholder(text, i);
+            if (placeholder == null) {
+                literal.append(text.charAt(i++));
+            } else {
+                flushLiteral(literal, segments);
+                segments.add(new Segment(null, placeholder));
+                i += placeholder.getToken().length();
+            }
+        }
+        flushLiteral(literal, segments);
+        return List.copyOf(segments);
+    }
+
+    /**
+     * By the {@link Syntax#WINDOWS} rules, the backslashes are literal unless they precede a quote:
+     * 2n backslashes and a quote are n backslashes and the quote toggles the quoted mode,
+     * 2n+1 backslashes and a quote are n backslashes and a literal quote.
+     * Two quotes inside the quoted mode are a literal quote.
+     * <p>
+     * By the {@link Syntax#POSIX} rules, the single quotes are also quotes, and a backslash escapes the next char
+     * (in double quotes, only "$", "`", double quote and backslash; in single quotes, nothing).
+     * The placeholders are found in any quotes.
+     */
+    private static List<List<List<Segment>>> parseStages(String text, Syntax syntax) {
+        List<List<List<Segment>>> stages = new ArrayList<>();
+        List<List<Segment>> args = new ArrayList<>();
+        List<Segment> argSegments = new ArrayList<>();
+        var literal = new StringBuilder();
+        char quote = 0;
+        boolean isArgStarted = false;
+
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            Placeholder placeholder = findPlaceholder(text, i);
+
+            if (placeholder != null) {
+                flushLiteral(literal, argSegments);
+                argSegments.add(new Segment(null, placeholder));
+                isArgStarted = true;
+                i += placeholder.getToken().length();
+            } else if (c == '\\' && syntax == Syntax.WINDOWS) {
+                int start = i;
+                while (i < text.length() && text.charAt(i) == '\\') {
+                    i++;
+                }
+                int count = i - start;
+                boolean isBeforeQuote = i < text.length() && text.charAt(i) == '"';
+                literal.repeat('\\', isBeforeQuote ? count / 2 : count);
+                if (isBeforeQuote && count % 2 == 1) {
+                    literal.append('"');
+                    i++;
+                }
+                isArgStarted = true;
+            } else if (c == '\\' && quote != '\'') {
+                boolean isEscape = i + 1 < text.length()
+                    && (quote == 0 || "$`\"\\".indexOf(text.charAt(i + 1)) >= 0);
+                literal.append(isEscape ? text.charAt(i + 1) : c);
+                isArgStarted = true;
+                i += isEscape ? 2 : 1;
+            } else if (quote == 0 && (c == '"' || (c == '\'' && syntax == Syntax.POSIX))) {
+                quote = c;
+                isArgStarted = true;
+                i++;
+            } else if (c == quote) {
+                if (syntax == Syntax.WINDOWS && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    literal.append('"');
+                    i++;
+                } else {
+                    quote = 0;
+                }
+                i++;
+            } else if (quote == 0 && (Character.isWhitespace(c) || c == '|')) {
+                if (isArgStarted) {
+                    flushLiteral(literal, argSegments);
+                    args.add(List.copyOf(argSegments));
+                    argSegments.clear();
+                    isArgStarted = false;
+                }
+                if (c == '|') {
+                    stages.add(List.copyOf(args));
+                    args.clear();
+                }
+                i++;
+            } else {
+                literal.append(c);
+                isArgStarted = true;
+                i++;
+            }
+        }
+
+        if (isArgStarted) {
+            flushLiteral(literal, argSegments);
+            args.add(List.copyOf(argSegments));
+        }
+        stages.add(List.copyOf(args));
+        return List.copyOf(stages);
+    }
+
+    /**
+     * The quotes are only for the command text: the args with placeholders are quoted,
+     * since their values may have spaces.
+     */
+    private static String quoteArg(String arg) {
+        boolean needsQuotes = arg.isEmpty() || arg.contains("{{")
+            || arg.chars().anyMatch(c -> Character.isWhitespace(c) || c == '|');
+        return needsQuotes ? "\"" + arg + "\"" : arg;
+    }
+
+    @Nullable
+    private static Placeholder findPlaceholder(String text, int index) {
+        if (!text.startsWith("{{", index)) {
+            return null;
+        }
+        for (Placeholder placeholder : Placeholder.values()) {
+            if (text.startsWith(placeholder.getToken(), index)) {
+                return placeholder;
+            }
+        }
+        return null;
+    }
+
+    private static void flushLiteral(StringBuilder literal, List<Segment> segments) {
+        if (!literal.isEmpty()) {
+            segments.add(new Segment(literal.toString(), null));
+            literal.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package by.rayden.paracoder.service;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of recode processes running at once, independently of the number of Java threads.
+ * The limit may be changed at any time: when it is lowered, the running processes are not affected,
+ * but the new ones wait until the count of the running ones is below the new limit.
+ */
+public class ConcurrencyLimiter {
+    private final ResizableSemaphore semaphore;
+    private int limit;
+
+    private static class ResizableSemaphore extends Semaphore {
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    public ConcurrencyLimiter(int limit) {
+        this.semaphore = new ResizableSemaphore(limit);
+        this.limit = limit;
+    }
+
+    public void acquire() throws InterruptedException {
+        this.semaphore.acquire();
+    }
+
+    public void release() {
+        this.semaphore.release();
+    }
+
+    public synchronized int getLimit() {
+        return this.limit;
+    }
+
+    public synchronized void setLimit(int newLimit) {
+        int delta = newLimit - this.limit;
+        if (delta > 0) {
+            this.semaphore.release(delta);
+        } else if (delta < 0) {
+            // The available permits may become negative until enough of the running processes are finished
+            this.semaphore.reducePermits(-delta);
+        }
+        this.limit = newLimit;
+    }
+
+    public int getRunningCount() {
+        return getLimit() - this.semaphore.availablePermits();
+    }
+}
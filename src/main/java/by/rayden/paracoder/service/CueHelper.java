@@ -1,7 +1,6 @@
 package by.rayden.paracoder.service;
 
 import by.rayden.paracoder.utils.OutUtils;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.ByteOrderMark;
 import org.apache.commons.io.FilenameUtils;
@@ -10,11 +9,11 @@ import org.digitalmediaserver.cuelib.CueParser;
 import org.digitalmediaserver.cuelib.CueSheet;
 import org.digitalmediaserver.cuelib.Error;
 import org.digitalmediaserver.cuelib.FileData;
+import org.digitalmediaserver.cuelib.Index;
 import org.digitalmediaserver.cuelib.Message;
 import org.digitalmediaserver.cuelib.Position;
 import org.digitalmediaserver.cuelib.TrackData;
 import org.digitalmediaserver.cuelib.Warning;
-import org.jetbrains.annotations.VisibleForTesting;
 import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
@@ -25,14 +24,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
-import java.time.LocalTime;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Component
@@ -44,23 +41,6 @@ public class CueHelper {
      */
     public static final String CUE_EXT = "cue";
 
-    private static final int SECONDS_PER_MINUTE = 60;
-    private static final long NANOS_PER_SECOND = 1000_000_000L;
-    private static final long NANOS_PER_MINUTE = NANOS_PER_SECOND * SECONDS_PER_MINUTE;
-
-    /**
-     * CD Audio (Red Book) has 75 frames per second
-     */
-    private static final int FRAMES_PER_SECOND = 75;
-    private static final long NANOS_PER_FRAME = NANOS_PER_SECOND / FRAMES_PER_SECOND;
-
-    /**
-     * For the last track, there is no easy way to calculate its end time.
-     * Therefore, we specify a fake value in advance that is greater than the possible real value.
-     */
-    private static final LocalTime END_OF_FILE_TIME = LocalTime.of(23, 59, 59);
-
-    private static final Map<Path, FileTime> LAST_MODIFIED_TIME_CACHE = new ConcurrentHashMap<>();
     private static final String INVALID_FORMAT = "The source CUE file has an invalid format. ";
 
 
@@ -68,7 +48,6 @@ public class CueHelper {
      * If the source file has a BOM, then the corresponding charset will be used,
      * otherwise UTF-8 will be used.
      */
-    @VisibleForTesting
     CueSheet readCueSheet(Path sourceFilePath) throws IOException {
         ByteOrderMark[] detectBOMs = {ByteOrderMark.UTF_8,
             ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE,
@@ -90,6 +69,17 @@ public class CueHelper {
         showCueParsingMessages(cueSheet);
         log.info(cueSheet.toString());
 
+        return getCueTracksPayloadList(cueSheet, sourceFilePath, new LastModifiedTimeCache());
+    }
+
+    /**
+     * Validates the parsed CUE-file and creates the payloads of its tracks. Nothing is printed,
+     * so the CUE-files may be processed in parallel.
+     *
+     * @param lastModifiedTimeCache the cache of the run, shared by all the CUE-files
+     */
+    public List<CueTrackPayload> getCueTracksPayloadList(CueSheet cueSheet, Path sourceFilePath,
+                                                         LastModifiedTimeCache lastModifiedTimeCache) {
         validateCueParseResult(cueSheet);
 
         return cueSheet
@@ -97,17 +87,35 @@ public class CueHelper {
             .map(FileData::getTrackData)
             .flatMap(Collection::stream)
             .filter(trackData -> "AUDIO".equalsIgnoreCase(trackData.getDataType()))
-            .map(trackData -> getCueTrackPayload(trackData, sourceFilePath))
+            .map(trackData -> getCueTrackPayload(trackData, sourceFilePath, lastModifiedTimeCache))
             .toList();
     }
 
-    @SneakyThrows
-    private CueTrackPayload getCueTrackPayload(TrackData trackData, Path sourceFilePath) {
+    /**
+     * Shows the result of the {@link #readCueSheet} in the same way as {@link #getAllCueTracksPayloadList} does.
+     *
+     * @param cueSheet null, if the CUE-file has not been read
+     */
+    public void showCueSheet(Path sourceFilePath, @Nullable CueSheet cueSheet) {
+        OutUtils.ansiOut("Parsing CUE file: @|blue " + sourceFilePath + "|@");
+        if (cueSheet != null) {
+            showCueParsingMessages(cueSheet);
+            log.info(cueSheet.toString());
+        }
+    }
+
+    private CueTrackPayload getCueTrackPayload(TrackData trackData, Path sourceFilePath,
+                                               LastModifiedTimeCache lastModifiedTimeCache) {
         var trackInterval = getTrackInterval(trackData);
 
         // It is assumed that the Audio file is located next to the source CUE file
         Path audioFilePath = sourceFilePath.resolveSibling(trackData.getParent().getFile());
-        FileTime audioLastModifiedTime = getCachedLastModifiedTime(audioFilePath);
+        FileTime audioLastModifiedTime;
+        try {
+            audioLastModifiedTime = lastModifiedTimeCache.getLastModifiedTime(audioFilePath);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
         CueSheet cueSheet = trackData.getParent().getParent();
 
         return CueTrackPayload
@@ -131,20 +139,6 @@ public class CueHelper {
             .build();
     }
 
-    /**
-     * A CUE-file most often contains only one audio file.
-     * Therefore, it makes sense to cache its last modification time.
-     */
-    private FileTime getCachedLastModifiedTime(Path audioFilePath) {
-        return LAST_MODIFIED_TIME_CACHE.computeIfAbsent(audioFilePath, path -> {
-            try {
-                return Files.getLastModifiedTime(path);
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        });
-    }
-
     /**
      * If necessary, it returns a filtered list, avoiding ambiguity - whether we want to recode the entire regular file
      * or split it according to the СUE-file.
@@ -207,6 +201,10 @@ public class CueHelper {
             throw new RuntimeException(INVALID_FORMAT + "No TRACK NUMBER.");
         }
 
+        if (findIndexPosition(trackData).isEmpty()) {
+            throw new RuntimeException(INVALID_FORMAT + "No INDEX 01 of TRACK " + trackData.getNumber() + ".");
+        }
+
         CueSheet cueSheet = trackData.getParent().getParent();
         if (cueSheet.getPerformer() == null && trackData.getPerformer() == null) {
             throw new RuntimeException(INVALID_FORMAT + "No PERFORMER.");
@@ -226,33 +224,44 @@ public class CueHelper {
             case Error m -> OutUtils.ansiErr(" @|red " + m + "|@");
             case Warning m -> OutUtils.ansiOut(" @|bold,yellow " + m + "|@");
 
-            default -> System.out.println(message);
+            default -> OutUtils.plainOut(String.valueOf(message));
         }
     }
 
-    private record TrackInterval(LocalTime start, LocalTime end) {
+    private record TrackInterval(CueTime start, @Nullable CueTime end) {
     }
 
+    /**
+     * The track starts at its INDEX 01 and ends at the INDEX 01 of the next track of the same audio file,
+     * so the pregap of the next track (from its INDEX 00 to INDEX 01) is appended to this track,
+     * and the tracks are gapless. The pregap of the first track (a hidden track) is skipped.
+     * The last track of the audio file has no end time: it ends at the end of the file.
+     */
     private TrackInterval getTrackInterval(TrackData trackData) {
-        Position startPosition = trackData.getStartIndex().getPosition();
-        LocalTime startTime = convertToTime(startPosition); // TODO: Do I need a PreGap processing ?
-
-        LocalTime endTime;
-        if (trackData == trackData.getParent().getTrackData().getLast()) {
-            endTime = END_OF_FILE_TIME; // to the end of file
-        } else {
-            int nextTrackIndex = trackData.getNumber();
-            TrackData nextTrackData = trackData.getParent().getTrackData().get(nextTrackIndex);
-            endTime = convertToTime(nextTrackData.getStartIndex().getPosition());
+        CueTime startTime = getIndexTime(trackData);
+
+        List<TrackData> fileTracks = trackData.getParent().getTrackData();
+        int nextTrackIndex = fileTracks.indexOf(trackData) + 1;
+        CueTime endTime = nextTrackIndex < fileTracks.size() ? getIndexTime(fileTracks.get(nextTrackIndex)) : null;
+
+        if (endTime != null && endTime.compareTo(startTime) <= 0) {
+            throw new RuntimeException(INVALID_FORMAT + "The INDEX 01 of TRACK " + trackData.getNumber()
+                + " is not before the next track.");
         }
         return new TrackInterval(startTime, endTime);
     }
 
-    private LocalTime convertToTime(@Nullable Position position) {
-        Objects.requireNonNull(position);
+    private CueTime getIndexTime(TrackData trackData) {
+        Position position = findIndexPosition(trackData)
+            .orElseThrow(() -> new RuntimeException(INVALID_FORMAT + "No INDEX 01 of TRACK " + trackData.getNumber()));
+        return CueTime.ofMsf(position.getMinutes(), position.getSeconds(), position.getFrames());
+    }
 
-        return LocalTime.ofNanoOfDay(position.getMinutes() * NANOS_PER_MINUTE
-            + position.getSeconds() * NANOS_PER_SECOND
-            + position.getFrames() * NANOS_PER_FRAME);
+    private Optional<Position> findIndexPosition(TrackData trackData) {
+        return trackData.getIndices().stream()
+                        .filter(index -> index.getNumber() == 1)
+                        .map(Index::getPosition)
+                        .filter(Objects::nonNull)
+                        .findFirst();
     }
 }
@@ -0,0 +1,78 @@
+package by.rayden.paracoder.service;
+
+/**
+ * A position of a CUE-file, counted in the CD frames (sectors) of 1/75 second.
+ * <p>
+ * The frame count is exact, so the track boundaries don't drift. A frame is 588 samples at the CD sample rate,
+ * and a whole number of samples at all the usual rates (48000, 88200, 96000 Hz).
+ *
+ * @param frames the number of CD frames from the beginning of the audio file
+ */
+public record CueTime(long frames) implements Comparable<CueTime> {
+    /**
+     * CD Audio (Red Book) has 75 frames per second
+     */
+    public static final int FRAMES_PER_SECOND = 75;
+
+    public static final int CD_SAMPLE_RATE = 44_100;
+
+    private static final int SECONDS_PER_MINUTE = 60;
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+    private static final long MICROS_PER_MINUTE = MICROS_PER_SECOND * SECONDS_PER_MINUTE;
+    private static final long MICROS_PER_HOUR = MICROS_PER_MINUTE * 60;
+
+    public CueTime {
+        if (frames < 0) {
+            throw new IllegalArgumentException("The CUE time can't be negative: " + frames);
+        }
+    }
+
+    /**
+     * @param minutes the minutes of the "mm:ss:ff" position, which may be greater than 59
+     */
+    public static CueTime ofMsf(int minutes, int seconds, int frames) {
+        return new CueTime(((long) minutes * SECONDS_PER_MINUTE + seconds) * FRAMES_PER_SECOND + frames);
+    }
+
+    /**
+     * @return the exact sample offset at the sample rate
+     * (rounded to the nearest sample, if a frame is not a whole number of samples at the rate)
+     */
+    public long toSamples(int sampleRate) {
+        return (this.frames * sampleRate * 2 + FRAMES_PER_SECOND) / (FRAMES_PER_SECOND * 2);
+    }
+
+    /**
+     * A frame is 13333.33 microseconds, so the time is rounded to the nearest microsecond.
+     * It is still the exact sample at the sample rates up to 1 MHz.
+     */
+    public long toMicros() {
+        return (this.frames * MICROS_PER_SECOND * 2 + FRAMES_PER_SECOND) / (FRAMES_PER_SECOND * 2);
+    }
+
+    public double toSeconds() {
+        return (double) this.frames / FRAMES_PER_SECOND;
+    }
+
+    /**
+     * @return the "HH:MM:SS.ffffff" time duration of ffmpeg. The hours are not limited to 23.
+     */
+    public String toFFMpegTime() {
+        long micros = toMicros();
+        return String.format("%02d:%02d:%02d.%06d", micros / MICROS_PER_HOUR,
+            micros % MICROS_PER_HOUR / MICROS_PER_MINUTE,
+            micros % MICROS_PER_MINUTE / MICROS_PER_SECOND,
+            micros % MICROS_PER_SECOND);
+    }
+
+    @Override
+    public int compareTo(CueTime other) {
+        return Long.compare(this.frames, other.frames);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%02d:%02d:%02d", this.frames / FRAMES_PER_SECOND / SECONDS_PER_MINUTE,
+            this.frames / FRAMES_PER_SECOND % SECONDS_PER_MINUTE, this.frames % FRAMES_PER_SECOND);
+    }
+}
@@ -6,7 +6,6 @@ import org.springframework.lang.Nullable;
 
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
-import java.time.LocalTime;
 
 /**
  * <a href="https://wiki.hydrogenaudio.org/index.php?title=Cue_sheet">Cue_sheet Wiki</a>
@@ -40,8 +39,16 @@ public class CueTrackPayload {
     @Nullable
     private Integer totalDiscs;
 
-    private LocalTime startTime;
-    private LocalTime endTime;
+    /**
+     * The INDEX 01 of the track. The pregap (from INDEX 00 to INDEX 01) belongs to the previous track.
+     */
+    private CueTime startTime;
+
+    /**
+     * The INDEX 01 of the next track, or null for the last track of the audio file (to the end of the file).
+     */
+    @Nullable
+    private CueTime endTime;
 
     private Path audioFilePath;
     private Path sourceFilePath;
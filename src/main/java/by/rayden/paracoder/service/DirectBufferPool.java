@@ -0,0 +1,44 @@
+package by.rayden.paracoder.service;
+
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of the direct buffers used to pump the data between the processes of a pipe.
+ * <p>
+ * A direct buffer is expensive to allocate and its memory is freed only by GC,
+ * so the buffers are allocated on demand up to {@link #MAX_BUFFER_COUNT} and then reused by the following jobs.
+ */
+@Component
+public class DirectBufferPool {
+    static final int BUFFER_SIZE = 256 * 1024;
+    static final int MAX_BUFFER_COUNT = 64;
+
+    private final BlockingQueue<ByteBuffer> freeBuffers = new ArrayBlockingQueue<>(MAX_BUFFER_COUNT);
+    private final AtomicInteger allocatedCount = new AtomicInteger();
+
+    /**
+     * Waits for a free buffer when all {@link #MAX_BUFFER_COUNT} buffers are in use.
+     */
+    public ByteBuffer acquire() throws InterruptedException {
+        ByteBuffer buffer = this.freeBuffers.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+
+        if (this.allocatedCount.getAndUpdate(count -> Math.min(count + 1, MAX_BUFFER_COUNT)) < MAX_BUFFER_COUNT) {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+        return this.freeBuffers.take();
+    }
+
+    public void release(ByteBuffer buffer) {
+        buffer.clear();
+        //noinspection ResultOfMethodCallIgnored
+        this.freeBuffers.offer(buffer);
+    }
+}
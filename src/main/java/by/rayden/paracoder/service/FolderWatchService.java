@@ -0,0 +1,76 @@
+package by.rayden.paracoder.service;
+
+import by.rayden.paracoder.cli.command.CommandController;
+import by.rayden.paracoder.config.PatternProperties;
+import by.rayden.paracoder.utils.OutUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The watch mode: the application keeps running and recodes the new files dropped into the input directories,
+ * so the JVM and the Spring context are started once, and the recoder thread pool stays warm.
+ */
+@Service
+@Slf4j
+public class FolderWatchService {
+    private final RecoderService recoderService;
+    private final PatternProperties patternProperties;
+
+    public FolderWatchService(RecoderService recoderService, PatternProperties patternProperties) {
+        this.recoderService = recoderService;
+        this.patternProperties = patternProperties;
+    }
+
+    /**
+     * Recodes the input directories as usual, then recodes the new files of each directory by a separate run
+     * as soon as they are settled. The watching starts before the first run, so no file is missed.
+     * <p>
+     * The target files must not have the extensions of the source files, otherwise they are recoded again.
+     *
+     * @param settleTime how long a new file must stay unchanged to be recoded (so it is not being copied anymore)
+     * @return the max exit code of all the runs. It is returned only on an error or an interrupt.
+     */
+    public int watch(CommandController.Params paraCoderParams, Duration settleTime) {
+        List<Path> rootDirs = paraCoderParams.inputPathList();
+        if (rootDirs.isEmpty() || !rootDirs.stream().allMatch(Files::isDirectory)) {
+            log.error("Only directories can be watched: {}", rootDirs);
+            OutUtils.ansiErr("Error: @|red Only directories can be watched|@");
+            return CommandLine.ExitCode.USAGE;
+        }
+
+        int maxExitCode = CommandLine.ExitCode.OK;
+        try (var folderWatcher = new FolderWatcher(rootDirs, this.patternProperties.getFileExtensions(),
+            paraCoderParams.recurse(), settleTime)) {
+
+            maxExitCode = this.recoderService.recode(paraCoderParams);
+
+            while (true) {
+                OutUtils.ansiOut("");
+                OutUtils.ansiOut("@|blue Watching for new files in: " + rootDirs + "|@");
+
+                for (Map.Entry<Path, List<Path>> dirFiles : folderWatcher.takeSettledFiles().entrySet()) {
+                    log.info("New files in {}: {}", dirFiles.getKey(), dirFiles.getValue());
+                    OutUtils.ansiOut("New files in: @|cyan " + dirFiles.getKey() + "|@");
+                    int exitCode = this.recoderService.recode(paraCoderParams.withInputPathList(dirFiles.getValue()));
+                    maxExitCode = Math.max(maxExitCode, exitCode);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.info("The watching is interrupted");
+            return maxExitCode;
+        } catch (IOException e) {
+            log.error("Watch error: {}", e.getMessage(), e);
+            OutUtils.ansiErr("Error: @|red " + e.getMessage() + "|@");
+            return CommandLine.ExitCode.SOFTWARE;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package by.rayden.paracoder.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Watches the input directories for the new matching files.
+ * <p>
+ * A new file is usually still being copied when it appears, so it is passed on only when it is settled:
+ * its size and last modified time have not changed for the settle time. The files of a directory are passed on
+ * together, when all the new files of the directory are settled, so an album with a CUE-file is recoded
+ * as a whole, the same as in the stream mode.
+ * <p>
+ * The watcher is not thread-safe: it is used by one thread, which waits for the settled files and recodes them.
+ * The events of the time of recoding are kept by the {@link WatchService} until the next wait.
+ */
+@Slf4j
+public class FolderWatcher implements AutoCloseable {
+    private static final long POLL_PERIOD_MILLIS = 250;
+
+    private final Set<String> extensions;
+    private final boolean recurse;
+    private final long settleNanos;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+
+    /**
+     * The new files which are not passed on yet.
+     */
+    private final Map<Path, PendingFile> pendingFiles = new HashMap<>();
+
+    /**
+     * @param size             the last seen size, or -1 if the file has not been checked since the last event
+     * @param lastModifiedTime the last seen last modified time
+     * @param changedNanos     the time when a change of the file was seen last time
+     */
+    private record PendingFile(long size, FileTime lastModifiedTime, long changedNanos) {
+    }
+
+    /**
+     * The files, which are already in the root directories, are not watched.
+     *
+     * @param recurse whether the subdirectories (including the new ones) are watched
+     */
+    public FolderWatcher(List<Path> rootDirs, Set<String> extensions, boolean recurse, Duration settleTime)
+        throws IOException {
+
+        this.extensions = extensions;
+        this.recurse = recurse;
+        this.settleNanos = settleTime.toNanos();
+        this.watchService = rootDirs.getFirst().getFileSystem().newWatchService();
+
+        for (Path rootDir : rootDirs) {
+            if (recurse) {
+                registerTree(rootDir.toAbsolutePath(), false);
+            } else {
+                register(rootDir.toAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * Blocks until there is a directory with only settled new files.
+     *
+     * @return the settled files of such directories (sorted by path), by directory
+     */
+    public Map<Path, List<Path>> takeSettledFiles() throws InterruptedException, IOException {
+        while (true) {
+            WatchKey key = this.watchService.poll(POLL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            while (key != null) {
+                processEvents(key);
+                key = this.watchService.poll();
+            }
+
+            Map<Path, List<Path>> settledFiles = removeSettledFiles(System.nanoTime());
+            if (!settledFiles.isEmpty()) {
+                return settledFiles;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.watchService.close();
+    }
+
+    private void processEvents(WatchKey key) throws IOException {
+        Path dir = this.watchedDirs.get(key);
+        if (dir == null) {
+            key.cancel();
+            return;
+        }
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Some events are lost, so all the files of the directory are checked
+                log.debug("The watch events are lost in: {}", dir);
+                addExistingFiles(dir);
+                continue;
+            }
+
+            Path path = dir.resolve((Path) event.context());
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (this.recurse && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    registerTree(path, true);
+                }
+            } else if (isMatching(path)) {
+                addPendingFile(path);
+            }
+        }
+
+        if (!key.reset()) {
+            log.debug("The watched directory is no longer accessible: {}", dir);
+            this.watchedDirs.remove(key);
+        }
+    }
+
+    /**
+     * @param isNew whether the directory has appeared after the start of watching,
+     *              so its files (which may have been copied before it was registered) are new too
+     */
+    private void registerTree(Path dir, boolean isNew) throws IOException {
+        List<Path> dirs;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            dirs = paths.filter(path -> Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)).toList();
+        } catch (NoSuchFileException _) {
+            // The directory has been deleted or renamed right after its creation
+            return;
+        }
+
+        for (Path subDir : dirs) {
+            register(subDir);
+            if (isNew) {
+                addExistingFiles(subDir);
+            }
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        WatchKey key = dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watchedDirs.put(key, dir);
+        log.debug("Watching: {}", dir);
+    }
+
+    private void addExistingFiles(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.list(dir)) {
+            paths.filter(path -> Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS))
+                 .filter(this::isMatching)
+                 .forEach(this::addPendingFile);
+        } catch (NoSuchFileException _) {
+            // The directory has been deleted
+        }
+    }
+
+    private void addPendingFile(Path file) {
+        this.pendingFiles.put(file, new PendingFile(-1, FileTime.fromMillis(0), System.nanoTime()));
+    }
+
+    /**
+     * The files of a directory with unsettled files are kept pending.
+     */
+    private Map<Path, List<Path>> removeSettledFiles(long nowNanos) {
+        Map<Path, List<Path>> settledFiles = new TreeMap<>();
+        Set<Path> unsettledDirs = new HashSet<>();
+
+        Iterator<Map.Entry<Path, PendingFile>> iterator = this.pendingFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, PendingFile> entry = iterator.next();
+            Path file = entry.getKey();
+            Path dir = file.getParent();
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException _) {
+                // The file has been deleted or renamed (the new name has its own event)
+                iterator.remove();
+                continue;
+            }
+
+            PendingFile pendingFile = entry.getValue();
+            boolean isChanged = attrs.size() != pendingFile.size()
+                || !attrs.lastModifiedTime().equals(pendingFile.lastModifiedTime());
+            if (isChanged) {
+                entry.setValue(new PendingFile(attrs.size(), attrs.lastModifiedTime(), nowNanos));
+                unsettledDirs.add(dir);
+            } else if (nowNanos - pendingFile.changedNanos() < this.settleNanos) {
+                unsettledDirs.add(dir);
+            } else {
+                settledFiles.computeIfAbsent(dir, _ -> new ArrayList<>()).add(file);
+            }
+        }
+
+        settledFiles.keySet().removeAll(unsettledDirs);
+        settledFiles.values().forEach(files -> {
+            files.forEach(this.pendingFiles::remove);
+            files.sort(null);
+        });
+        return settledFiles;
+    }
+
+    private boolean isMatching(Path file) {
+        String extension = FilenameUtils.getExtension(file.getFileName().toString().toLowerCase());
+        return this.extensions.contains(extension);
+    }
+}
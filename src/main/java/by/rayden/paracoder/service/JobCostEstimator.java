@@ -0,0 +1,122 @@
+package by.rayden.paracoder.service;
+
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+import static java.util.Map.entry;
+
+/**
+ * Estimates the relative processing time of a recode job, so the longest jobs can be started first.
+ * <p>
+ * The cost unit is the encoding time of one byte of decoded (PCM) audio, since the encoder takes most of the time.
+ * The decoding time is added with a weight, which depends on the source format.
+ */
+@Component
+public class JobCostEstimator {
+    /**
+     * CD Audio (Red Book): 44100 samples per second, 2 channels, 2 bytes per sample.
+     * The CUE-file positions are always based on it.
+     */
+    private static final int CD_PCM_BYTES_PER_SAMPLE = 2 * 2;
+    private static final double CD_PCM_BYTES_PER_SECOND = CueTime.CD_SAMPLE_RATE * CD_PCM_BYTES_PER_SAMPLE;
+
+    /**
+     * @param compressionRatio the typical ratio of the file size to the size of the decoded audio
+     * @param decodeWeight     the decoding time of one byte of decoded audio relative to its encoding time
+     */
+    private record FormatCost(double compressionRatio, double decodeWeight) {
+    }
+
+    private static final FormatCost DEFAULT_FORMAT_COST = new FormatCost(0.6, 0.1);
+
+    /**
+     * The ratios of the lossy formats are taken at their low common bitrates (about 1/10 of the CD audio),
+     * so their audio duration is rather overestimated than underestimated.
+     */
+    private static final Map<String, FormatCost> FORMAT_COSTS = Map.ofEntries(
+        entry("wav", new FormatCost(1.0, 0.02)),
+        entry("w64", new FormatCost(1.0, 0.02)),
+        entry("aiff", new FormatCost(1.0, 0.02)),
+        entry("flac", new FormatCost(0.6, 0.1)),
+        entry("m4a", new FormatCost(0.6, 0.15)),
+        entry("wv", new FormatCost(0.6, 0.15)),
+        entry("ape", new FormatCost(0.55, 0.5)),
+        entry("dts", new FormatCost(0.25, 0.3)),
+        entry("mpc", new FormatCost(0.1, 0.05)),
+        entry("mp3", new FormatCost(0.09, 0.05)),
+        entry("mp2", new FormatCost(0.09, 0.05)),
+        entry("aac", new FormatCost(0.09, 0.05)),
+        entry("wma", new FormatCost(0.09, 0.05)),
+        entry("ogg", new FormatCost(0.07, 0.05)),
+        entry("oga", new FormatCost(0.07, 0.05)),
+        entry("opus", new FormatCost(0.05, 0.05))
+    );
+
+    public double estimateCost(RecodeJob job) {
+        FormatCost formatCost = getFormatCost(job.getAudioFilePath());
+        double filePcmBytes = job.getAudioFileSize() / formatCost.compressionRatio();
+
+        CueTrackPayload trackPayload = job.getCueTrackPayload();
+        if (trackPayload == null) {
+            // A CUE split job also decodes the whole file once and encodes all its tracks
+            return filePcmBytes * (1 + formatCost.decodeWeight());
+        }
+
+        double endPcmBytes = getEndPcmBytes(trackPayload, filePcmBytes);
+        double trackPcmBytes = getTrackPcmBytes(job, filePcmBytes);
+
+        // The track start is an output option of ffmpeg ("-ss" after "-i"),
+        // so the audio is decoded from the beginning of the file up to the track end.
+        return trackPcmBytes + endPcmBytes * formatCost.decodeWeight();
+    }
+
+    /**
+     * The audio duration is estimated from the file size and the typical compression ratio of the format,
+     * or from the track times for a CUE track.
+     */
+    public double estimateAudioSeconds(RecodeJob job) {
+        double filePcmBytes = job.getAudioFileSize() / getFormatCost(job.getAudioFilePath()).compressionRatio();
+        return getTrackPcmBytes(job, filePcmBytes) / CD_PCM_BYTES_PER_SECOND;
+    }
+
+    /**
+     * The share of the audio file which belongs to the job (the whole file, or the part of a CUE track).
+     */
+    public long estimateInputBytes(RecodeJob job) {
+        double filePcmBytes = job.getAudioFileSize() / getFormatCost(job.getAudioFilePath()).compressionRatio();
+        if (filePcmBytes == 0) {
+            return 0;
+        }
+        return Math.round(job.getAudioFileSize() * getTrackPcmBytes(job, filePcmBytes) / filePcmBytes);
+    }
+
+    private double getTrackPcmBytes(RecodeJob job, double filePcmBytes) {
+        CueTrackPayload trackPayload = job.getCueTrackPayload();
+        if (trackPayload == null) {
+            return filePcmBytes;
+        }
+
+        double endPcmBytes = getEndPcmBytes(trackPayload, filePcmBytes);
+        return Math.max(0, endPcmBytes - toPcmBytes(trackPayload.getStartTime()));
+    }
+
+    /**
+     * The last track of the audio file ends at the end of the file.
+     */
+    private double getEndPcmBytes(CueTrackPayload trackPayload, double filePcmBytes) {
+        CueTime endTime = trackPayload.getEndTime();
+        return endTime == null ? filePcmBytes : Math.min(filePcmBytes, toPcmBytes(endTime));
+    }
+
+    private FormatCost getFormatCost(Path audioFilePath) {
+        String extension = FilenameUtils.getExtension(audioFilePath.toString()).toLowerCase();
+        return FORMAT_COSTS.getOrDefault(extension, DEFAULT_FORMAT_COST);
+    }
+
+    private double toPcmBytes(CueTime time) {
+        return (double) time.toSamples(CueTime.CD_SAMPLE_RATE) * CD_PCM_BYTES_PER_SAMPLE;
+    }
+}
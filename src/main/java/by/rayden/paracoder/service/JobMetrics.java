@@ -0,0 +1,97 @@
+package by.rayden.paracoder.service;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.nio.file.Path;
+
+/**
+ * The timings and sizes of one recode job for the run report.
+ * <p>
+ * The timings are set in the thread of the job, the sizes are set when the job is completed.
+ * The report reads them after all the jobs are completed.
+ */
+@Getter
+public class JobMetrics {
+    private final Path targetFilePath;
+    private final long submitNanos = System.nanoTime();
+
+    /**
+     * When the job got a thread (and a permit of the process limiter) to run in.
+     */
+    private volatile long startNanos;
+    private volatile long processStartedNanos;
+    private volatile long endNanos;
+    private volatile long cpuNanos;
+    private volatile boolean fromCache;
+
+    @Setter
+    private volatile int exitCode = -1;
+
+    @Setter
+    private volatile long inputBytes;
+
+    @Setter
+    private volatile long outputBytes;
+
+    /**
+     * The estimated duration of the recoded audio.
+     */
+    @Setter
+    private volatile double audioSeconds;
+
+    public JobMetrics(Path targetFilePath) {
+        this.targetFilePath = targetFilePath;
+    }
+
+    public void markStarted() {
+        this.startNanos = System.nanoTime();
+    }
+
+    public void markProcessStarted() {
+        this.processStartedNanos = System.nanoTime();
+    }
+
+    public void markEnded(boolean isFromCache) {
+        this.endNanos = System.nanoTime();
+        this.fromCache = isFromCache;
+    }
+
+    /**
+     * @param cpuNanos the CPU time of all the processes of the job
+     */
+    public void setCpuNanos(long cpuNanos) {
+        this.cpuNanos = cpuNanos;
+    }
+
+    public boolean isProcessRun() {
+        return this.processStartedNanos != 0 && this.endNanos != 0 && !this.fromCache;
+    }
+
+    public long getQueueWaitNanos() {
+        return this.startNanos == 0 ? 0 : this.startNanos - this.submitNanos;
+    }
+
+    public long getStartLatencyNanos() {
+        return isProcessRun() ? this.processStartedNanos - this.startNanos : 0;
+    }
+
+    public long getWallNanos() {
+        return isProcessRun() ? this.endNanos - this.processStartedNanos : 0;
+    }
+
+    /**
+     * The time the job held a thread (or a permit of the process limiter).
+     */
+    public long getBusyNanos() {
+        return (this.startNanos == 0 || this.endNanos == 0) ? 0 : this.endNanos - this.startNanos;
+    }
+
+    /**
+     * @return the audio duration per wall time second, or 0 if unknown
+     */
+    public double getRealtimeFactor() {
+        long wallNanos = getWallNanos();
+        return wallNanos == 0 ? 0 : this.audioSeconds / (wallNanos / 1e9);
+    }
+}
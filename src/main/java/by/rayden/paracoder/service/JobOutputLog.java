@@ -0,0 +1,92 @@
+package by.rayden.paracoder.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The output (stdout and stderr) of all the processes of one job.
+ * <p>
+ * The processes append to the log file directly, so they never wait for a slow console, and the outputs
+ * of the parallel jobs are not interleaved. The tail of the log is shown only when the job fails.
+ * A kept log is named after the target file, so it holds the output of the last recode of the file.
+ */
+@Slf4j
+public class JobOutputLog implements AutoCloseable {
+    static final int TAIL_LINES = 20;
+    private static final int TAIL_MAX_BYTES = 16 * 1024;
+
+    @Getter
+    private final Path logFile;
+    private final boolean isKept;
+
+    /**
+     * @param isKept whether the log file is kept when the job is completed
+     */
+    private JobOutputLog(Path logFile, boolean isKept) {
+        this.logFile = logFile;
+        this.isKept = isKept;
+    }
+
+    public static JobOutputLog create(Path logDir, Path targetFilePath, boolean isKept) throws IOException {
+        String fileName = targetFilePath.getFileName() + "-"
+            + Integer.toHexString(targetFilePath.toAbsolutePath().hashCode()) + ".log";
+        Path logFile = logDir.resolve(fileName);
+        Files.deleteIfExists(logFile);
+        Files.createFile(logFile);
+        return new JobOutputLog(logFile, isKept);
+    }
+
+    public ProcessBuilder.Redirect getRedirect() {
+        return ProcessBuilder.Redirect.appendTo(this.logFile.toFile());
+    }
+
+    /**
+     * @return the last {@link #TAIL_LINES} lines of the log (only its last bytes are read)
+     */
+    public List<String> readTail() throws IOException {
+        try (var channel = FileChannel.open(this.logFile, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                return List.of();
+            }
+
+            long position = Math.max(0, channel.size() - TAIL_MAX_BYTES);
+            ByteBuffer buffer = ByteBuffer.allocate((int) (channel.size() - position));
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) != -1) {
+                // Read up to the end of the file
+            }
+
+            List<String> lines = Arrays.asList(new String(buffer.array(), 0, buffer.position(),
+                StandardCharsets.UTF_8).split("\\R"));
+            if (position > 0) {
+                // The first line is cut
+                lines = lines.subList(1, lines.size());
+            }
+            return lines.subList(Math.max(0, lines.size() - TAIL_LINES), lines.size());
+        }
+    }
+
+    /**
+     * A process which is still running (after a timeout) may hold the file, so it is not deleted then.
+     */
+    @Override
+    public void close() {
+        if (this.isKept) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(this.logFile);
+        } catch (IOException e) {
+            log.debug("Can't delete the output log: {}", this.logFile, e);
+        }
+    }
+}
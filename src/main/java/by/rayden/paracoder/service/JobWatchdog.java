@@ -0,0 +1,106 @@
+package by.rayden.paracoder.service;
+
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the processes of a running job must be killed.
+ * <p>
+ * A job is stalled when it has made no progress for the stall timeout: neither the CPU time of its processes
+ * nor the size of any of its output files (the partial target files and the output log) has grown.
+ * So a hung encoder is killed soon, while a long job is never killed as long as it works.
+ * <p>
+ * The deadline is only the last resort (e.g. for a process which loops without any output): it is scaled
+ * from the expected duration of the audio. The duration is estimated from the file size and the typical
+ * compression ratio of the format (see {@link JobCostEstimator}). It is overestimated for the formats with more
+ * data per second than the CD audio (DSD, multichannel) and for the lossy formats above their low bitrates,
+ * which is the safe side. It is underestimated for an AAC file with the "m4a" extension (taken as ALAC)
+ * and for an unknown lossy format, whose hung processes are still killed by the stall detection.
+ */
+public class JobWatchdog {
+    static final long MIN_DEADLINE_SECONDS = TimeUnit.MINUTES.toSeconds(10);
+
+    /**
+     * The run time allowed per second of the audio, above {@link #MIN_DEADLINE_SECONDS}.
+     */
+    static final double DEADLINE_SECONDS_PER_AUDIO_SECOND = 2.0;
+
+    /**
+     * The stall timeout value which disables the stall detection.
+     */
+    public static final int NO_STALL_TIMEOUT = 0;
+
+    private final long startNanos;
+    private final long deadlineNanos;
+    private final long stallTimeoutNanos;
+    private final List<Path> outputFilePaths;
+    private final long[] outputFileSizes;
+
+    private long lastProgressNanos;
+    private long lastCpuNanos;
+
+    /**
+     * @param audioSeconds        the expected duration of the audio, or 0 when unknown
+     * @param stallTimeoutSeconds the max time without progress, or {@link #NO_STALL_TIMEOUT}
+     * @param outputFilePaths     the files written by the processes (they may not exist yet)
+     */
+    public JobWatchdog(double audioSeconds, int stallTimeoutSeconds, List<Path> outputFilePaths, long startNanos) {
+        this.startNanos = startNanos;
+        this.deadlineNanos = startNanos + getDeadlineNanos(audioSeconds);
+        this.stallTimeoutNanos = TimeUnit.SECONDS.toNanos(stallTimeoutSeconds);
+        this.outputFilePaths = List.copyOf(outputFilePaths);
+        this.outputFileSizes = new long[outputFilePaths.size()];
+        Arrays.fill(this.outputFileSizes, -1);
+        this.lastProgressNanos = startNanos;
+    }
+
+    static long getDeadlineNanos(double audioSeconds) {
+        double deadlineSeconds = MIN_DEADLINE_SECONDS + audioSeconds * DEADLINE_SECONDS_PER_AUDIO_SECOND;
+        return TimeUnit.MILLISECONDS.toNanos(Math.round(deadlineSeconds * 1000));
+    }
+
+    /**
+     * @param cpuNanos the total CPU time of the processes so far
+     * @return the reason to kill the processes, or null while the job may go on
+     */
+    @Nullable
+    public String check(long cpuNanos, long nowNanos) {
+        boolean hasProgress = cpuNanos > this.lastCpuNanos;
+        this.lastCpuNanos = Math.max(this.lastCpuNanos, cpuNanos);
+        for (int i = 0; i < this.outputFilePaths.size(); i++) {
+            long size = getFileSize(this.outputFilePaths.get(i));
+            if (size > this.outputFileSizes[i]) {
+                this.outputFileSizes[i] = size;
+                hasProgress = true;
+            }
+        }
+        if (hasProgress) {
+            this.lastProgressNanos = nowNanos;
+        }
+
+        if (nowNanos - this.deadlineNanos >= 0) {
+            return String.format(Locale.ROOT, "the job has not finished in %d s",
+                TimeUnit.NANOSECONDS.toSeconds(this.deadlineNanos - this.startNanos));
+        }
+        if (this.stallTimeoutNanos > 0 && nowNanos - this.lastProgressNanos >= this.stallTimeoutNanos) {
+            return String.format(Locale.ROOT, "the job has made no progress for %d s",
+                TimeUnit.NANOSECONDS.toSeconds(nowNanos - this.lastProgressNanos));
+        }
+        return null;
+    }
+
+    private static long getFileSize(Path filePath) {
+        try {
+            return Files.size(filePath);
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package by.rayden.paracoder.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The last modified times of the audio files of the CUE-files, cached for one run.
+ * <p>
+ * All the tracks of a CUE-file most often share one audio file, so its time is read once per CUE-file.
+ * The cache is bounded: above the max size, the least recently used entries are evicted,
+ * so a long run over a big collection doesn't keep the times of all the audio files.
+ * <p>
+ * The cache is thread-safe. The file time is read outside the lock, so two threads may read
+ * the time of the same file at once, but the file system is never accessed under the lock.
+ */
+public class LastModifiedTimeCache {
+    static final int DEFAULT_MAX_SIZE = 256;
+
+    private final Map<Path, FileTime> fileTimes;
+
+    public LastModifiedTimeCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public LastModifiedTimeCache(int maxSize) {
+        this.fileTimes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, FileTime> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public FileTime getLastModifiedTime(Path filePath) throws IOException {
+        synchronized (this.fileTimes) {
+            FileTime fileTime = this.fileTimes.get(filePath);
+            if (fileTime != null) {
+                return fileTime;
+            }
+        }
+
+        FileTime fileTime = Files.getLastModifiedTime(filePath);
+        synchronized (this.fileTimes) {
+            this.fileTimes.put(filePath, fileTime);
+        }
+        return fileTime;
+    }
+
+    public int size() {
+        synchronized (this.fileTimes) {
+            return this.fileTimes.size();
+        }
+    }
+}
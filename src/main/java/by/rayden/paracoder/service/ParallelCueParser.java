@@ -0,0 +1,89 @@
+package by.rayden.paracoder.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.digitalmediaserver.cuelib.CueSheet;
+import org.springframework.lang.Nullable;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Parses and validates the CUE-files in parallel, and passes each of them on as soon as it is parsed,
+ * so the tracks of the first parsed CUE-files are recoded while the others are still being parsed.
+ * <p>
+ * Each CUE-file is read once, and the payloads of all its tracks are created from that one {@link CueSheet}.
+ * The last modified times of the audio files are shared by all the CUE-files of the run.
+ */
+@Slf4j
+public class ParallelCueParser {
+    private static final int MIN_PARALLELISM = 4;
+    private static final int PARALLELISM_PER_CPU = 2;
+
+    private final CueHelper cueHelper;
+    private final LastModifiedTimeCache lastModifiedTimeCache;
+
+    /**
+     * The result of one CUE-file.
+     *
+     * @param cueSheet      null, if the CUE-file has not been read
+     * @param trackPayloads empty, if there is an error
+     * @param error         the error on reading or validating the CUE-file
+     */
+    public record ParsedCueFile(Path cueFilePath, @Nullable CueSheet cueSheet, List<CueTrackPayload> trackPayloads,
+                                @Nullable Exception error) {
+    }
+
+    public ParallelCueParser(CueHelper cueHelper, LastModifiedTimeCache lastModifiedTimeCache) {
+        this.cueHelper = cueHelper;
+        this.lastModifiedTimeCache = lastModifiedTimeCache;
+    }
+
+    /**
+     * A single CUE-file is parsed in this thread.
+     *
+     * @param parsedCueFileConsumer receives each CUE-file as soon as it is parsed (in the order of completion).
+     *                              It is called in this thread, not in the parser threads.
+     */
+    public void parse(List<Path> cueFilePaths, Consumer<ParsedCueFile> parsedCueFileConsumer)
+        throws InterruptedException {
+
+        if (cueFilePaths.size() <= 1) {
+            cueFilePaths.forEach(cueFilePath -> parsedCueFileConsumer.accept(parseCueFile(cueFilePath)));
+            return;
+        }
+
+        int parallelism = Math.min(cueFilePaths.size(),
+            Math.max(MIN_PARALLELISM, Runtime.getRuntime().availableProcessors() * PARALLELISM_PER_CPU));
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+            Thread.ofPlatform().name("cue-parser-", 0).daemon().factory());
+        try {
+            CompletionService<ParsedCueFile> completionService = new ExecutorCompletionService<>(executor);
+            cueFilePaths.forEach(cueFilePath -> completionService.submit(() -> parseCueFile(cueFilePath)));
+
+            for (int i = 0; i < cueFilePaths.size(); i++) {
+                parsedCueFileConsumer.accept(completionService.take().resultNow());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private ParsedCueFile parseCueFile(Path cueFilePath) {
+        CueSheet cueSheet = null;
+        try {
+            cueSheet = this.cueHelper.readCueSheet(cueFilePath);
+            List<CueTrackPayload> trackPayloads = this.cueHelper.getCueTracksPayloadList(cueSheet, cueFilePath,
+                this.lastModifiedTimeCache);
+            return new ParsedCueFile(cueFilePath, cueSheet, trackPayloads, null);
+        } catch (Exception e) {
+            log.debug("Error on parsing the CUE file: {}", cueFilePath, e);
+            return new ParsedCueFile(cueFilePath, cueSheet, Collections.emptyList(), e);
+        }
+    }
+}
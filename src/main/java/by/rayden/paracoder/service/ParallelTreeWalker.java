@@ -0,0 +1,210 @@
+package by.rayden.paracoder.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects the matching files of the input paths, listing the sibling directories in parallel.
+ * <p>
+ * On network shares, the directory listing latency dominates the walk time, so each directory is listed
+ * by a separate task of a work-stealing {@link ForkJoinPool}. The pool is larger than the CPU count,
+ * since the tasks mostly wait for the I/O.
+ * <p>
+ * The matching files are the same as of the sequential {@link CollectToMapFileVisitor}. The directories
+ * with no matching files are pruned: a directory is kept only if it directly contains a matching file
+ * (the sequential visitor keeps or drops a parent directory depending on its last visited subdirectory).
+ */
+@Slf4j
+public class ParallelTreeWalker {
+    private static final int MIN_PARALLELISM = 8;
+    private static final int PARALLELISM_PER_CPU = 2;
+    private static final long POLL_PERIOD_MILLIS = 50;
+
+    /**
+     * The max number of the listed directories waiting for the consumer. When the consumer lags behind,
+     * the walker threads stall instead of listing the whole tree ahead of it.
+     */
+    private static final int WALKED_DIR_QUEUE_CAPACITY = 64;
+
+    private final Set<String> extensions;
+    private final int maxDepth;
+
+    @Nullable
+    private final Consumer<Map<Path, BasicFileAttributes>> dirFilesConsumer;
+
+    private final Map<Path, BasicFileAttributes> pathTree = new ConcurrentHashMap<>();
+    private final BlockingQueue<Map<Path, BasicFileAttributes>> walkedDirFiles =
+        new ArrayBlockingQueue<>(WALKED_DIR_QUEUE_CAPACITY);
+
+    /**
+     * @param maxDepth         the same as of {@link Files#walkFileTree(Path, Set, int, java.nio.file.FileVisitor)}
+     * @param dirFilesConsumer receives the matching files of each directory (sorted by path)
+     *                         as soon as the directory has been listed.
+     *                         It is called in the thread of {@link #walk}, not in the walker threads.
+     */
+    public ParallelTreeWalker(Set<String> extensions, int maxDepth,
+                              @Nullable Consumer<Map<Path, BasicFileAttributes>> dirFilesConsumer) {
+        this.extensions = extensions;
+        this.maxDepth = maxDepth;
+        this.dirFilesConsumer = dirFilesConsumer;
+    }
+
+    /**
+     * @return the matching files and their directories with absolute paths
+     */
+    public Map<Path, BasicFileAttributes> walk(List<Path> inputPaths) throws IOException {
+        int parallelism = Math.max(MIN_PARALLELISM, Runtime.getRuntime().availableProcessors() * PARALLELISM_PER_CPU);
+        var pool = new ForkJoinPool(parallelism);
+        try {
+            List<DirTask> rootTasks = new ArrayList<>();
+            for (Path inputPath : inputPaths) {
+                BasicFileAttributes attrs = Files.readAttributes(inputPath, BasicFileAttributes.class);
+                if (attrs.isDirectory()) {
+                    rootTasks.add(new DirTask(inputPath, attrs, 0));
+                } else {
+                    addInputFile(inputPath, attrs);
+                }
+            }
+
+            ForkJoinTask<?> walkTask = pool.submit(() -> ForkJoinTask.invokeAll(rootTasks));
+            passDirFilesUntilDone(walkTask);
+            walkTask.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The directory walk is interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error on walking the directories", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        log.debug("Walked {} paths", this.pathTree.size());
+        return Collections.unmodifiableMap(this.pathTree);
+    }
+
+    /**
+     * The consumer is called in this thread, so it doesn't need to be thread-safe.
+     */
+    private void passDirFilesUntilDone(ForkJoinTask<?> walkTask) throws InterruptedException {
+        if (this.dirFilesConsumer == null) {
+            return;
+        }
+
+        while (!walkTask.isDone() || !this.walkedDirFiles.isEmpty()) {
+            Map<Path, BasicFileAttributes> dirFiles = this.walkedDirFiles.poll(POLL_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
+            if (dirFiles != null) {
+                this.dirFilesConsumer.accept(dirFiles);
+            }
+        }
+    }
+
+    /**
+     * In case when program argument is a file (not a dir), its parent dir is added to the pathTree.
+     */
+    private void addInputFile(Path inputPath, BasicFileAttributes attrs) throws IOException {
+        if (!isMatching(inputPath)) {
+            return;
+        }
+
+        Path fileAbsolutePath = inputPath.toAbsolutePath();
+        Path parentDir = fileAbsolutePath.getParent();
+        this.pathTree.put(fileAbsolutePath, attrs);
+        if (parentDir != null && !this.pathTree.containsKey(parentDir)) {
+            this.pathTree.put(parentDir, Files.readAttributes(parentDir, BasicFileAttributes.class));
+        }
+
+        // The input files are added before the walk starts, in the thread of the consumer
+        if (this.dirFilesConsumer != null) {
+            this.dirFilesConsumer.accept(Map.of(fileAbsolutePath, attrs));
+        }
+    }
+
+    private boolean isMatching(Path file) {
+        String extension = FilenameUtils.getExtension(file.getFileName().toString().toLowerCase());
+        return this.extensions.contains(extension);
+    }
+
+    private class DirTask extends RecursiveAction {
+        private final Path dir;
+        private final BasicFileAttributes dirAttrs;
+        private final int depth;
+
+        DirTask(Path dir, BasicFileAttributes dirAttrs, int depth) {
+            this.dir = dir;
+            this.dirAttrs = dirAttrs;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirTask> subDirTasks = new ArrayList<>();
+            Map<Path, BasicFileAttributes> dirFiles = new TreeMap<>();
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.dir)) {
+                for (Path entry : entries) {
+                    // The symbolic links are not followed, like in Files.walkFileTree without FOLLOW_LINKS
+                    var attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        if (this.depth + 1 < ParallelTreeWalker.this.maxDepth) {
+                            subDirTasks.add(new DirTask(entry, attrs, this.depth + 1));
+                        }
+                    } else if (isMatching(entry)) {
+                        dirFiles.put(entry.toAbsolutePath(), attrs);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                log.error("I/O error visiting directory: {}", this.dir, e);
+            }
+
+            if (!dirFiles.isEmpty()) {
+                ParallelTreeWalker.this.pathTree.putAll(dirFiles);
+                ParallelTreeWalker.this.pathTree.put(this.dir.toAbsolutePath(), this.dirAttrs);
+                if (ParallelTreeWalker.this.dirFilesConsumer != null && !passToConsumer(dirFiles)) {
+                    return;
+                }
+            }
+
+            invokeAll(subDirTasks);
+        }
+
+        /**
+         * Blocks while the queue is full.
+         *
+         * @return false if the walk is cancelled (the pool is shut down) while waiting
+         */
+        private boolean passToConsumer(Map<Path, BasicFileAttributes> dirFiles) {
+            try {
+                ParallelTreeWalker.this.walkedDirFiles.put(Collections.unmodifiableMap(dirFiles));
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package by.rayden.paracoder.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pumps the output of one pipe stage to the input of the next stage (and to any additional sinks)
+ * in its own thread, counting the transferred bytes.
+ * <p>
+ * One pooled direct buffer is used as a ring for the whole transfer: it is filled from the source,
+ * written completely to every sink and then refilled, so no memory is allocated per chunk.
+ * The sinks are closed at the end of the source, so the next stage sees the end of its input.
+ * When a sink fails (e.g. the next stage has exited), the source is closed too, so the previous stage
+ * gets a "broken pipe" just like in an OS pipe.
+ */
+@Slf4j
+public class PipeBridge {
+    private final String name;
+    private final DirectBufferPool bufferPool;
+    private final ReadableByteChannel source;
+    private final List<WritableByteChannel> sinks;
+
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    @Getter
+    private volatile long elapsedNanos;
+
+    public PipeBridge(String name, DirectBufferPool bufferPool, ReadableByteChannel source,
+                      List<WritableByteChannel> sinks) {
+        this.name = name;
+        this.bufferPool = bufferPool;
+        this.source = source;
+        this.sinks = List.copyOf(sinks);
+    }
+
+    public void start() {
+        Thread.ofPlatform().name(this.name).daemon().start(this::pump);
+    }
+
+    public long getTransferredBytes() {
+        return this.transferredBytes.get();
+    }
+
+    /**
+     * @return false if the waiting time elapsed before the end of the transfer
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.completed.await(timeout, unit);
+    }
+
+    private void pump() {
+        long startNanos = System.nanoTime();
+        try {
+            ByteBuffer buffer = this.bufferPool.acquire();
+            try {
+                while (this.source.read(buffer) >= 0) {
+                    buffer.flip();
+                    writeToSinks(buffer);
+                    buffer.clear();
+                }
+            } finally {
+                this.bufferPool.release(buffer);
+            }
+        } catch (IOException e) {
+            log.debug("Pipe {} is broken after {} bytes", this.name, getTransferredBytes(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeQuietly(this.source);
+            this.sinks.forEach(PipeBridge::closeQuietly);
+            this.elapsedNanos = System.nanoTime() - startNanos;
+            this.completed.countDown();
+            log.debug("Pipe {}: {} bytes in {} ms", this.name, getTransferredBytes(),
+                TimeUnit.NANOSECONDS.toMillis(this.elapsedNanos));
+        }
+    }
+
+    private void writeToSinks(ByteBuffer buffer) throws IOException {
+        int chunkSize = buffer.remaining();
+        for (WritableByteChannel sink : this.sinks) {
+            buffer.position(0);
+            while (buffer.hasRemaining()) {
+                sink.write(buffer);
+            }
+        }
+        this.transferredBytes.addAndGet(chunkSize);
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.trace("Error on closing the pipe channel", e);
+        }
+    }
+}
@@ -1,87 +1,352 @@
 package by.rayden.paracoder.service;
 
+import by.rayden.paracoder.cli.command.CommandController;
 import by.rayden.paracoder.utils.OutUtils;
 import by.rayden.paracoder.win32native.OsNative;
 import com.sun.jna.WString;
 import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.VisibleForTesting;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
+import picocli.CommandLine;
 
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
 
 @Service
 @Slf4j
 public class ProcessRunner {
+    private static final long CPU_SAMPLE_PERIOD_MILLIS = 500;
+
     private final RecoderThreadPool pool;
     private final OsNative osNative;
+    private final CommandController commandController;
+    private final DirectBufferPool bufferPool;
+
+    @Nullable
+    private Path tempLogDir;
 
-    public ProcessRunner(@Lazy RecoderThreadPool pool, OsNative osNative) {
+    public ProcessRunner(@Lazy RecoderThreadPool pool, OsNative osNative, @Lazy CommandController commandController,
+                         DirectBufferPool bufferPool) {
         this.pool = pool;
         this.osNative = osNative;
+        this.commandController = commandController;
+        this.bufferPool = bufferPool;
     }
 
     public CompletableFuture<Integer> execCommandAsync(String recodeCommand, Path sourceFilePath) {
-        return CompletableFuture.supplyAsync(() -> exec(recodeCommand, sourceFilePath), this.pool.getExecutor());
+        return execCommandAsync(new ResolvedCommand(recodeCommand, parseStages(recodeCommand)), List.of(),
+            sourceFilePath, List.of(), () -> false, new JobMetrics(sourceFilePath));
+    }
+
+    /**
+     * @param teeCommands     the commands reading the output of the recode command at the same time (may be empty)
+     * @param outputFilePaths the files written by the commands, their growth is the progress of the job
+     *                        (see {@link JobWatchdog})
+     * @param isAlreadyDone   is checked in the pool thread right before the command is run.
+     *                        When it returns true, the command is not run and the OK exit code is returned.
+     * @param jobMetrics      receives the timings of the job. Its audio duration sets the deadline of the job.
+     */
+    public CompletableFuture<Integer> execCommandAsync(ResolvedCommand recodeCommand,
+                                                       List<ResolvedCommand> teeCommands, Path sourceFilePath,
+                                                       List<Path> outputFilePaths, BooleanSupplier isAlreadyDone,
+                                                       JobMetrics jobMetrics) {
+        return CompletableFuture.supplyAsync(
+            () -> runLimited(jobMetrics, () -> {
+                if (isAlreadyDone.getAsBoolean()) {
+                    jobMetrics.markEnded(true);
+                    return CommandLine.ExitCode.OK;
+                }
+                return exec(recodeCommand, teeCommands, sourceFilePath, outputFilePaths, jobMetrics);
+            }),
+            this.pool.getExecutor());
     }
 
-    // TODO 2024-02-07: Add process output redirect (configurable by CLI option) to a file.
-    //  See java.lang.ProcessBuilder.Redirect.appendTo
-    //  A file name should have a thread name to not mix output from different threads.
+    /**
+     * In the virtual threads mode, the job waits for its turn to run the processes (or to restore from the cache).
+     * Otherwise, the number of the pool threads is the limit.
+     */
+    private int runLimited(JobMetrics jobMetrics, IntSupplier job) {
+        ConcurrencyLimiter processLimiter = this.pool.getProcessLimiter();
+        if (processLimiter == null) {
+            jobMetrics.markStarted();
+            return job.getAsInt();
+        }
+
+        try {
+            processLimiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        try {
+            jobMetrics.markStarted();
+            return job.getAsInt();
+        } finally {
+            processLimiter.release();
+        }
+    }
 
     // TODO 2024-02-07: Extract ProcessBuilder as class dependency for flexible testing.
-    private int exec(String recodeCommand, Path sourceFilePath) {
+    private int exec(ResolvedCommand recodeCommand, List<ResolvedCommand> teeCommands, Path sourceFilePath,
+                     List<Path> outputFilePaths, JobMetrics jobMetrics) {
         log.debug("Recode command: {}", recodeCommand);
+        log.atDebug().setMessage("Recode command argv: {}").addArgument(recodeCommand::argv).log();
+        log.atDebug().setMessage("Tee commands: {}").addArgument(teeCommands).log();
         String threadName = Thread.currentThread().getName();
         OutUtils.ansiOut("Processing: @|yellow " + threadName + "|@ @|bold,blue " + sourceFilePath + "|@");
 
+        JobOutputLog outputLog = null;
+        boolean isFailed = true;
         try {
-            Process lastProcess = runProcessWithRedirect(recodeCommand);
-            boolean isCompleted = lastProcess.waitFor(9, TimeUnit.MINUTES);
-
-            if (isCompleted) {
-                return lastProcess.exitValue();
-            } else {
-                log.error("Waiting time for recode command has expired: {}", recodeCommand);
-                throw new RuntimeException("Waiting time for recode command has expired: " + recodeCommand);
-            }
+            outputLog = createOutputLog(jobMetrics.getTargetFilePath());
+            StartedProcesses processes = teeCommands.isEmpty()
+                ? StartedProcesses.ofPipeline(runProcessWithRedirect(recodeCommand, outputLog))
+                : runTeeProcesses(recodeCommand, teeCommands, outputLog);
+            jobMetrics.markProcessStarted();
+            List<Path> watchedFilePaths = new ArrayList<>(outputFilePaths);
+            watchedFilePaths.add(outputLog.getLogFile());
+            var watchdog = new JobWatchdog(jobMetrics.getAudioSeconds(),
+                this.commandController.getStallTimeoutSeconds(), watchedFilePaths, System.nanoTime());
+            int exitCode = waitForAll(processes, recodeCommand.text(), watchdog, jobMetrics);
+            isFailed = exitCode != CommandLine.ExitCode.OK;
+            return exitCode;
         } catch (IOException | InterruptedException e) {
             log.error("Recode command error: {}", recodeCommand, e);
             throw new RuntimeException(e);
+        } finally {
+            jobMetrics.markEnded(false);
+            if (outputLog != null) {
+                if (isFailed) {
+                    showOutputTail(outputLog, recodeCommand);
+                }
+                outputLog.close();
+            }
+        }
+    }
+
+    /**
+     * The logs are kept in the process log directory, when it is set.
+     * Otherwise, they are written to a temporary directory and deleted when the job is completed.
+     */
+    private JobOutputLog createOutputLog(Path targetFilePath) throws IOException {
+        Path processLogDir = this.commandController.getProcessLogDir();
+        if (processLogDir != null) {
+            return JobOutputLog.create(Files.createDirectories(processLogDir), targetFilePath, true);
+        }
+        return JobOutputLog.create(getTempLogDir(), targetFilePath, false);
+    }
+
+    private synchronized Path getTempLogDir() throws IOException {
+        if (this.tempLogDir == null) {
+            this.tempLogDir = Files.createTempDirectory("paracoder-output");
+            this.tempLogDir.toFile().deleteOnExit();
+        }
+        return this.tempLogDir;
+    }
+
+    /**
+     * The tail is shown at once, so it is not interleaved with the output of other jobs.
+     */
+    private void showOutputTail(JobOutputLog outputLog, ResolvedCommand recodeCommand) {
+        List<String> tail;
+        try {
+            tail = outputLog.readTail();
+        } catch (IOException e) {
+            log.error("Error on reading the output log: {}", outputLog.getLogFile(), e);
+            return;
+        }
+
+        log.error("Output of the failed recode command: {}\n{}", recodeCommand, String.join("\n", tail));
+        if (!tail.isEmpty()) {
+            var message = new StringBuilder(" Output of the failed command: @|yellow " + recodeCommand + "|@");
+            tail.forEach(line -> message.append(System.lineSeparator()).append("   ").append(line));
+            OutUtils.ansiErr(message.toString());
+        }
+    }
+
+    /**
+     * @param all     all the started processes of the command
+     * @param awaited the processes whose exit codes are the result of the command
+     */
+    private record StartedProcesses(List<Process> all, List<Process> awaited) {
+        static StartedProcesses ofPipeline(List<Process> processes) {
+            return new StartedProcesses(processes, List.of(processes.getLast()));
+        }
+    }
+
+    /**
+     * The CPU time of the processes is sampled while waiting: on Linux, it can't be read after a process is reaped.
+     * So the CPU time of the last {@link #CPU_SAMPLE_PERIOD_MILLIS} of a process may be missed.
+     * <p>
+     * The watchdog is checked on each sample, and all the processes are killed when it says the job is hung
+     * or too long, so the thread is freed for the next job.
+     *
+     * @return the exit code of the first awaited process that has failed, or the OK exit code
+     */
+    private int waitForAll(StartedProcesses processes, String recodeCommand, JobWatchdog watchdog,
+                           JobMetrics jobMetrics) throws InterruptedException {
+
+        long[] cpuNanos = new long[processes.all().size()];
+        int exitCode = CommandLine.ExitCode.OK;
+
+        try {
+            for (Process process : processes.awaited()) {
+                while (!process.waitFor(CPU_SAMPLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) {
+                    sampleCpuTime(processes.all(), cpuNanos);
+                    String killReason = watchdog.check(Arrays.stream(cpuNanos).sum(), System.nanoTime());
+                    if (killReason != null) {
+                        killAll(processes.all());
+                        log.error("Recode command is killed, {}: {}", killReason, recodeCommand);
+                        throw new RuntimeException("Recode command is killed, " + killReason + ": " + recodeCommand);
+                    }
+                }
+                if (exitCode == CommandLine.ExitCode.OK) {
+                    exitCode = process.exitValue();
+                }
+            }
+        } finally {
+            sampleCpuTime(processes.all(), cpuNanos);
+            jobMetrics.setCpuNanos(Arrays.stream(cpuNanos).sum());
+        }
+        return exitCode;
+    }
+
+    /**
+     * The children of a process (e.g. of a shell) would keep its pipes open, so they are killed too.
+     */
+    private static void killAll(List<Process> processes) {
+        for (Process process : processes) {
+            process.descendants().forEach(ProcessHandle::destroyForcibly);
+            process.destroyForcibly();
+        }
+    }
+
+    private static void sampleCpuTime(List<Process> processes, long[] cpuNanos) {
+        for (int i = 0; i < processes.size(); i++) {
+            int index = i;
+            processes.get(i).info().totalCpuDuration()
+                     .ifPresent(duration -> cpuNanos[index] = Math.max(cpuNanos[index], duration.toNanos()));
         }
     }
 
-    private Process runProcessWithRedirect(String recodeCommand) throws IOException {
-        return runProcess(recodeCommand, true);
+    private List<Process> runProcessWithRedirect(ResolvedCommand recodeCommand, JobOutputLog outputLog)
+        throws IOException {
+
+        List<ProcessBuilder> builders = makeProcessBuilders(recodeCommand.argv());
+        applyRedirects(builders, outputLog);
+        return startPipeline(builders);
     }
 
     @VisibleForTesting
     Process runProcessWithoutRedirect(String recodeCommand) throws IOException {
-        return runProcess(recodeCommand, false);
+        return startPipeline(makeProcessBuilders(parseStages(recodeCommand))).getLast();
     }
 
-    private Process runProcess(String recodeCommand, boolean useRedirects) throws IOException {
-        List<ProcessBuilder> builders = makeProcessBuilders(recodeCommand);
-        if (useRedirects) {
-            applyRedirects(builders);
+    /**
+     * The source is decoded once: the output of the decoder command is pumped by one {@link PipeBridge}
+     * to the inputs of all the encoder commands, which run at the same time.
+     *
+     * @return all the processes, the awaited ones are the last processes of the decoder and of every encoder
+     */
+    private StartedProcesses runTeeProcesses(ResolvedCommand decoderCommand, List<ResolvedCommand> encoderCommands,
+                                             JobOutputLog outputLog) throws IOException {
+
+        List<ProcessBuilder> decoderBuilders = makeProcessBuilders(decoderCommand.argv());
+        decoderBuilders.getFirst().redirectInput(ProcessBuilder.Redirect.INHERIT);
+        decoderBuilders.forEach(builder -> builder.redirectError(outputLog.getRedirect()));
+
+        List<List<ProcessBuilder>> encoderBuilderList =
+            encoderCommands.stream().map(encoderCommand -> makeProcessBuilders(encoderCommand.argv())).toList();
+        for (List<ProcessBuilder> encoderBuilders : encoderBuilderList) {
+            encoderBuilders.getLast().redirectOutput(outputLog.getRedirect());
+            encoderBuilders.forEach(builder -> builder.redirectError(outputLog.getRedirect()));
         }
-        List<Process> processes = ProcessBuilder.startPipeline(builders);
-        return processes.getLast();
+
+        List<Process> startedProcesses = new ArrayList<>();
+        try {
+            List<Process> decoderProcesses = startPipeline(decoderBuilders);
+            startedProcesses.addAll(decoderProcesses);
+
+            List<Process> lastProcesses = new ArrayList<>();
+            lastProcesses.add(decoderProcesses.getLast());
+            List<WritableByteChannel> encoderInputs = new ArrayList<>();
+            for (List<ProcessBuilder> encoderBuilders : encoderBuilderList) {
+                List<Process> encoderProcesses = startPipeline(encoderBuilders);
+                startedProcesses.addAll(encoderProcesses);
+                encoderInputs.add(Channels.newChannel(encoderProcesses.getFirst().getOutputStream()));
+                lastProcesses.add(encoderProcesses.getLast());
+            }
+
+            new PipeBridge(Thread.currentThread().getName() + "-tee", this.bufferPool,
+                Channels.newChannel(decoderProcesses.getLast().getInputStream()), encoderInputs).start();
+            return new StartedProcesses(List.copyOf(startedProcesses), lastProcesses);
+        } catch (IOException | RuntimeException e) {
+            startedProcesses.forEach(Process::destroyForcibly);
+            throw e;
+        }
+    }
+
+    private List<Process> startPipeline(List<ProcessBuilder> builders) throws IOException {
+        return builders.size() > 1 && this.commandController.isBridgePipes()
+            ? startBridgedPipeline(builders)
+            : ProcessBuilder.startPipeline(builders);
     }
 
     /**
-     * A recodeCommand can have just one command/process to run as well.
+     * Unlike {@link ProcessBuilder#startPipeline}, the processes are not connected directly by OS pipes.
+     * The output of each process is pumped to the input of the next one by a {@link PipeBridge}.
      */
-    private List<ProcessBuilder> makeProcessBuilders(String recodeCommand) {
+    private List<Process> startBridgedPipeline(List<ProcessBuilder> builders) throws IOException {
+        List<Process> processes = new ArrayList<>(builders.size());
+        try {
+            for (ProcessBuilder builder : builders) {
+                processes.add(builder.start());
+            }
+        } catch (IOException | RuntimeException e) {
+            processes.forEach(Process::destroyForcibly);
+            throw e;
+        }
+
+        String threadName = Thread.currentThread().getName();
+        for (int i = 0; i < processes.size() - 1; i++) {
+            var pipeBridge = new PipeBridge(threadName + "-pipe-" + i, this.bufferPool,
+                Channels.newChannel(processes.get(i).getInputStream()),
+                List.of(Channels.newChannel(processes.get(i + 1).getOutputStream())));
+            pipeBridge.start();
+        }
+        return processes;
+    }
+
+    /**
+     * A command can have just one stage (process to run) as well.
+     */
+    private List<ProcessBuilder> makeProcessBuilders(List<List<String>> stages) {
+        return stages.stream()
+                     .map(ProcessBuilder::new)
+                     .toList();
+    }
+
+    /**
+     * The command text which is not made from a {@link CommandTemplate} is split into the stages of the pipe
+     * and then into the args.
+     */
+    private List<List<String>> parseStages(String recodeCommand) {
         return Arrays.stream(recodeCommand.split("\\|"))
                      .map(String::trim)
                      .map(this::parseCommand)
-                     .map(ProcessBuilder::new)
+                     .map(Arrays::asList)
                      .toList();
     }
 
@@ -89,16 +354,13 @@ public class ProcessRunner {
      * The redirects for standard input of the first process
      * and standard output of the last process
      * are initialized using the redirect settings of the respective ProcessBuilder.
-     * All other ProcessBuilder redirects should be Redirect.PIPE.
+     * The standard error of every process goes to the output log too, so a chatty middle process can't block
+     * on its full pipe. All other ProcessBuilder redirects should be Redirect.PIPE.
      */
-    private void applyRedirects(List<ProcessBuilder> builderList) {
-        builderList.getFirst()
-                   .redirectInput(ProcessBuilder.Redirect.INHERIT)
-                   .redirectError(ProcessBuilder.Redirect.INHERIT);
-
-        builderList.getLast()
-                   .redirectOutput(ProcessBuilder.Redirect.INHERIT)
-                   .redirectError(ProcessBuilder.Redirect.INHERIT);
+    private void applyRedirects(List<ProcessBuilder> builderList, JobOutputLog outputLog) {
+        builderList.getFirst().redirectInput(ProcessBuilder.Redirect.INHERIT);
+        builderList.getLast().redirectOutput(outputLog.getRedirect());
+        builderList.forEach(builder -> builder.redirectError(outputLog.getRedirect()));
     }
 
     private String[] parseCommand(String str) {
@@ -0,0 +1,142 @@
+package by.rayden.paracoder.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The live progress view of one run: the active job of each slot (the pool thread running it), the number of
+ * completed jobs, the throughput and the ETA by the source bytes.
+ * <p>
+ * The jobs report their events to a lock-free queue, and the state is updated only by the thread which renders
+ * the view (see {@link by.rayden.paracoder.utils.ConsoleRenderer}), so the jobs never wait for each other.
+ */
+public class ProgressDashboard {
+    static final int MAX_FILE_NAME_LENGTH = 60;
+
+    private final Queue<JobEvent> events = new ConcurrentLinkedQueue<>();
+
+    // The state below is used by the rendering thread only
+    private final Map<RecodeJob, ActiveJob> activeJobs = new HashMap<>();
+    private final long startNanos = System.nanoTime();
+    private int submittedJobs;
+    private int completedJobs;
+    private int failedJobs;
+    private long submittedBytes;
+    private long completedBytes;
+
+    private sealed interface JobEvent {
+    }
+
+    private record Submitted(RecodeJob job, long sourceBytes) implements JobEvent {
+    }
+
+    private record Started(RecodeJob job, String slot, long nanos) implements JobEvent {
+    }
+
+    private record Completed(RecodeJob job, long sourceBytes, boolean isFailed) implements JobEvent {
+    }
+
+    private record ActiveJob(String slot, long startNanos) {
+    }
+
+    /**
+     * @param sourceBytes the bytes of the source read by the job (estimated for a CUE track)
+     */
+    public void jobSubmitted(RecodeJob job, long sourceBytes) {
+        this.events.add(new Submitted(job, sourceBytes));
+    }
+
+    /**
+     * Called in the thread of the job, which is its slot.
+     */
+    public void jobStarted(RecodeJob job) {
+        this.events.add(new Started(job, Thread.currentThread().getName(), System.nanoTime()));
+    }
+
+    public void jobCompleted(RecodeJob job, long sourceBytes, boolean isFailed) {
+        this.events.add(new Completed(job, sourceBytes, isFailed));
+    }
+
+    /**
+     * Must be called by one thread only.
+     *
+     * @return the lines of the view: one per active job (sorted by slot), then the totals
+     */
+    public List<String> render() {
+        applyEvents();
+
+        long nowNanos = System.nanoTime();
+        List<String> lines = new ArrayList<>(this.activeJobs.size() + 1);
+        this.activeJobs.entrySet().stream()
+                       .sorted(Map.Entry.comparingByValue(Comparator.comparing(ActiveJob::slot)))
+                       .forEach(entry -> lines.add(formatActiveJob(entry.getKey(), entry.getValue(), nowNanos)));
+        lines.add(formatTotals(nowNanos));
+        return lines;
+    }
+
+    private void applyEvents() {
+        JobEvent event;
+        while ((event = this.events.poll()) != null) {
+            switch (event) {
+                case Submitted submitted -> {
+                    this.submittedJobs++;
+                    this.submittedBytes += submitted.sourceBytes();
+                }
+                case Started started ->
+                    this.activeJobs.put(started.job(), new ActiveJob(started.slot(), started.nanos()));
+                case Completed completed -> {
+                    this.activeJobs.remove(completed.job());
+                    this.completedJobs++;
+                    this.completedBytes += completed.sourceBytes();
+                    if (completed.isFailed()) {
+                        this.failedJobs++;
+                    }
+                }
+            }
+        }
+    }
+
+    private static String formatActiveJob(RecodeJob job, ActiveJob activeJob, long nowNanos) {
+        String fileName = String.valueOf(job.getTargetFilePath().getFileName());
+        if (fileName.length() > MAX_FILE_NAME_LENGTH) {
+            fileName = fileName.substring(0, MAX_FILE_NAME_LENGTH - 1) + "…";
+        }
+        return String.format(Locale.ROOT, " @|yellow %-12s|@ %s @|faint (%s)|@", activeJob.slot(),
+            escapeMarkup(fileName), formatSeconds(TimeUnit.NANOSECONDS.toSeconds(nowNanos - activeJob.startNanos())));
+    }
+
+    /**
+     * The ETA is the remaining source bytes of the submitted jobs at the throughput of the run so far.
+     */
+    private String formatTotals(long nowNanos) {
+        double elapsedSeconds = (nowNanos - this.startNanos) / 1e9;
+        double bytesPerSecond = elapsedSeconds > 0 ? this.completedBytes / elapsedSeconds : 0;
+        String eta = bytesPerSecond > 0
+            ? formatSeconds(Math.round((this.submittedBytes - this.completedBytes) / bytesPerSecond))
+            : "--:--";
+
+        String failed = this.failedJobs > 0 ? ", @|red " + this.failedJobs + " failed|@" : "";
+        return String.format(Locale.ROOT, "@|bold Jobs: %d/%d|@%s | %.1f MB/s | ETA %s", this.completedJobs,
+            this.submittedJobs, failed, bytesPerSecond / (1024 * 1024), eta);
+    }
+
+    private static String formatSeconds(long seconds) {
+        return seconds >= 3600
+            ? String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60)
+            : String.format(Locale.ROOT, "%02d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * A file name may have the markup chars, which must not be rendered.
+     */
+    private static String escapeMarkup(String text) {
+        return text.replace("@|", "@ |");
+    }
+}
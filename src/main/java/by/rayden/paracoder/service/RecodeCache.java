@@ -0,0 +1,216 @@
+package by.rayden.paracoder.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The content-addressed cache of the target files.
+ * <p>
+ * The cache key of a job is a hash of the audio file content and of the command with unresolved file path
+ * placeholders (see {@link RecodeCommand#getCacheKeyCommand(RecodeJob)}), so the byte-identical sources recoded
+ * by the same command share one cache entry. For a CUE track, the track interval is a part of the command.
+ * <p>
+ * The entries are copied both into and out of the cache. Hard links would be cheaper, but then an in-place tag
+ * edit of one target file would silently change the cache entry and all other targets linked to it.
+ * <p>
+ * The key needs the hash of the whole audio file, so each job run with the cache reads its source once more
+ * (only once per run for all the tracks of a CUE-file). With the staging, the staged copy is read instead,
+ * so a remote source is still read over the network only once.
+ */
+@Slf4j
+public class RecodeCache {
+    @Getter
+    private final Path cacheDir;
+    private final RecodeCommand recodeCommand;
+    private final DirectBufferPool bufferPool;
+
+    /**
+     * All the tracks of a CUE-file are read from the same audio file, so its hash is calculated once per run.
+     * The hash is calculated outside the map by the first job, the other jobs of the file wait for its future.
+     */
+    private final Map<ContentKey, CompletableFuture<String>> contentHashes = new ConcurrentHashMap<>();
+
+    private record ContentKey(Path path, long size, long lastModifiedMillis) {
+    }
+
+    public RecodeCache(Path cacheDir, RecodeCommand recodeCommand, DirectBufferPool bufferPool) throws IOException {
+        this.cacheDir = Files.createDirectories(cacheDir.toAbsolutePath());
+        this.recodeCommand = recodeCommand;
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Copies the cached target files of the identical job (if any) to the partial file paths of the job,
+     * so they are committed to the target files the same way as the recoded ones.
+     *
+     * @param readFilePath the file to hash the content of: the audio file of the job, or its staged copy
+     * @return true if all the target files are restored from the cache, so the job should not be run.
+     */
+    public boolean restore(RecodeJob job, Path readFilePath) throws IOException {
+        String key = getKey(job, readFilePath);
+        if (!hasEntry(key, job)) {
+            return false;
+        }
+
+        List<Path> targetFilePaths = job.getTargetFilePaths();
+        List<Path> partialFilePaths = job.getPartialFilePaths();
+        for (int i = 0; i < targetFilePaths.size(); i++) {
+            Path partialFilePath = partialFilePaths.get(i);
+            Path cacheFile = getCacheFile(key, i, targetFilePaths.get(i));
+            Files.createDirectories(partialFilePath.toAbsolutePath().getParent());
+            Files.copy(cacheFile, partialFilePath, StandardCopyOption.REPLACE_EXISTING);
+            log.info("Restored from cache {} -> {}", cacheFile, partialFilePath);
+        }
+        return true;
+    }
+
+    private boolean hasEntry(String key, RecodeJob job) {
+        List<Path> targetFilePaths = job.getTargetFilePaths();
+        for (int i = 0; i < targetFilePaths.size(); i++) {
+            if (!Files.isRegularFile(getCacheFile(key, i, targetFilePaths.get(i)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the target files of the successfully completed job into the cache.
+     * An entry is written to a temporary file first, so a concurrent {@link #restore} never sees a partial file.
+     *
+     * @param readFilePath the file to hash the content of: the audio file of the job, or its staged copy
+     */
+    public void store(RecodeJob job, Path readFilePath) throws IOException {
+        String key = getKey(job, readFilePath);
+        List<Path> targetFilePaths = job.getTargetFilePaths();
+        for (int i = 0; i < targetFilePaths.size(); i++) {
+            store(targetFilePaths.get(i), getCacheFile(key, i, targetFilePaths.get(i)));
+        }
+    }
+
+    private void store(Path targetFilePath, Path cacheFile) throws IOException {
+        if (Files.exists(cacheFile)) {
+            return;
+        }
+
+        Files.createDirectories(cacheFile.getParent());
+        Path tempFile = Files.createTempFile(cacheFile.getParent(), cacheFile.getFileName().toString(), ".tmp");
+        try {
+            Files.copy(targetFilePath, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Stored to cache {} -> {}", targetFilePath, cacheFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * The entries are spread over 256 subdirectories by the first byte of the key.
+     * The target file extension is kept, so the cached files can be examined by the usual tools.
+     * The outputs of a job with the tee commands are distinguished by their index.
+     */
+    private Path getCacheFile(String key, int outputIndex, Path targetFilePath) {
+        String baseName = outputIndex == 0 ? key : key + "-" + outputIndex;
+        String extension = FilenameUtils.getExtension(targetFilePath.toString());
+        String fileName = extension.isEmpty() ? baseName : baseName + "." + extension;
+
+        return this.cacheDir.resolve(key.substring(0, 2)).resolve(fileName);
+    }
+
+    private String getKey(RecodeJob job, Path readFilePath) throws IOException {
+        MessageDigest digest = newDigest();
+        digest.update(getContentHash(job.getAudioFilePath(), readFilePath).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+        digest.update(this.recodeCommand.getCacheKeyCommand(job).getBytes(StandardCharsets.UTF_8));
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * The hash is memoized by the audio file itself, while the content is read from the given file,
+     * which is the same content.
+     */
+    private String getContentHash(Path audioFilePath, Path readFilePath) throws IOException {
+        var attrs = Files.readAttributes(audioFilePath, BasicFileAttributes.class);
+        var contentKey = new ContentKey(audioFilePath, attrs.size(), attrs.lastModifiedTime().toMillis());
+
+        var newHash = new CompletableFuture<String>();
+        CompletableFuture<String> hash = this.contentHashes.putIfAbsent(contentKey, newHash);
+        if (hash == null) {
+            hash = newHash;
+            try {
+                newHash.complete(hashContent(readFilePath));
+            } catch (RuntimeException e) {
+                // The failure is not cached, so the next job of the file tries again
+                this.contentHashes.remove(contentKey, newHash);
+                newHash.completeExceptionally(e);
+            }
+        }
+
+        try {
+            return hash.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException ioException) {
+                throw ioException.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The file is read sequentially with large reads into a pooled direct buffer
+     * (a thread-local buffer would be allocated for every job in the virtual threads mode).
+     */
+    private String hashContent(Path filePath) {
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer;
+        try {
+            buffer = this.bufferPool.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+
+        try (var channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.bufferPool.release(buffer);
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,18 +1,26 @@
 package by.rayden.paracoder.service;
 
 import by.rayden.paracoder.config.PatternProperties;
+import by.rayden.paracoder.config.PatternProperties.ArgvTemplate;
+import by.rayden.paracoder.config.PatternProperties.CueSplitTemplate;
+import by.rayden.paracoder.config.PatternProperties.TeeTemplate;
+import by.rayden.paracoder.service.CommandTemplate.Placeholder;
 import org.apache.commons.io.FilenameUtils;
 import org.jetbrains.annotations.VisibleForTesting;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 import java.nio.file.Path;
-import java.text.DecimalFormat;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.stream.Collector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class RecodeCommand {
@@ -33,92 +41,435 @@ public class RecodeCommand {
         '>', '˃'
     );
 
-    private static final DateTimeFormatter FFMPEG_TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+    /**
+     * The end time of the last track of the audio file, which is used only in the "-to {{CUE_ET}}" templates.
+     * ffmpeg stops at the end of the file anyway, the "{{CUE_TO}}" placeholder omits the "-to" option instead.
+     */
+    private static final String OPEN_END_FFMPEG_TIME = "999:59:59.999999";
+
     private final PatternProperties patternProperties;
 
+    /**
+     * The templates are compiled at startup and then reused for all the jobs.
+     */
+    private final Map<String, CommandTemplate> compiledTemplates = new ConcurrentHashMap<>();
+    private final Map<ArgvTemplate, CommandTemplate> compiledArgvTemplates = new ConcurrentHashMap<>();
+
+    private record Metadata(String key, String value) {
+    }
+
+    /**
+     * All the configured templates are compiled at once, so an invalid template fails the startup
+     * instead of the jobs in the middle of the run.
+     */
     public RecodeCommand(PatternProperties patternProperties) {
         this.patternProperties = patternProperties;
+        compileAll();
     }
 
+    /**
+     * @return the recode command, or the decoder command if there is a tee template for the file extension
+     */
     public String getCommand(Path filePath) {
-        String extension = FilenameUtils.getExtension(filePath.toString());
-        String commandTemplate = getCommandTemplate(extension.toLowerCase(), "any");
+        return getFileCommandTemplate(filePath).render(new PlaceholderValues(filePath.toString(), null));
+    }
 
-        return resolvePlaceholders(commandTemplate, filePath.toString());
+    /**
+     * @see #getCommand(Path)
+     */
+    public ResolvedCommand resolveCommand(Path filePath) {
+        return resolve(getFileCommandTemplate(filePath), new PlaceholderValues(filePath.toString(), null));
+    }
+
+    /**
+     * @return the encoder commands of the tee template for the file extension, or an empty list if there is none
+     */
+    public List<String> getTeeCommands(Path filePath) {
+        return resolveTeeCommands(filePath).stream().map(ResolvedCommand::text).toList();
+    }
+
+    /**
+     * @see #getTeeCommands(Path)
+     */
+    public List<ResolvedCommand> resolveTeeCommands(Path filePath) {
+        TeeTemplate teeTemplate = getTeeTemplate(FilenameUtils.getExtension(filePath.toString()).toLowerCase());
+        if (teeTemplate == null) {
+            return List.of();
+        }
+
+        var values = new PlaceholderValues(filePath.toString(), null);
+        return teeTemplate.getEncoders().stream()
+                          .map(encoderTemplate -> resolve(compile(encoderTemplate), values))
+                          .toList();
     }
 
     public String getCommand(CueTrackPayload cueTrackPayload) {
-        String audioFileExt = FilenameUtils.getExtension(cueTrackPayload.getAudioFilePath().toString());
-        String commandTemplate = getCommandTemplate("cue_" + audioFileExt.toLowerCase(), "cue_any");
+        return getCueCommandTemplate(cueTrackPayload)
+            .render(new PlaceholderValues(cueTrackPayload.getAudioFilePath().toString(), cueTrackPayload));
+    }
+
+    /**
+     * @see #getCommand(CueTrackPayload)
+     */
+    public ResolvedCommand resolveCommand(CueTrackPayload cueTrackPayload) {
+        return resolve(getCueCommandTemplate(cueTrackPayload),
+            new PlaceholderValues(cueTrackPayload.getAudioFilePath().toString(), cueTrackPayload));
+    }
 
-        return resolvePlaceholders(commandTemplate, cueTrackPayload);
+    /**
+     * @return true if all the tracks of the audio file are recoded by one CUE split command
+     */
+    public boolean hasCueSplitTemplate(Path audioFilePath) {
+        return findCueSplitTemplate(audioFilePath) != null;
     }
 
-    private String getCommandTemplate(String extension, String defaultExt) {
-        Map<String, String> commandTemplateMap = this.patternProperties.getCommandTemplate();
-        return commandTemplateMap.containsKey(extension) ?
-            commandTemplateMap.get(extension) : commandTemplateMap.get(defaultExt);
+    /**
+     * The split command of the tracks of one audio file: the input part once, then the output part of each track.
+     * So the audio file is decoded once, and the tracks are cut by the output "-ss"/"-to" options.
+     */
+    public ResolvedCommand resolveCueSplitCommand(List<CueTrackPayload> trackPayloads) {
+        return resolveCueSplit(trackPayloads, trackPayloads.getFirst().getAudioFilePath().toString());
     }
 
-    private String resolvePlaceholders(String commandTemplate, String filePath) {
-        return commandTemplate.replace("{{F}}", filePath)
-                              .replace("{{D}}", FilenameUtils.getPrefix(filePath))
-                              .replace("{{P}}", FilenameUtils.getPath(filePath))
-                              .replace("{{N}}", FilenameUtils.getBaseName(filePath));
+    /**
+     * @return the output part of the split command for each track, which ends with the target file of the track
+     */
+    public List<ResolvedCommand> resolveCueSplitOutputs(List<CueTrackPayload> trackPayloads) {
+        return resolveCueSplitOutputs(trackPayloads, trackPayloads.getFirst().getAudioFilePath().toString());
     }
 
-    private String resolvePlaceholders(String commandTemplate, CueTrackPayload trackPayload) {
-        String filePath = trackPayload.getAudioFilePath().toString();
-        final DecimalFormat numberFormater = new DecimalFormat("#00");
+    /**
+     * The templates that can be used to recode the source file.
+     * <p>For a CUE-file, the template depends on the extension of its audio file, which is unknown before parsing.
+     * Therefore, all the CUE templates are returned.
+     */
+    public List<String> getCommandTemplates(Path sourceFilePath) {
+        String extension = FilenameUtils.getExtension(sourceFilePath.toString()).toLowerCase();
+
+        if (CueHelper.CUE_EXT.equals(extension)) {
+            Stream<String> keys = Stream.of(this.patternProperties.getCommandTemplate().keySet(),
+                                            this.patternProperties.getArgvTemplate().keySet(),
+                                            this.patternProperties.getCueSplitTemplate().keySet())
+                                        .flatMap(Collection::stream);
+            return keys.filter(key -> key.startsWith("cue_"))
+                       .distinct()
+                       .sorted()
+                       .map(this::getCueTemplateText)
+                       .toList();
+        }
+        TeeTemplate teeTemplate = getTeeTemplate(extension);
+        if (teeTemplate != null) {
+            return getTeeTemplateLines(teeTemplate);
+        }
+        return List.of(getCommandTemplate(extension, "any").getText());
+    }
+
+    /**
+     * The command of the job with the file path placeholders left unresolved.
+     * Two jobs with the same cache key command produce the same target file content from the same audio content.
+     */
+    public String getCacheKeyCommand(RecodeJob job) {
+        CueTrackPayload trackPayload = job.getCueTrackPayload();
+        if (!job.isCueJob()) {
+            String extension = FilenameUtils.getExtension(job.getAudioFilePath().toString()).toLowerCase();
+            TeeTemplate teeTemplate = getTeeTemplate(extension);
+            if (teeTemplate != null) {
+                return String.join("\n", getTeeTemplateLines(teeTemplate));
+            }
+            return getCommandTemplate(extension, "any").getText();
+        }
+
+        if (trackPayload == null) {
+            return resolveCueSplit(job.getSplitTrackPayloads(), null).text();
+        }
+        return getCueCommandTemplate(trackPayload).render(new PlaceholderValues(null, trackPayload));
+    }
 
-        // Required values for placeholders. Cannot be null.
-        return resolvePlaceholders(commandTemplate, filePath)
-            .replace("{{CUE_ST}}", trackPayload.getStartTime().format(FFMPEG_TIME_FORMATTER))
-            .replace("{{CUE_ET}}", trackPayload.getEndTime().format(FFMPEG_TIME_FORMATTER))
-            .replace("{{CUE_METADATA}}", makeFFMpegMetadata(trackPayload))
-            .replace("{{CUE_NUM}}", numberFormater.format(trackPayload.getTrackNumber()))
-            .replace("{{CUE_TITLE}}", sanitizeFileName(Objects.requireNonNull(trackPayload.getTitle())))
-            .replace("{{CUE_ARTIST}}", sanitizeFileName(Objects.requireNonNull(trackPayload.getPerformer())));
+    private void compileAll() {
+        Map<String, String> commandTemplates = this.patternProperties.getCommandTemplate();
+        if (commandTemplates != null) {
+            commandTemplates.forEach((key, template) -> compileTemplate(key, () -> compile(template)));
+        }
+        this.patternProperties.getArgvTemplate().forEach(
+            (key, template) -> compileTemplate(key, () -> compile(template)));
+        this.patternProperties.getTeeTemplate().forEach(
+            (key, template) -> compileTemplate(key, () -> getTeeTemplateLines(template).forEach(this::compile)));
+        this.patternProperties.getCueSplitTemplate().forEach((key, template) -> compileTemplate(key, () -> {
+            compile(template.getInput());
+            compile(template.getOutput());
+        }));
+    }
+
+    private static void compileTemplate(String key, Runnable compilation) {
+        try {
+            compilation.run();
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Invalid template \"" + key + "\": " + e.getMessage(), e);
+        }
+    }
+
+    private CommandTemplate compile(String commandTemplate) {
+        return this.compiledTemplates.computeIfAbsent(commandTemplate, CommandTemplate::compile);
+    }
+
+    private CommandTemplate compile(ArgvTemplate argvTemplate) {
+        return this.compiledArgvTemplates.computeIfAbsent(argvTemplate,
+            template -> CommandTemplate.of(template.getStages(), template.getOutput()));
+    }
+
+    private ResolvedCommand resolve(CommandTemplate commandTemplate, CommandTemplate.Values values) {
+        return new ResolvedCommand(commandTemplate.render(values), commandTemplate.renderArgv(values),
+            commandTemplate.renderOutput(values));
+    }
+
+    private CommandTemplate getFileCommandTemplate(Path filePath) {
+        String extension = FilenameUtils.getExtension(filePath.toString()).toLowerCase();
+        TeeTemplate teeTemplate = getTeeTemplate(extension);
+        return teeTemplate != null ? compile(teeTemplate.getDecoder()) : getCommandTemplate(extension, "any");
+    }
+
+    private CommandTemplate getCueCommandTemplate(CueTrackPayload trackPayload) {
+        String audioFileExt = FilenameUtils.getExtension(trackPayload.getAudioFilePath().toString());
+        return getCommandTemplate("cue_" + audioFileExt.toLowerCase(), "cue_any");
+    }
+
+    private ResolvedCommand resolveCueSplit(List<CueTrackPayload> trackPayloads, @Nullable String filePath) {
+        CueSplitTemplate splitTemplate = getCueSplitTemplate(trackPayloads.getFirst().getAudioFilePath());
+        ResolvedCommand input = resolve(compile(splitTemplate.getInput()), new PlaceholderValues(filePath, null));
+        List<ResolvedCommand> parts = new ArrayList<>(trackPayloads.size() + 1);
+        parts.add(input);
+        parts.addAll(resolveCueSplitOutputs(trackPayloads, filePath));
+
+        String text = parts.stream().map(ResolvedCommand::text).collect(Collectors.joining(" "));
+        List<String> argv = parts.stream().map(RecodeCommand::getSingleStageArgv).flatMap(List::stream).toList();
+        return new ResolvedCommand(text, List.of(argv));
+    }
+
+    private List<ResolvedCommand> resolveCueSplitOutputs(List<CueTrackPayload> trackPayloads,
+                                                         @Nullable String filePath) {
+        CommandTemplate outputTemplate =
+            compile(getCueSplitTemplate(trackPayloads.getFirst().getAudioFilePath()).getOutput());
+        return trackPayloads.stream()
+                            .map(trackPayload -> resolve(outputTemplate, new PlaceholderValues(filePath, trackPayload)))
+                            .toList();
+    }
+
+    /**
+     * All the outputs are written by one process, so there can't be a pipe in the split template.
+     */
+    private static List<String> getSingleStageArgv(ResolvedCommand command) {
+        if (command.argv().size() != 1) {
+            throw new IllegalStateException("The CUE split template can't have a pipe: " + command.text());
+        }
+        return command.argv().getFirst();
+    }
+
+    private CueSplitTemplate getCueSplitTemplate(Path audioFilePath) {
+        CueSplitTemplate splitTemplate = findCueSplitTemplate(audioFilePath);
+        if (splitTemplate == null) {
+            throw new IllegalStateException("No CUE split template for \"" + audioFilePath + "\"");
+        }
+        return splitTemplate;
+    }
+
+    /**
+     * The split template is looked up by the same keys as the CUE command template: "cue_any" is used
+     * only when there is no template of any kind for the extension of the audio file.
+     */
+    @Nullable
+    private CueSplitTemplate findCueSplitTemplate(Path audioFilePath) {
+        String key = "cue_" + FilenameUtils.getExtension(audioFilePath.toString()).toLowerCase();
+        Map<String, CueSplitTemplate> splitTemplates = this.patternProperties.getCueSplitTemplate();
+        if (splitTemplates.containsKey(key) || findCommandTemplate(key) != null) {
+            return splitTemplates.get(key);
+        }
+        return splitTemplates.get("cue_any");
+    }
+
+    private String getCueTemplateText(String key) {
+        CueSplitTemplate splitTemplate = this.patternProperties.getCueSplitTemplate().get(key);
+        if (splitTemplate != null) {
+            return splitTemplate.getInput() + " " + splitTemplate.getOutput();
+        }
+        return Objects.requireNonNull(findCommandTemplate(key)).getText();
+    }
+
+    /**
+     * The tee templates are not used for CUE tracks, since the tracks are cut by the decoder.
+     */
+    @Nullable
+    private TeeTemplate getTeeTemplate(String extension) {
+        return this.patternProperties.getTeeTemplate().get(extension);
+    }
+
+    private List<String> getTeeTemplateLines(TeeTemplate teeTemplate) {
+        return Stream.concat(Stream.of(teeTemplate.getDecoder()), teeTemplate.getEncoders().stream()).toList();
+    }
+
+    private CommandTemplate getCommandTemplate(String extension, String defaultExt) {
+        CommandTemplate commandTemplate = findCommandTemplate(extension);
+        if (commandTemplate == null) {
+            commandTemplate = findCommandTemplate(defaultExt);
+        }
+        if (commandTemplate == null) {
+            throw new IllegalStateException("No command template for \"" + extension + "\" and \"" + defaultExt + "\"");
+        }
+        return commandTemplate;
+    }
+
+    /**
+     * The argv template takes precedence over the command template of the same key.
+     */
+    @Nullable
+    private CommandTemplate findCommandTemplate(String key) {
+        ArgvTemplate argvTemplate = this.patternProperties.getArgvTemplate().get(key);
+        if (argvTemplate != null) {
+            return compile(argvTemplate);
+        }
+
+        String commandTemplate = this.patternProperties.getCommandTemplate().get(key);
+        return commandTemplate == null ? null : compile(commandTemplate);
     }
 
     @VisibleForTesting
     String makeFFMpegMetadata(CueTrackPayload trackPayload) {
-        final DecimalFormat numberFormater = new DecimalFormat("#00");
+        return getFFMpegMetadata(trackPayload).stream()
+                                              .map(metadata -> "-metadata " + metadata.key() + "=\""
+                                                  + metadata.value() + "\"")
+                                              .collect(Collectors.joining(" ", " ", " "));
+    }
 
-        var metadata = new HashMap<String, Object>();
+    /**
+     * Unlike {@link #makeFFMpegMetadata}, the values are not quoted, since each arg is passed to the process as is.
+     */
+    private List<String> makeFFMpegMetadataArgs(CueTrackPayload trackPayload) {
+        return getFFMpegMetadata(trackPayload).stream()
+                                              .flatMap(metadata -> Stream.of("-metadata",
+                                                  metadata.key() + "=" + metadata.value()))
+                                              .toList();
+    }
+
+    /**
+     * @return the metadata with non-blank values
+     */
+    private List<Metadata> getFFMpegMetadata(CueTrackPayload trackPayload) {
+        List<Metadata> metadata = new ArrayList<>();
+
+        addMetadata(metadata, "ARTIST", trackPayload.getPerformer());
+        addMetadata(metadata, "ALBUM", trackPayload.getAlbum());
+        addMetadata(metadata, "TITLE", trackPayload.getTitle());
+        addMetadata(metadata, "TRACK", formatNumber(trackPayload.getTrackNumber()));
+        addMetadata(metadata, "TOTALTRACKS", formatNumber(trackPayload.getTotalTracks()));
+        addMetadata(metadata, "DISCNUMBER", trackPayload.getDiscNumber());
+        addMetadata(metadata, "TOTALDISCS", trackPayload.getTotalDiscs());
+        addMetadata(metadata, "GENRE", trackPayload.getGenre());
+        addMetadata(metadata, "DATE", trackPayload.getYear());
+        addMetadata(metadata, "COMMENT", trackPayload.getComment());
+        addMetadata(metadata, "DISCID", trackPayload.getDiscId());
 
-        metadata.put("ARTIST", trackPayload.getPerformer());
-        metadata.put("ALBUM", trackPayload.getAlbum());
-        metadata.put("TITLE", trackPayload.getTitle());
-        metadata.put("TRACK", numberFormater.format(trackPayload.getTrackNumber()));
-        metadata.put("TOTALTRACKS", numberFormater.format(trackPayload.getTotalTracks()));
-        metadata.put("DISCNUMBER", trackPayload.getDiscNumber());
-        metadata.put("TOTALDISCS", trackPayload.getTotalDiscs());
-        metadata.put("GENRE", trackPayload.getGenre());
-        metadata.put("DATE", trackPayload.getYear());
-        metadata.put("COMMENT", trackPayload.getComment());
-        metadata.put("DISCID", trackPayload.getDiscId());
+        return metadata;
+    }
+
+    private void addMetadata(List<Metadata> metadata, String key, @Nullable Object value) {
+        if (value != null && !value.toString().isBlank()) {
+            metadata.add(new Metadata(key, value.toString()));
+        }
+    }
+
+    /**
+     * The same as the "#00" decimal format.
+     */
+    private static String formatNumber(int number) {
+        return (number >= 0 && number < 10) ? "0" + number : Integer.toString(number);
+    }
 
-        return metadata.entrySet().stream()
-                       .filter(entry -> entry.getValue() != null && !entry.getValue().toString().trim().isEmpty())
-                       .map(this::createMetadataCommand)
-                       .collect(Collectors.joining(" ", " ", " "));
+    private static String formatEndTime(CueTrackPayload trackPayload) {
+        CueTime endTime = trackPayload.getEndTime();
+        return endTime == null ? OPEN_END_FFMPEG_TIME : endTime.toFFMpegTime();
     }
 
-    private String createMetadataCommand(Map.Entry<String, Object> entry) {
-        return "-metadata " + entry.getKey() + "=" + "\"" + entry.getValue() + "\"";
+    /**
+     * @return no args for the last track of the audio file, so it is recoded up to the end of the file
+     */
+    private static List<String> makeFFMpegToArgs(CueTrackPayload trackPayload) {
+        CueTime endTime = trackPayload.getEndTime();
+        return endTime == null ? List.of() : List.of("-to", endTime.toFFMpegTime());
     }
 
-    private String sanitizeFileName(String name) {
-        return name.chars()
-                   .mapToObj(i -> (char) i)
-                   .map(c -> SANITIZE_FILENAME_MAP.getOrDefault(c, c))
-                   // .filter(c -> Character.isLetterOrDigit(c) || c == '-' || c == '_')
-                   .collect(Collector.of(
-                       StringBuilder::new,
-                       StringBuilder::append,
-                       StringBuilder::append,
-                       StringBuilder::toString));
+    @VisibleForTesting
+    String sanitizeFileName(String name) {
+        var sanitizedName = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sanitizedName.append(SANITIZE_FILENAME_MAP.getOrDefault(c, c));
+        }
+        return sanitizedName.toString();
     }
 
+    /**
+     * The placeholder values of one job. Each value is computed on the first use.
+     * The file placeholders are left unresolved when there is no file path,
+     * and the CUE placeholders are left unresolved when there is no CUE track.
+     */
+    private class PlaceholderValues implements CommandTemplate.Values {
+        @Nullable
+        private final String filePath;
+
+        @Nullable
+        private final CueTrackPayload trackPayload;
+
+        private final Map<Placeholder, String> values = new EnumMap<>(Placeholder.class);
+
+        PlaceholderValues(@Nullable String filePath, @Nullable CueTrackPayload trackPayload) {
+            this.filePath = filePath;
+            this.trackPayload = trackPayload;
+        }
+
+        @Nullable
+        @Override
+        public String get(Placeholder placeholder) {
+            return this.values.computeIfAbsent(placeholder, this::resolve);
+        }
+
+        @Nullable
+        @Override
+        public List<String> getArgs(Placeholder placeholder) {
+            if (placeholder == Placeholder.CUE_METADATA && this.trackPayload != null) {
+                return makeFFMpegMetadataArgs(this.trackPayload);
+            }
+            if (placeholder == Placeholder.CUE_TO && this.trackPayload != null) {
+                return makeFFMpegToArgs(this.trackPayload);
+            }
+            return CommandTemplate.Values.super.getArgs(placeholder);
+        }
+
+        @Nullable
+        private String resolve(Placeholder placeholder) {
+            // Required values for placeholders. Cannot be null.
+            return switch (placeholder) {
+                case F -> this.filePath;
+                case D -> getFileValue(FilenameUtils::getPrefix);
+                case P -> getFileValue(FilenameUtils::getPath);
+                case N -> getFileValue(FilenameUtils::getBaseName);
+                case CUE_ST -> getTrackValue(track -> track.getStartTime().toFFMpegTime());
+                case CUE_ET -> getTrackValue(RecodeCommand::formatEndTime);
+                case CUE_TO -> getTrackValue(track -> String.join(" ", makeFFMpegToArgs(track)));
+                case CUE_METADATA -> getTrackValue(RecodeCommand.this::makeFFMpegMetadata);
+                case CUE_NUM -> getTrackValue(track -> formatNumber(track.getTrackNumber()));
+                case CUE_TITLE -> getTrackValue(track -> sanitizeFileName(Objects.requireNonNull(track.getTitle())));
+                case CUE_ARTIST ->
+                    getTrackValue(track -> sanitizeFileName(Objects.requireNonNull(track.getPerformer())));
+            };
+        }
+
+        @Nullable
+        private String getFileValue(Function<String, String> getter) {
+            return this.filePath == null ? null : getter.apply(this.filePath);
+        }
+
+        @Nullable
+        private String getTrackValue(Function<CueTrackPayload, String> getter) {
+            return this.trackPayload == null ? null : getter.apply(this.trackPayload);
+        }
+    }
 }
@@ -0,0 +1,97 @@
+package by.rayden.paracoder.service;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+import org.springframework.lang.Nullable;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+/**
+ * One run of the recode command, which produces one target file.
+ * A regular source file is recoded by one job, a CUE-file is recoded by one job per track
+ * or by one job per audio file (when there is a CUE split template).
+ */
+@Getter
+@Builder
+public class RecodeJob {
+    /**
+     * The file found in the input directories (the audio file itself or the CUE-file).
+     */
+    private Path sourceFilePath;
+
+    /**
+     * The audio file read by the recode command.
+     */
+    private Path audioFilePath;
+
+    /**
+     * The size of the audio file (for a CUE track, the size of the whole audio file).
+     */
+    private long audioFileSize;
+
+    /**
+     * The time to set on the target file.
+     */
+    private FileTime sourceFileTime;
+
+    /**
+     * The whole recode command, or the decoder command when the job has the tee commands.
+     */
+    private ResolvedCommand command;
+
+    /**
+     * The encoder commands, which read the output of the decoder command at the same time.
+     * Empty for a job without multiple outputs.
+     */
+    @Singular
+    private List<ResolvedCommand> teeCommands;
+
+    /**
+     * One target file per output (the target of the command, the targets of the tee commands,
+     * or the targets of the split tracks).
+     */
+    @Singular
+    private List<Path> targetFilePaths;
+
+    /**
+     * The files actually written by the commands, in the order of the target files.
+     * Each one is renamed to its target file when the job succeeds (see {@link AtomicOutput}).
+     * A partial file is the target file itself, when the command can't be redirected to another file.
+     */
+    @Singular
+    private List<Path> partialFilePaths;
+
+    @Nullable
+    private CueTrackPayload cueTrackPayload;
+
+    /**
+     * The tracks written by the CUE split command, in the order of the target files.
+     * Empty for a job which is not a CUE split.
+     */
+    @Singular
+    private List<CueTrackPayload> splitTrackPayloads;
+
+    /**
+     * The first (or the only) target file.
+     */
+    public Path getTargetFilePath() {
+        return this.targetFilePaths.getFirst();
+    }
+
+    /**
+     * @return the target files, when the partial files are not set
+     */
+    public List<Path> getPartialFilePaths() {
+        return this.partialFilePaths.isEmpty() ? this.targetFilePaths : this.partialFilePaths;
+    }
+
+    /**
+     * A job of a CUE-file recodes one track, or all the tracks of one audio file by the CUE split command.
+     */
+    public boolean isCueJob() {
+        return this.cueTrackPayload != null || !this.splitTrackPayloads.isEmpty();
+    }
+}
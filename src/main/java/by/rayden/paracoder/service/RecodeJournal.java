@@ -0,0 +1,219 @@
+package by.rayden.paracoder.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The append-only file in the input root directory, which records the state of each target file of the run,
+ * so a killed run can be resumed.
+ * <p>
+ * Each line is a state change of one target file: {@code state<TAB>targetPath<TAB>partialPath} (absolute paths).
+ * The later lines override the earlier ones. The lines are written to the OS at once, but they are synced
+ * to the disk in batches by a background thread every {@link #SYNC_PERIOD_MILLIS}, so the jobs don't wait for
+ * an fsync each.
+ * <p>
+ * When the journal is opened, the partial files of the unfinished target files are deleted.
+ * When it is closed, it is deleted if all the target files are done, otherwise it is compacted.
+ */
+@Slf4j
+public class RecodeJournal implements Closeable {
+    public static final String JOURNAL_FILE_NAME = ".paracoder-journal";
+
+    static final long SYNC_PERIOD_MILLIS = 200;
+
+    private static final String SEPARATOR = "\t";
+    private static final int FIELD_COUNT = 3;
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    @Getter
+    private final Path rootDir;
+    private final Path journalFile;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    private FileChannel channel;
+    private BufferedWriter writer;
+    private ScheduledExecutorService syncExecutor;
+    private boolean isDirty;
+
+    private record Entry(State state, Path partialFilePath) {
+    }
+
+    private RecodeJournal(Path rootDir) {
+        this.rootDir = rootDir;
+        this.journalFile = rootDir.resolve(JOURNAL_FILE_NAME);
+    }
+
+    /**
+     * @param resume whether the states of the previous run are kept (so its done jobs are skipped),
+     *               otherwise the journal is started anew
+     */
+    public static RecodeJournal open(Path rootDir, boolean resume) throws IOException {
+        var journal = new RecodeJournal(rootDir);
+        journal.load();
+        journal.deleteOrphans();
+        if (!resume) {
+            journal.entries.clear();
+        }
+
+        journal.channel = FileChannel.open(journal.journalFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        journal.writer = new BufferedWriter(Channels.newWriter(journal.channel, StandardCharsets.UTF_8));
+        journal.syncExecutor = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("recode-journal-sync").daemon().factory());
+        journal.syncExecutor.scheduleWithFixedDelay(journal::syncQuietly, SYNC_PERIOD_MILLIS, SYNC_PERIOD_MILLIS,
+            TimeUnit.MILLISECONDS);
+        return journal;
+    }
+
+    /**
+     * @return true if all the target files have been done by the resumed run, and they still exist
+     */
+    public boolean isDone(List<Path> targetFilePaths) {
+        return targetFilePaths.stream().allMatch(targetFilePath -> {
+            Path key = toKey(targetFilePath);
+            Entry entry = this.entries.get(key);
+            return entry != null && entry.state() == State.DONE && Files.exists(key);
+        });
+    }
+
+    /**
+     * Thread safe. The lines reach the disk by the next sync.
+     */
+    public synchronized void append(State state, List<Path> targetFilePaths, List<Path> partialFilePaths)
+        throws IOException {
+
+        for (int i = 0; i < targetFilePaths.size(); i++) {
+            Path key = toKey(targetFilePaths.get(i));
+            Path partialFilePath = toKey(partialFilePaths.get(i));
+            if (hasSeparator(key) || hasSeparator(partialFilePath)) {
+                log.warn("The file name cannot be stored in the journal: {}", key);
+                continue;
+            }
+
+            var entry = new Entry(state, partialFilePath);
+            this.entries.put(key, entry);
+            this.writer.write(toLine(key, entry));
+            this.writer.newLine();
+        }
+        this.writer.flush();
+        this.isDirty = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.syncExecutor.shutdownNow();
+        synchronized (this) {
+            sync();
+            this.writer.close();
+        }
+
+        if (this.entries.values().stream().allMatch(entry -> entry.state() == State.DONE)) {
+            Files.deleteIfExists(this.journalFile);
+            log.debug("Journal {} deleted: all {} target files are done", this.journalFile, this.entries.size());
+        } else {
+            compact();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            synchronized (this) {
+                sync();
+            }
+        } catch (IOException e) {
+            log.error("Error on syncing the journal: {}", this.journalFile, e);
+        }
+    }
+
+    private void sync() throws IOException {
+        if (this.isDirty) {
+            this.channel.force(false);
+            this.isDirty = false;
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(this.journalFile)) {
+            return;
+        }
+
+        try (var lines = Files.lines(this.journalFile, StandardCharsets.UTF_8)) {
+            lines.forEach(this::parseLine);
+        }
+        log.debug("Journal {} loaded: {} target files", this.journalFile, this.entries.size());
+    }
+
+    private void parseLine(String line) {
+        String[] fields = line.split(SEPARATOR, FIELD_COUNT);
+        if (fields.length != FIELD_COUNT) {
+            log.warn("Invalid journal line is ignored: {}", line);
+            return;
+        }
+
+        try {
+            this.entries.put(Path.of(fields[1]), new Entry(State.valueOf(fields[0]), Path.of(fields[2])));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid journal line is ignored: {}", line);
+        }
+    }
+
+    /**
+     * The partial files of the run, which has been killed or has failed, are not needed anymore:
+     * the unfinished jobs are run from scratch.
+     */
+    private void deleteOrphans() {
+        this.entries.forEach((targetFilePath, entry) -> {
+            if (entry.state() != State.DONE) {
+                AtomicOutput.discard(List.of(entry.partialFilePath()), List.of(targetFilePath));
+            }
+        });
+    }
+
+    /**
+     * The journal is written to a temporary file, which then replaces the old one.
+     */
+    private void compact() throws IOException {
+        Path tempFile = this.journalFile.resolveSibling(JOURNAL_FILE_NAME + ".tmp");
+        try (var tempWriter = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<Path, Entry> entry : this.entries.entrySet()) {
+                tempWriter.write(toLine(entry.getKey(), entry.getValue()));
+                tempWriter.newLine();
+            }
+        }
+        Files.move(tempFile, this.journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Journal {} compacted: {} target files", this.journalFile, this.entries.size());
+    }
+
+    private static Path toKey(Path filePath) {
+        return filePath.toAbsolutePath().normalize();
+    }
+
+    private static boolean hasSeparator(Path filePath) {
+        String path = filePath.toString();
+        return path.contains(SEPARATOR) || path.indexOf('\n') >= 0 || path.indexOf('\r') >= 0;
+    }
+
+    private static String toLine(Path key, Entry entry) {
+        return String.join(SEPARATOR, entry.state().name(), key.toString(), entry.partialFilePath().toString());
+    }
+}
@@ -0,0 +1,190 @@
+package by.rayden.paracoder.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The append-only file in the input root directory, which remembers the source files
+ * successfully recoded by the previous runs.
+ * <p>
+ * Each line is a key of one successful recode: {@code size<TAB>lastModifiedMillis<TAB>templateHash<TAB>path},
+ * where the path is relative to the root directory. The later lines override the earlier ones.
+ * The template hash of a CUE-file also covers its audio files (see {@link #hashTemplates(List, List)}).
+ * The file is compacted on close when it contains too many overridden lines.
+ */
+@Slf4j
+public class RecodeManifest implements Closeable {
+    public static final String MANIFEST_FILE_NAME = ".paracoder-manifest";
+
+    private static final String SEPARATOR = "\t";
+    private static final int FIELD_COUNT = 4;
+    private static final int TEMPLATE_HASH_LENGTH = 16;
+
+    /**
+     * The manifest file is rewritten on close when the number of its lines exceeds the number of entries this times.
+     */
+    private static final int COMPACTION_RATIO = 2;
+
+    @Getter
+    private final Path rootDir;
+    private final Path manifestFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private BufferedWriter writer;
+    private int lineCount;
+
+    private record Entry(long size, long lastModifiedMillis, String templateHash) {
+    }
+
+    private RecodeManifest(Path rootDir) {
+        this.rootDir = rootDir;
+        this.manifestFile = rootDir.resolve(MANIFEST_FILE_NAME);
+    }
+
+    public static RecodeManifest open(Path rootDir) throws IOException {
+        var manifest = new RecodeManifest(rootDir);
+        manifest.load();
+        manifest.writer = Files.newBufferedWriter(manifest.manifestFile, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return manifest;
+    }
+
+    /**
+     * The hash of the command templates used to recode a source file.
+     * When a template is changed then all the files recoded by it are no longer up to date.
+     */
+    public static String hashTemplates(List<String> commandTemplates) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            commandTemplates.forEach(template -> {
+                digest.update(template.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            });
+            return HexFormat.of().formatHex(digest.digest()).substring(0, TEMPLATE_HASH_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The hash of the command templates used to recode a CUE-file and of the size and modification time
+     * of its audio files, since a re-ripped or re-encoded audio image doesn't change the CUE-file itself.
+     */
+    public static String hashTemplates(List<String> commandTemplates, List<Path> audioFilePaths) throws IOException {
+        List<String> lines = new ArrayList<>(commandTemplates);
+        for (Path audioFilePath : audioFilePaths) {
+            var attrs = Files.readAttributes(audioFilePath, BasicFileAttributes.class);
+            lines.add(String.join(SEPARATOR, String.valueOf(attrs.size()),
+                String.valueOf(attrs.lastModifiedTime().toMillis()), audioFilePath.toString()));
+        }
+        return hashTemplates(lines);
+    }
+
+    public boolean isUpToDate(Path sourceFilePath, BasicFileAttributes attrs, String templateHash) {
+        Entry entry = this.entries.get(toKey(sourceFilePath));
+        return newEntry(attrs, templateHash).equals(entry);
+    }
+
+    /**
+     * Thread safe. The line is flushed immediately, so it survives the killed run.
+     */
+    public synchronized void markRecoded(Path sourceFilePath, BasicFileAttributes attrs, String templateHash)
+        throws IOException {
+
+        String key = toKey(sourceFilePath);
+        if (key.indexOf('\n') >= 0 || key.indexOf('\r') >= 0) {
+            log.warn("The file name cannot be stored in the manifest: {}", sourceFilePath);
+            return;
+        }
+
+        Entry entry = newEntry(attrs, templateHash);
+        this.entries.put(key, entry);
+
+        this.writer.write(toLine(key, entry));
+        this.writer.newLine();
+        this.writer.flush();
+        this.lineCount++;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.writer.close();
+
+        if (this.lineCount > this.entries.size() * COMPACTION_RATIO) {
+            compact();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(this.manifestFile)) {
+            return;
+        }
+
+        try (var lines = Files.lines(this.manifestFile, StandardCharsets.UTF_8)) {
+            lines.forEach(this::parseLine);
+        }
+        log.debug("Manifest {} loaded: {} lines, {} entries", this.manifestFile, this.lineCount, this.entries.size());
+    }
+
+    private void parseLine(String line) {
+        this.lineCount++;
+
+        String[] fields = line.split(SEPARATOR, FIELD_COUNT);
+        if (fields.length != FIELD_COUNT) {
+            log.warn("Invalid manifest line is ignored: {}", line);
+            return;
+        }
+
+        try {
+            this.entries.put(fields[3], new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]));
+        } catch (NumberFormatException e) {
+            log.warn("Invalid manifest line is ignored: {}", line);
+        }
+    }
+
+    /**
+     * The manifest is written to a temporary file, which then replaces the old one.
+     */
+    private void compact() throws IOException {
+        Path tempFile = this.manifestFile.resolveSibling(MANIFEST_FILE_NAME + ".tmp");
+        try (var tempWriter = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+                tempWriter.write(toLine(entry.getKey(), entry.getValue()));
+                tempWriter.newLine();
+            }
+        }
+        Files.move(tempFile, this.manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Manifest {} compacted: {} lines -> {} entries", this.manifestFile, this.lineCount,
+            this.entries.size());
+    }
+
+    private String toKey(Path sourceFilePath) {
+        return this.rootDir.relativize(sourceFilePath).toString();
+    }
+
+    private static Entry newEntry(BasicFileAttributes attrs, String templateHash) {
+        return new Entry(attrs.size(), attrs.lastModifiedTime().toMillis(), templateHash);
+    }
+
+    private static String toLine(String key, Entry entry) {
+        return String.join(SEPARATOR, String.valueOf(entry.size()), String.valueOf(entry.lastModifiedMillis()),
+            entry.templateHash(), key);
+    }
+}
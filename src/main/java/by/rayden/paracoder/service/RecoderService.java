@@ -7,30 +7,40 @@ import by.rayden.paracoder.win32native.OsNative;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
+import org.jetbrains.annotations.VisibleForTesting;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 import picocli.CommandLine;
 
 import java.io.IOException;
-import java.nio.file.FileVisitOption;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributeView;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.Semaphore;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -42,21 +52,56 @@ public class RecoderService {
     // https://javascript.info/regexp-greedy-and-lazy#alternative-approach
     public static final Pattern LAST_QUOTED_STRING_PATTERN = Pattern.compile("\"(?<targetFile>[^\"]+?)\"$");
 
+    /**
+     * In the stream mode, the number of jobs being recoded (or waiting in the pool queue) at the same time
+     * is limited to this value per thread. The tree scanning is paused when the limit is reached.
+     */
+    private static final int STREAM_IN_FLIGHT_JOBS_PER_THREAD = 2;
+
     private final PatternProperties patternProperties;
     private final ProcessRunner processRunner;
     private final RecodeCommand recodeCommand;
     private final OsNative osNative;
     private final CueHelper cueHelper;
+    private final JobCostEstimator jobCostEstimator;
+    private final DirectBufferPool bufferPool;
 
     private CommandController.Params paraCoderParams;
+    private Map<Path, RecodeManifest> manifests = Collections.emptyMap();
+    private Map<Path, RecodeJournal> journals = Collections.emptyMap();
+
+    @Nullable
+    private RecodeCache recodeCache;
+
+    @Nullable
+    private TrashBatcher trashBatcher;
+
+    private RunMetrics runMetrics = new RunMetrics(0);
+
+    private StorageConcurrencyLimiter storageLimiter = StorageConcurrencyLimiter.unlimited();
+
+    @Nullable
+    private SourceStager sourceStager;
+
+    @Nullable
+    private ProgressDashboard progressDashboard;
+
+    /**
+     * Created per run, so the modification times cached by it are not stale in the watch mode.
+     */
+    @Nullable
+    private ParallelCueParser cueParser;
 
     public RecoderService(ProcessRunner processRunner, RecodeCommand recodeCommand,
-                          PatternProperties patternProperties, OsNative osNative, CueHelper cueHelper) {
+                          PatternProperties patternProperties, OsNative osNative, CueHelper cueHelper,
+                          JobCostEstimator jobCostEstimator, DirectBufferPool bufferPool) {
         this.processRunner = processRunner;
         this.recodeCommand = recodeCommand;
         this.patternProperties = patternProperties;
         this.osNative = osNative;
         this.cueHelper = cueHelper;
+        this.jobCostEstimator = jobCostEstimator;
+        this.bufferPool = bufferPool;
     }
 
     /**
@@ -70,18 +115,114 @@ public class RecoderService {
         }
 
         try {
-            Map<Path, BasicFileAttributes> pathMap = this.cueHelper.getFilteredPathMap(buildAbsolutePathTree());
+            // Before the tree scanning, since the partial files of the previous run are deleted on opening
+            if (this.paraCoderParams.journal() || this.paraCoderParams.resume()) {
+                this.journals = openJournals();
+            }
+            if (this.paraCoderParams.incremental()) {
+                this.manifests = openManifests();
+            }
+
+            int threadCount = this.paraCoderParams.threadCount();
+            this.runMetrics = new RunMetrics(threadCount == CommandController.AUTO_THREAD_COUNT ? 0 : threadCount);
+            openProgressDashboard();
+            this.storageLimiter = new StorageConcurrencyLimiter(this.paraCoderParams.maxReadsPerDevice(),
+                this.paraCoderParams.maxWritesPerDevice());
+            this.cueParser = new ParallelCueParser(this.cueHelper, new LastModifiedTimeCache());
+
+            Path cacheDir = this.paraCoderParams.cacheDir();
+            this.recodeCache = (cacheDir != null)
+                ? new RecodeCache(cacheDir, this.recodeCommand, this.bufferPool)
+                : null;
+
+            this.trashBatcher = this.paraCoderParams.deleteSourceFilesToTrash()
+                ? new TrashBatcher(this.osNative)
+                : null;
 
-            int maxExitCode = asyncProcessFiles(pathMap);
+            Path stagingDir = this.paraCoderParams.stagingDir();
+            this.sourceStager = (stagingDir != null)
+                ? new SourceStager(stagingDir, this.paraCoderParams.stagingBudgetMb() * 1024L * 1024L)
+                : null;
+
+            Map<Path, BasicFileAttributes> pathMap;
+            int maxExitCode;
+
+            if (this.paraCoderParams.stream()) {
+                List<CompletableFuture<Integer>> futures = new ArrayList<>();
+                pathMap = streamProcessFiles(futures);
+                maxExitCode = waitForCompletion(futures);
+            } else {
+                pathMap = this.cueHelper.getFilteredPathMap(buildAbsolutePathTree(null));
+                maxExitCode = asyncProcessFiles(pathMap);
+            }
+
+            // Before the directories processing, since the manifest compaction changes the directory timestamp
+            closeManifests();
+            closeJournals();
             processDirs(pathMap);
 
-            System.out.println();
+            closeProgressDashboard();
+            reportRunMetrics();
+
+            OutUtils.ansiOut("");
             OutUtils.ansiOut("@|blue Max exit code: " + maxExitCode + "|@");
             return maxExitCode;
         } catch (Exception e) {
             log.error("Recode error: {}", e.getMessage(), e);
             OutUtils.ansiErr("Error: @|red " + e.getMessage() + "|@");
             return CommandLine.ExitCode.SOFTWARE;
+        } finally {
+            closeManifests();
+            closeJournals();
+            closeTrashBatcher();
+            closeSourceStager();
+            closeProgressDashboard();
+        }
+    }
+
+    /**
+     * The live progress view is drawn only on the console, when the output is redirected the lines are just appended.
+     */
+    private void openProgressDashboard() {
+        if (!this.paraCoderParams.plainOutput() && OutUtils.isTerminal()) {
+            var dashboard = new ProgressDashboard();
+            this.progressDashboard = dashboard;
+            OutUtils.setStatus(dashboard::render);
+        }
+    }
+
+    private void closeProgressDashboard() {
+        if (this.progressDashboard != null) {
+            OutUtils.setStatus(null);
+            this.progressDashboard = null;
+        }
+    }
+
+    private void closeTrashBatcher() {
+        if (this.trashBatcher != null) {
+            this.trashBatcher.close();
+            this.trashBatcher = null;
+        }
+    }
+
+    private void closeSourceStager() {
+        if (this.sourceStager != null) {
+            this.sourceStager.close();
+            this.sourceStager = null;
+        }
+    }
+
+    private void reportRunMetrics() {
+        this.runMetrics.printReport();
+
+        Path metricsJson = this.paraCoderParams.metricsJson();
+        if (metricsJson != null) {
+            try {
+                this.runMetrics.writeJson(metricsJson);
+            } catch (IOException e) {
+                log.error("Error on writing the run metrics: {}", metricsJson, e);
+                OutUtils.ansiErr(" @|red Error on writing the run metrics: " + metricsJson + ". " + e + "|@");
+            }
         }
     }
 
@@ -94,30 +235,128 @@ public class RecoderService {
             valid = false;
         }
 
+        if (this.paraCoderParams.stagingBudgetMb() < 1) {
+            log.error("The staging budget is not positive");
+            OutUtils.ansiErr("Error: @|red The staging budget must be positive|@");
+            valid = false;
+        }
+
+        if (this.paraCoderParams.maxReadsPerDevice() < 0 || this.paraCoderParams.maxWritesPerDevice() < 0) {
+            log.error("The per device limit is negative");
+            OutUtils.ansiErr("Error: @|red The max reads and writes per device must not be negative|@");
+            valid = false;
+        }
+
         return valid;
     }
 
-    private Map<Path, BasicFileAttributes> buildAbsolutePathTree() throws IOException {
-        var fileVisitor = new CollectToMapFileVisitor(this.patternProperties.getFileExtensions());
-        int depth = this.paraCoderParams.recurse() ? Integer.MAX_VALUE : 1;
-        Set<FileVisitOption> fileVisitOptions = Collections.emptySet();
+    /**
+     * One manifest per input directory. For an input file, the manifest of its parent directory is used.
+     */
+    private Map<Path, RecodeManifest> openManifests() throws IOException {
+        Map<Path, RecodeManifest> rootManifests = new HashMap<>();
+        for (Path rootDir : getRootDirs()) {
+            rootManifests.put(rootDir, RecodeManifest.open(rootDir));
+        }
+        return rootManifests;
+    }
+
+    /**
+     * One journal per input directory, the same as the manifests.
+     */
+    private Map<Path, RecodeJournal> openJournals() throws IOException {
+        Map<Path, RecodeJournal> rootJournals = new HashMap<>();
+        try {
+            for (Path rootDir : getRootDirs()) {
+                rootJournals.put(rootDir, RecodeJournal.open(rootDir, this.paraCoderParams.resume()));
+            }
+        } catch (IOException e) {
+            this.journals = rootJournals;
+            closeJournals();
+            throw e;
+        }
+        return rootJournals;
+    }
 
+    private Set<Path> getRootDirs() {
+        Set<Path> rootDirs = new LinkedHashSet<>();
         for (Path inputPath : this.paraCoderParams.inputPathList()) {
-            Files.walkFileTree(inputPath, fileVisitOptions, depth, fileVisitor);
+            Path absolutePath = inputPath.toAbsolutePath();
+            rootDirs.add(Files.isDirectory(absolutePath) ? absolutePath : absolutePath.getParent());
         }
-        log.debug("PathTree: {}", fileVisitor.getPathTree().keySet());
-        return fileVisitor.getPathTree();
+        return rootDirs;
+    }
+
+    private void closeManifests() {
+        this.manifests.values().forEach(manifest -> {
+            try {
+                manifest.close();
+            } catch (IOException e) {
+                log.error("Error on closing the manifest in: {}", manifest.getRootDir(), e);
+            }
+        });
+        this.manifests = Collections.emptyMap();
+    }
+
+    private void closeJournals() {
+        this.journals.values().forEach(journal -> {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.error("Error on closing the journal in: {}", journal.getRootDir(), e);
+            }
+        });
+        this.journals = Collections.emptyMap();
+    }
+
+    /**
+     * When the input directories are nested, the manifest of the deepest one is used.
+     */
+    private Optional<RecodeManifest> findManifest(Path sourceFilePath) {
+        return findByRootDir(this.manifests, sourceFilePath);
+    }
+
+    /**
+     * The same as the manifest, the journal of the deepest input directory is used.
+     */
+    private Optional<RecodeJournal> findJournal(Path sourceFilePath) {
+        return findByRootDir(this.journals, sourceFilePath);
+    }
+
+    private static <T> Optional<T> findByRootDir(Map<Path, T> rootItems, Path sourceFilePath) {
+        return rootItems.entrySet().stream()
+                        .filter(entry -> sourceFilePath.startsWith(entry.getKey()))
+                        .max(Comparator.comparingInt(entry -> entry.getKey().getNameCount()))
+                        .map(Map.Entry::getValue);
+    }
+
+    private Map<Path, BasicFileAttributes> buildAbsolutePathTree(
+        @Nullable Consumer<Map<Path, BasicFileAttributes>> dirFilesConsumer) throws IOException {
+
+        int depth = this.paraCoderParams.recurse() ? Integer.MAX_VALUE : 1;
+        var treeWalker = new ParallelTreeWalker(this.patternProperties.getFileExtensions(), depth, dirFilesConsumer);
+
+        Map<Path, BasicFileAttributes> pathTree = treeWalker.walk(this.paraCoderParams.inputPathList());
+        log.debug("PathTree: {}", pathTree.keySet());
+        return pathTree;
     }
 
     private int asyncProcessFiles(Map<Path, BasicFileAttributes> pathMap) throws InterruptedException,
-        ExecutionException, TimeoutException {
+        ExecutionException {
 
-        List<CompletableFuture<Integer>> futures = processFiles(pathMap);
+        return waitForCompletion(processFiles(pathMap));
+    }
+
+    /**
+     * There is no time limit for the whole run: each job is limited by its own watchdog (see {@link JobWatchdog}).
+     */
+    private int waitForCompletion(List<CompletableFuture<Integer>> futures) throws InterruptedException,
+        ExecutionException {
 
         // Waiting for all processes to complete
         CompletableFuture
             .allOf(futures.toArray(new CompletableFuture[0]))
-            .get(1, TimeUnit.HOURS);
+            .get();
 
         // At this point all futures must convert their exception to integer exit codes.
         // See oneFileProcessResultAction()
@@ -128,20 +367,119 @@ public class RecoderService {
     }
 
     private List<CompletableFuture<Integer>> processFiles(Map<Path, BasicFileAttributes> pathMap) {
+        return processSourceFiles(regularFilesSortedByPath(pathMap), null);
+    }
+
+    /**
+     * The files of each directory are submitted to recode as soon as the directory has been scanned,
+     * so the first recoders start without waiting for the whole tree to be scanned.
+     * The CUE-files ambiguity is resolved within each directory separately.
+     *
+     * @param futures receives the futures of all submitted files
+     * @return the whole scanned tree (for the directories processing)
+     */
+    private Map<Path, BasicFileAttributes> streamProcessFiles(List<CompletableFuture<Integer>> futures)
+        throws IOException {
+
+        int threadCount = this.paraCoderParams.threadCount() == CommandController.AUTO_THREAD_COUNT
+            ? AdaptiveConcurrencyController.getMaxConcurrency()
+            : this.paraCoderParams.threadCount();
+        int inFlightLimit = threadCount * STREAM_IN_FLIGHT_JOBS_PER_THREAD;
+        var inFlightLimiter = new Semaphore(inFlightLimit);
+
+        return buildAbsolutePathTree(dirFiles -> futures.addAll(
+            processSourceFiles(regularFilesSortedByPath(this.cueHelper.getFilteredPathMap(dirFiles)),
+                inFlightLimiter)));
+    }
+
+    private List<Map.Entry<Path, BasicFileAttributes>> regularFilesSortedByPath(
+        Map<Path, BasicFileAttributes> pathMap) {
+
         return pathMap.entrySet().stream()
                       .filter(entry -> entry.getValue().isRegularFile())
                       .sorted(Map.Entry.comparingByKey())
-                      .map(this::processFile)
+                      .toList();
+    }
+
+    /**
+     * The source files are planned first, then their jobs are submitted to the pool
+     * in the longest-processing-time-first order. So a long job does not start at the end of the run
+     * leaving all the other threads idle, while the short jobs fill the gaps at the end.
+     * <p>
+     * The CUE-files are parsed in parallel, and the jobs of each CUE-file are submitted as soon as it is parsed
+     * (the longest track first), so the recoding doesn't wait for the parsing of all the CUE-files.
+     *
+     * @param inFlightLimiter when not null, the caller thread is blocked before each job submission
+     *                        until there is a free permit. The permit is released when the job completes.
+     */
+    @SneakyThrows
+    private List<CompletableFuture<Integer>> processSourceFiles(List<Map.Entry<Path, BasicFileAttributes>> entries,
+                                                                @Nullable Semaphore inFlightLimiter) {
+        Map<Path, SourcePlan> plans = new LinkedHashMap<>();
+        Map<RecodeJob, CompletableFuture<Integer>> jobFutures = new IdentityHashMap<>();
+
+        List<SourcePlan> cuePlans = new ArrayList<>();
+        for (Map.Entry<Path, BasicFileAttributes> entry : entries) {
+            SourcePlan plan = planSourceFile(entry);
+            plans.put(entry.getKey(), plan);
+            if (plan.isCueFileToParse()) {
+                cuePlans.add(plan);
+            }
+        }
+        submitJobs(plans.values(), jobFutures, inFlightLimiter);
+
+        Map<Path, SourcePlan> cuePlansByPath = new HashMap<>();
+        cuePlans.forEach(plan -> cuePlansByPath.put(plan.entry().getKey(), plan));
+
+        ParallelCueParser parser = Objects.requireNonNull(this.cueParser, "The CUE parser is created by recode()");
+        parser.parse(cuePlans.stream().map(plan -> plan.entry().getKey()).toList(), parsedCueFile -> {
+            SourcePlan plan = planCueFile(cuePlansByPath.get(parsedCueFile.cueFilePath()), parsedCueFile);
+            plans.put(parsedCueFile.cueFilePath(), plan);
+            submitJobs(List.of(plan), jobFutures, inFlightLimiter);
+        });
+
+        return entries.stream()
+                      .map(entry -> plans.get(entry.getKey()))
+                      .map(plan -> getSourceFileFutures(plan, jobFutures))
                       .flatMap(Collection::stream)
                       .map(this::handleUnhandledExceptions)
                       .toList();
     }
 
+    private void submitJobs(Collection<SourcePlan> plans, Map<RecodeJob, CompletableFuture<Integer>> jobFutures,
+                            @Nullable Semaphore inFlightLimiter) {
+        record JobCost(RecodeJob job, double cost) {
+        }
+
+        plans.stream()
+             .map(SourcePlan::jobs)
+             .flatMap(Collection::stream)
+             .map(job -> new JobCost(job, this.jobCostEstimator.estimateCost(job)))
+             .sorted(Comparator.comparingDouble(JobCost::cost).reversed())
+             .map(JobCost::job)
+             .forEach(job -> jobFutures.put(job, submitJob(job, inFlightLimiter)));
+    }
+
+    @SneakyThrows
+    private CompletableFuture<Integer> submitJob(RecodeJob job, @Nullable Semaphore inFlightLimiter) {
+        if (inFlightLimiter == null) {
+            return createFutureForJob(job);
+        }
+
+        inFlightLimiter.acquire();
+        try {
+            return createFutureForJob(job).whenComplete((_, _) -> inFlightLimiter.release());
+        } catch (Throwable t) {
+            inFlightLimiter.release();
+            throw t;
+        }
+    }
+
     /**
      * The directories must be processed in reversed orders, starting at the deepest depth.
      */
     private void processDirs(final Map<Path, BasicFileAttributes> pathMap) {
-        System.out.println();
+        OutUtils.ansiOut("");
         pathMap.entrySet().stream()
                .filter(entry -> entry.getValue().isDirectory())
                .sorted(Map.Entry.comparingByKey(REVERSED_PATH_COMPARATOR))
@@ -149,78 +487,478 @@ public class RecoderService {
     }
 
     /**
-     * When processing one "CUE" file, several output files may be generated.
-     * <p>That's why the result of the method is a List.
+     * The recode plan of one source file. A regular file is recoded by one job, a CUE-file by one job per track.
+     *
+     * @param jobs        the jobs to submit. Empty when the result of the source file is known without recoding.
+     * @param knownResult the result of the source file, which is known at the planning time (skipped or failed)
+     * @param manifest    the manifest to remember the successfully recoded source file in
      */
-    @SneakyThrows
-    private List<CompletableFuture<Integer>> processFile(Map.Entry<Path, BasicFileAttributes> entry) {
+    private record SourcePlan(Map.Entry<Path, BasicFileAttributes> entry, List<RecodeJob> jobs,
+                              @Nullable CompletableFuture<Integer> knownResult,
+                              @Nullable RecodeManifest manifest, String templateHash) {
+
+        static SourcePlan ofResult(Map.Entry<Path, BasicFileAttributes> entry, CompletableFuture<Integer> result) {
+            return new SourcePlan(entry, Collections.emptyList(), result, null, "");
+        }
+
+        SourcePlan withJobs(List<RecodeJob> jobs, String templateHash) {
+            return new SourcePlan(this.entry, jobs, null, this.manifest, templateHash);
+        }
+
+        /**
+         * The jobs of a CUE-file are known only when it has been parsed.
+         */
+        boolean isCueFileToParse() {
+            return this.knownResult == null && this.jobs.isEmpty()
+                && CueHelper.CUE_EXT.equalsIgnoreCase(FilenameUtils.getExtension(this.entry.getKey().toString()));
+        }
+    }
+
+    private SourcePlan planSourceFile(Map.Entry<Path, BasicFileAttributes> entry) {
         Path sourceFilePath = entry.getKey();
-        FileTime sourceFileTime = entry.getValue().lastModifiedTime();
 
         if (!Files.exists(sourceFilePath)) {
             OutUtils.ansiErr("Source file doesn't exists: @|red " + sourceFilePath + "|@");
-            return Collections.singletonList(CompletableFuture.completedFuture(CommandLine.ExitCode.SOFTWARE));
+            return SourcePlan.ofResult(entry, CompletableFuture.completedFuture(CommandLine.ExitCode.SOFTWARE));
         }
 
+        Optional<RecodeManifest> manifest = findManifest(sourceFilePath);
+        String templateHash = RecodeManifest.hashTemplates(this.recodeCommand.getCommandTemplates(sourceFilePath));
+
         String extension = FilenameUtils.getExtension(sourceFilePath.toString());
         if (CueHelper.CUE_EXT.equalsIgnoreCase(extension)) {
-            return createFuturesForCueFile(sourceFilePath);
-        } else {
-            return Collections.singletonList(createFutureForOrdinalFile(sourceFilePath, sourceFileTime));
+            // The manifest of a CUE-file is checked when its audio files are known (see planCueFile)
+            return new SourcePlan(entry, Collections.emptyList(), null, manifest.orElse(null), templateHash);
         }
+
+        if (manifest.isPresent() && manifest.get().isUpToDate(sourceFilePath, entry.getValue(), templateHash)) {
+            return skipNotChanged(entry);
+        }
+
+        return new SourcePlan(entry, Collections.singletonList(createOrdinalFileJob(entry)), null,
+            manifest.orElse(null), templateHash);
     }
 
-    private List<CompletableFuture<Integer>> createFuturesForCueFile(Path sourceFilePath) {
+    /**
+     * A CUE-file is up to date only when its audio files are not changed either.
+     */
+    private SourcePlan planCueFile(SourcePlan plan, ParallelCueParser.ParsedCueFile parsedCueFile) {
+        Path cueFilePath = parsedCueFile.cueFilePath();
+        if (parsedCueFile.error() != null) {
+            this.cueHelper.showCueSheet(cueFilePath, parsedCueFile.cueSheet());
+            return SourcePlan.ofResult(plan.entry(), CompletableFuture.failedFuture(parsedCueFile.error()));
+        }
+
         try {
-            return this.cueHelper
-                .getAllCueTracksPayloadList(sourceFilePath)
-                .stream()
-                .map(this::createFutureForCueTrack)
-                .toList();
+            List<Path> audioFilePaths = parsedCueFile.trackPayloads().stream()
+                                                     .map(CueTrackPayload::getAudioFilePath)
+                                                     .distinct()
+                                                     .toList();
+            String templateHash = RecodeManifest.hashTemplates(
+                this.recodeCommand.getCommandTemplates(cueFilePath), audioFilePaths);
+
+            RecodeManifest manifest = plan.manifest();
+            if (manifest != null && manifest.isUpToDate(cueFilePath, plan.entry().getValue(), templateHash)) {
+                return skipNotChanged(plan.entry());
+            }
+
+            this.cueHelper.showCueSheet(cueFilePath, parsedCueFile.cueSheet());
+            return plan.withJobs(createCueFileJobs(parsedCueFile.trackPayloads()), templateHash);
         } catch (Exception e) {
-            return Collections.singletonList(CompletableFuture.failedFuture(e));
+            return SourcePlan.ofResult(plan.entry(), CompletableFuture.failedFuture(e));
+        }
+    }
+
+    private static SourcePlan skipNotChanged(Map.Entry<Path, BasicFileAttributes> entry) {
+        log.info("Skipped not changed {}", entry.getKey());
+        OutUtils.ansiOut("Skipped (not changed): @|cyan " + entry.getKey() + "|@");
+        return SourcePlan.ofResult(entry, CompletableFuture.completedFuture(CommandLine.ExitCode.OK));
+    }
+
+    /**
+     * When processing one "CUE" file, several output files may be generated.
+     * <p>That's why the result of the method is a List.
+     */
+    private List<CompletableFuture<Integer>> getSourceFileFutures(
+        SourcePlan plan, Map<RecodeJob, CompletableFuture<Integer>> jobFutures) {
+
+        if (plan.knownResult() != null) {
+            return Collections.singletonList(plan.knownResult());
+        }
+
+        List<CompletableFuture<Integer>> fileFutures = plan.jobs().stream().map(jobFutures::get).toList();
+
+        RecodeManifest manifest = plan.manifest();
+        if (manifest == null) {
+            return fileFutures;
+        }
+        return Collections.singletonList(markRecodedOnSuccess(fileFutures, manifest, plan.entry(),
+            plan.templateHash()));
+    }
+
+    /**
+     * The source file is remembered in the manifest only when all its target files are recoded successfully.
+     * The futures of the source file are combined into one, so the manifest is updated before the run completes.
+     */
+    private CompletableFuture<Integer> markRecodedOnSuccess(List<CompletableFuture<Integer>> fileFutures,
+                                                            RecodeManifest manifest,
+                                                            Map.Entry<Path, BasicFileAttributes> entry,
+                                                            String templateHash) {
+        return CompletableFuture
+            .allOf(fileFutures.toArray(new CompletableFuture[0]))
+            .thenApply(_ -> fileFutures.stream()
+                                       .map(CompletableFuture::join)
+                                       .reduce(Math::max)
+                                       .orElse(CommandLine.ExitCode.OK))
+            .thenApply(exitCode -> {
+                if (exitCode == CommandLine.ExitCode.OK) {
+                    markRecoded(manifest, entry, templateHash);
+                }
+                return exitCode;
+            });
+    }
+
+    private void markRecoded(RecodeManifest manifest, Map.Entry<Path, BasicFileAttributes> entry,
+                             String templateHash) {
+        try {
+            manifest.markRecoded(entry.getKey(), entry.getValue(), templateHash);
+        } catch (IOException e) {
+            log.error("Error on writing the manifest in: {}", manifest.getRootDir(), e);
+            OutUtils.ansiErr(" @|red Error on writing the manifest in: " + manifest.getRootDir() + ". " + e + "|@");
+        }
+    }
+
+    /**
+     * The tracks of an audio file with a CUE split template are recoded by one job, which decodes the file once.
+     * Otherwise, each track is recoded by its own job.
+     */
+    private List<RecodeJob> createCueFileJobs(List<CueTrackPayload> trackPayloads) throws IOException {
+        Map<Path, List<CueTrackPayload>> audioFileTracks = trackPayloads
+            .stream()
+            .collect(Collectors.groupingBy(CueTrackPayload::getAudioFilePath, LinkedHashMap::new,
+                Collectors.toList()));
+        List<RecodeJob> jobs = new ArrayList<>();
+
+        for (Map.Entry<Path, List<CueTrackPayload>> entry : audioFileTracks.entrySet()) {
+            Path audioFilePath = entry.getKey();
+            long audioFileSize = Files.size(audioFilePath);
+
+            if (this.recodeCommand.hasCueSplitTemplate(audioFilePath)) {
+                jobs.add(createCueSplitJob(entry.getValue(), audioFileSize));
+            } else {
+                for (CueTrackPayload trackPayload : entry.getValue()) {
+                    jobs.add(createCueTrackJob(trackPayload, audioFileSize));
+                }
+            }
+        }
+        return jobs;
+    }
+
+    private RecodeJob createCueTrackJob(CueTrackPayload trackPayload, long audioFileSize) {
+        ResolvedCommand command = this.recodeCommand.resolveCommand(trackPayload);
+        List<Path> targetFilePaths = List.of(getTargetFilePath(command));
+        List<Path> partialFilePaths = new ArrayList<>(1);
+        ResolvedCommand partialCommand = redirectToPartialFiles(command, targetFilePaths, partialFilePaths);
+
+        return RecodeJob.builder()
+                        .sourceFilePath(trackPayload.getSourceFilePath())
+                        .audioFilePath(trackPayload.getAudioFilePath())
+                        .audioFileSize(audioFileSize)
+                        .sourceFileTime(trackPayload.getAudioFileTime())
+                        .command(partialCommand)
+                        .targetFilePaths(targetFilePaths)
+                        .partialFilePaths(partialFilePaths)
+                        .cueTrackPayload(trackPayload)
+                        .build();
+    }
+
+    private RecodeJob createCueSplitJob(List<CueTrackPayload> trackPayloads, long audioFileSize) {
+        CueTrackPayload firstTrack = trackPayloads.getFirst();
+        List<Path> targetFilePaths = this.recodeCommand.resolveCueSplitOutputs(trackPayloads).stream()
+                                                       .map(RecoderService::getTargetFilePath)
+                                                       .toList();
+        List<Path> partialFilePaths = new ArrayList<>(targetFilePaths.size());
+        ResolvedCommand partialCommand = redirectToPartialFiles(
+            this.recodeCommand.resolveCueSplitCommand(trackPayloads), targetFilePaths, partialFilePaths);
+
+        return RecodeJob.builder()
+                        .sourceFilePath(firstTrack.getSourceFilePath())
+                        .audioFilePath(firstTrack.getAudioFilePath())
+                        .audioFileSize(audioFileSize)
+                        .sourceFileTime(firstTrack.getAudioFileTime())
+                        .command(partialCommand)
+                        .targetFilePaths(targetFilePaths)
+                        .partialFilePaths(partialFilePaths)
+                        .splitTrackPayloads(trackPayloads)
+                        .build();
+    }
+
+    private RecodeJob createOrdinalFileJob(Map.Entry<Path, BasicFileAttributes> entry) {
+        Path sourceFilePath = entry.getKey();
+        ResolvedCommand command = this.recodeCommand.resolveCommand(sourceFilePath);
+        List<ResolvedCommand> teeCommands = this.recodeCommand.resolveTeeCommands(sourceFilePath);
+
+        List<Path> targetFilePaths = teeCommands.isEmpty()
+            ? List.of(getTargetFilePath(command))
+            : teeCommands.stream().map(RecoderService::getTargetFilePath).toList();
+
+        // The decoder command of the tee commands writes to the pipe, only the encoder commands are redirected
+        List<Path> partialFilePaths = new ArrayList<>(targetFilePaths.size());
+        ResolvedCommand partialCommand = teeCommands.isEmpty()
+            ? redirectToPartialFiles(command, targetFilePaths, partialFilePaths)
+            : command;
+        List<ResolvedCommand> partialTeeCommands = teeCommands
+            .stream()
+            .map(teeCommand -> redirectToPartialFiles(teeCommand, List.of(getTargetFilePath(teeCommand)),
+                partialFilePaths))
+            .toList();
+
+        return RecodeJob.builder()
+                        .sourceFilePath(sourceFilePath)
+                        .audioFilePath(sourceFilePath)
+                        .audioFileSize(entry.getValue().size())
+                        .sourceFileTime(entry.getValue().lastModifiedTime())
+                        .command(partialCommand)
+                        .teeCommands(partialTeeCommands)
+                        .targetFilePaths(targetFilePaths)
+                        .partialFilePaths(partialFilePaths)
+                        .build();
+    }
+
+    /**
+     * The command writes the partial file instead of each target file (see {@link AtomicOutput}).
+     *
+     * @param partialFilePaths receives the partial file of each target file, or the target file itself,
+     *                         when the command doesn't have it as a separate arg (so it is written in place)
+     */
+    private static ResolvedCommand redirectToPartialFiles(ResolvedCommand command, List<Path> targetFilePaths,
+                                                          List<Path> partialFilePaths) {
+        ResolvedCommand partialCommand = command;
+        for (Path targetFilePath : targetFilePaths) {
+            Path partialFilePath = AtomicOutput.toPartialPath(targetFilePath);
+            ResolvedCommand redirected =
+                partialCommand.withArgReplaced(targetFilePath.toString(), partialFilePath.toString());
+
+            if (redirected == partialCommand) {
+                log.debug("The target file is not an arg of the command, it is written in place: {}", targetFilePath);
+                partialFilePaths.add(targetFilePath);
+            } else {
+                partialCommand = redirected;
+                partialFilePaths.add(partialFilePath);
+            }
+        }
+        return partialCommand;
+    }
+
+    private CompletableFuture<Integer> createFutureForJob(RecodeJob job) {
+        if (isDoneByResumedRun(job)) {
+            log.info("Skipped done by the resumed run {}", job.getTargetFilePaths());
+            job.getTargetFilePaths().forEach(targetFilePath ->
+                OutUtils.ansiOut("Skipped (done by the resumed run): @|cyan " + targetFilePath + "|@"));
+            return CompletableFuture.completedFuture(CommandLine.ExitCode.OK);
+        }
+        appendToJournal(job, RecodeJournal.State.QUEUED);
+        ProgressDashboard dashboard = this.progressDashboard;
+        if (dashboard != null) {
+            dashboard.jobSubmitted(job, this.jobCostEstimator.estimateInputBytes(job));
+        }
+
+        var jobMetrics = new JobMetrics(job.getTargetFilePath());
+        // Before the run, since it sets the deadline of the job
+        jobMetrics.setAudioSeconds(this.jobCostEstimator.estimateAudioSeconds(job));
+        CompletableFuture<Integer> future = job.isCueJob()
+            ? createFutureForCueTrack(job, jobMetrics)
+            : createFutureForOrdinalFile(job, jobMetrics);
+
+        return future.whenComplete((exitCode, _) -> {
+            recordJobMetrics(job, jobMetrics, exitCode);
+            if (dashboard != null) {
+                dashboard.jobCompleted(job, jobMetrics.getInputBytes(),
+                    exitCode == null || exitCode != CommandLine.ExitCode.OK);
+            }
+        });
+    }
+
+    private boolean isDoneByResumedRun(RecodeJob job) {
+        return findJournal(job.getSourceFilePath())
+            .map(journal -> journal.isDone(job.getTargetFilePaths()))
+            .orElse(false);
+    }
+
+    private void recordJobMetrics(RecodeJob job, JobMetrics jobMetrics, @Nullable Integer exitCode) {
+        jobMetrics.setExitCode(exitCode == null ? CommandLine.ExitCode.SOFTWARE : exitCode);
+        jobMetrics.setInputBytes(this.jobCostEstimator.estimateInputBytes(job));
+        if (exitCode != null && exitCode == CommandLine.ExitCode.OK) {
+            jobMetrics.setOutputBytes(job.getTargetFilePaths().stream().mapToLong(this::getFileSize).sum());
+        }
+        this.runMetrics.add(jobMetrics);
+    }
+
+    private long getFileSize(Path filePath) {
+        try {
+            return Files.size(filePath);
+        } catch (IOException e) {
+            log.debug("Can't get the file size: {}", filePath, e);
+            return 0;
         }
     }
 
-    private CompletableFuture<Integer> createFutureForOrdinalFile(Path sourceFilePath, FileTime sourceFileTime) {
-        String command = this.recodeCommand.getCommand(sourceFilePath);
-        Path targetFilePath = getTargetFilePath(command);
+    private CompletableFuture<Integer> createFutureForOrdinalFile(RecodeJob job, JobMetrics jobMetrics) {
+        return execJobAsync(job, jobMetrics)
+            .thenApply(preserveTimestampAction(job.getTargetFilePaths(), job.getSourceFileTime()))
+            .thenCompose(removeToTrashAction(job.getSourceFilePath()))
+            .whenComplete(oneFileProcessCompleteAction(job.getSourceFilePath()))
+            .handle(oneFileProcessResultAction());
+    }
 
-        return this.processRunner
-            .execCommandAsync(command, sourceFilePath)
-            .orTimeout(10, TimeUnit.MINUTES) //??
-            .thenApply(preserveTimestampAction(targetFilePath, sourceFileTime))
-            .thenApply(removeToTrashAction(sourceFilePath))
-            .whenComplete(oneFileProcessCompleteAction(sourceFilePath))
+    private CompletableFuture<Integer> createFutureForCueTrack(RecodeJob job, JobMetrics jobMetrics) {
+        return execJobAsync(job, jobMetrics)
+            .thenApply(preserveTimestampAction(job.getTargetFilePaths(), job.getSourceFileTime()))
+            .whenComplete((exitCode, t) -> job.getTargetFilePaths().forEach(
+                targetFilePath -> oneFileProcessCompleteAction(targetFilePath).accept(exitCode, t)))
             .handle(oneFileProcessResultAction());
     }
 
-    private CompletableFuture<Integer> createFutureForCueTrack(CueTrackPayload trackPayload) {
-        String command = this.recodeCommand.getCommand(trackPayload);
-        Path targetFilePath = getTargetFilePath(command);
+    /**
+     * When the cache is used, the target file of an identical job is taken from the cache instead of running
+     * the command, and a successfully recoded target file is put into the cache.
+     * Both happen in the pool thread, since the hashing of the source file content takes time.
+     * The staged copy of the audio file is hashed, so a remote source is read over the network only once.
+     * <p>
+     * The partial files are committed to the target files only on success, and only then the job is journaled
+     * as done. Otherwise, the partial files are deleted.
+     * <p>
+     * The job is submitted to the pool only when its audio file is staged (see {@link SourceStager}),
+     * and its storage devices are free (see {@link StorageConcurrencyLimiter}).
+     */
+    private CompletableFuture<Integer> execJobAsync(RecodeJob job, JobMetrics jobMetrics) {
+        RecodeCache cache = this.recodeCache;
+        SourceStager stager = this.sourceStager;
+        CompletableFuture<Path> audioFileReady = stager != null
+            ? stager.stage(job.getAudioFilePath(), job.getAudioFileSize())
+            : CompletableFuture.completedFuture(job.getAudioFilePath());
+        return audioFileReady
+            .thenCompose(audioFilePath -> this.storageLimiter
+                .acquire(audioFilePath, job.getTargetFilePath())
+                .thenCompose(permits -> this.processRunner
+                    .execCommandAsync(readFrom(job.getCommand(), job, audioFilePath),
+                        job.getTeeCommands().stream().map(command -> readFrom(command, job, audioFilePath)).toList(),
+                        job.getSourceFilePath(), job.getPartialFilePaths(), () -> {
+                            startJob(job);
+                            return cache != null && restoreFromCache(cache, job, audioFilePath);
+                        }, jobMetrics)
+                    .whenComplete((_, _) -> permits.release()))
+                .thenApply(exitCode -> completeJob(job, exitCode, cache, audioFilePath)))
+            .whenComplete((_, t) -> {
+                if (t != null) {
+                    failJob(job);
+                }
+                if (stager != null) {
+                    stager.release(job.getAudioFilePath());
+                }
+            });
+    }
+
+    /**
+     * @return the command reading the staged copy of the audio file. The job itself keeps the original command,
+     * since it is the key of the cache.
+     */
+    private static ResolvedCommand readFrom(ResolvedCommand command, RecodeJob job, Path audioFilePath) {
+        return audioFilePath.equals(job.getAudioFilePath())
+            ? command
+            : command.withArgReplaced(job.getAudioFilePath().toString(), audioFilePath.toString());
+    }
+
+    /**
+     * A stale partial file of an earlier run is deleted, since some encoders don't overwrite an existing file.
+     */
+    private void startJob(RecodeJob job) {
+        ProgressDashboard dashboard = this.progressDashboard;
+        if (dashboard != null) {
+            dashboard.jobStarted(job);
+        }
+        appendToJournal(job, RecodeJournal.State.RUNNING);
+        AtomicOutput.discard(job.getPartialFilePaths(), job.getTargetFilePaths());
+    }
+
+    /**
+     * @param audioFilePath the audio file read by the job: its own, or the staged copy
+     */
+    private int completeJob(RecodeJob job, int exitCode, @Nullable RecodeCache cache, Path audioFilePath) {
+        if (exitCode != CommandLine.ExitCode.OK) {
+            failJob(job);
+            return exitCode;
+        }
+
+        try {
+            AtomicOutput.commit(job.getPartialFilePaths(), job.getTargetFilePaths());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (cache != null) {
+            storeToCache(cache, job, audioFilePath);
+        }
+        appendToJournal(job, RecodeJournal.State.DONE);
+        return exitCode;
+    }
+
+    private void failJob(RecodeJob job) {
+        AtomicOutput.discard(job.getPartialFilePaths(), job.getTargetFilePaths());
+        appendToJournal(job, RecodeJournal.State.FAILED);
+    }
+
+    private void appendToJournal(RecodeJob job, RecodeJournal.State state) {
+        findJournal(job.getSourceFilePath()).ifPresent(journal -> {
+            try {
+                journal.append(state, job.getTargetFilePaths(), job.getPartialFilePaths());
+            } catch (IOException e) {
+                log.error("Error on writing the journal in: {}", journal.getRootDir(), e);
+            }
+        });
+    }
+
+    private boolean restoreFromCache(RecodeCache cache, RecodeJob job, Path audioFilePath) {
+        try {
+            boolean isRestored = cache.restore(job, audioFilePath);
+            if (isRestored) {
+                job.getTargetFilePaths().forEach(
+                    targetFilePath -> OutUtils.ansiOut("Taken from cache: @|bold,blue " + targetFilePath + "|@"));
+            }
+            return isRestored;
+        } catch (IOException e) {
+            log.error("Error on restoring from the cache: {}", job.getTargetFilePath(), e);
+            return false;
+        }
+    }
 
-        return this.processRunner.execCommandAsync(command, trackPayload.getSourceFilePath())
-                                 .orTimeout(10, TimeUnit.MINUTES) //TODO
-                                 .thenApply(preserveTimestampAction(targetFilePath, trackPayload.getAudioFileTime()))
-                                 .whenComplete(oneFileProcessCompleteAction(targetFilePath)) // TODO:
-                                 .handle(oneFileProcessResultAction());
+    private void storeToCache(RecodeCache cache, RecodeJob job, Path audioFilePath) {
+        try {
+            cache.store(job, audioFilePath);
+        } catch (IOException e) {
+            log.error("Error on storing to the cache: {}", job.getTargetFilePath(), e);
+        }
     }
 
-    private Function<Integer, Integer> preserveTimestampAction(Path targetFilePath, FileTime sourceFileTime) {
+    private Function<Integer, Integer> preserveTimestampAction(List<Path> targetFilePaths, FileTime sourceFileTime) {
         return exitCode -> {
             if ((exitCode == CommandLine.ExitCode.OK) && this.paraCoderParams.preserveFileTimestamp()) {
-                setFileLastModifiedTime(targetFilePath, sourceFileTime);
+                targetFilePaths.forEach(targetFilePath -> setFileLastModifiedTime(targetFilePath, sourceFileTime));
             }
             return exitCode;
         };
     }
 
-    private Function<Integer, Integer> removeToTrashAction(Path sourceFilePath) {
+    /**
+     * The source file is deleted by the {@link TrashBatcher} together with other files, so the pool thread
+     * doesn't wait for it. An error of the deletion fails the future of this file only.
+     */
+    private Function<Integer, CompletableFuture<Integer>> removeToTrashAction(Path sourceFilePath) {
         return exitCode -> {
-            if ((exitCode == CommandLine.ExitCode.OK) && this.paraCoderParams.deleteSourceFilesToTrash()) {
-                deleteFileToTrash(sourceFilePath);
+            TrashBatcher batcher = this.trashBatcher;
+            if ((exitCode == CommandLine.ExitCode.OK) && (batcher != null)) {
+                return batcher.delete(sourceFilePath).thenApply(_ -> exitCode);
             }
-            return exitCode;
+            return CompletableFuture.completedFuture(exitCode);
         };
     }
 
@@ -259,7 +997,16 @@ public class RecoderService {
         };
     }
 
-    private Path getTargetFilePath(String fileCommand) {
+    /**
+     * The target file is the explicit output of the command, or else the last quoted string of its text.
+     */
+    private static Path getTargetFilePath(ResolvedCommand command) {
+        String output = command.output();
+        return output != null ? Path.of(output) : getTargetFilePath(command.text());
+    }
+
+    @VisibleForTesting
+    static Path getTargetFilePath(String fileCommand) {
         var matcher = LAST_QUOTED_STRING_PATTERN.matcher(fileCommand);
         if (matcher.find()) {
             String targetFilePath = matcher.group("targetFile");
@@ -292,11 +1039,6 @@ public class RecoderService {
         }
     }
 
-    @SneakyThrows
-    private void deleteFileToTrash(Path filePath) {
-        this.osNative.deleteToTrash(filePath);
-    }
-
     private CompletableFuture<Integer> handleUnhandledExceptions(CompletableFuture<Integer> future) {
         // TODO: Find a way to handle unhandled exceptions for CompletableFutures
         return future.whenComplete(oneFileProcessCompleteAction(Path.of("")))
@@ -4,31 +4,51 @@ import by.rayden.paracoder.cli.command.CommandController;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 
 @Component
 @Slf4j
 @Lazy
 public class RecoderThreadPool {
     private static final int WORK_QUEUE_CAPACITY = 100;
-    private static final RejectedExecutionHandler REJECTED_HANDLER = new ThreadPoolExecutor.CallerRunsPolicy();
+    private static final RejectedExecutionHandler CALLER_RUNS_HANDLER = new ThreadPoolExecutor.CallerRunsPolicy();
+    private static final RejectedExecutionHandler REJECTED_HANDLER = RecoderThreadPool::rejectedExecution;
     private static final LinkedBlockingQueue<Runnable> WORK_QUEUE = new LinkedBlockingQueue<>(WORK_QUEUE_CAPACITY);
 
+    /**
+     * Bound in a thread which must not run a job itself (see {@link #runWithoutCallerRuns}).
+     */
+    private static final ScopedValue<Boolean> IS_CALLER_RUNS_DISABLED = ScopedValue.newInstance();
+
     private final CommandController commandController;
 
     @Getter
     private ExecutorService executor;
 
+    /**
+     * Limits the number of running recode commands in the virtual threads mode, where the thread count is unlimited.
+     */
+    @Getter
+    @Nullable
+    private ConcurrencyLimiter processLimiter;
+
+    @Nullable
+    private AdaptiveConcurrencyController concurrencyController;
+
 
     public RecoderThreadPool(CommandController commandController) {
         this.commandController = commandController;
@@ -42,13 +62,77 @@ public class RecoderThreadPool {
     @PostConstruct
     public void init() {
         int threadCount = this.commandController.getThreadCount();
+        boolean isAdaptive = threadCount == CommandController.AUTO_THREAD_COUNT;
+        if (isAdaptive) {
+            threadCount = AdaptiveConcurrencyController.getInitialConcurrency();
+        }
+
+        IntConsumer concurrencySetter;
+        if (this.commandController.isVirtualThreads()) {
+            // Each job gets its own virtual thread, so waiting for the process and the post-processing
+            // of the job don't hold an OS thread. Only the number of running processes is limited.
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("vt-recode-", 0).factory());
+            var limiter = new ConcurrencyLimiter(threadCount);
+            this.processLimiter = limiter;
+            concurrencySetter = limiter::setLimit;
+        } else {
+            var threadPoolExecutor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
+                WORK_QUEUE, threadFactory("cf-async-"), REJECTED_HANDLER);
+            this.executor = threadPoolExecutor;
+            concurrencySetter = poolSize -> resize(threadPoolExecutor, poolSize);
+        }
+
+        if (isAdaptive) {
+            this.concurrencyController = new AdaptiveConcurrencyController(new SystemLoadMonitor(), concurrencySetter);
+            this.concurrencyController.start();
+        }
+    }
 
-        this.executor = new ThreadPoolExecutor(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS,
-            WORK_QUEUE, threadFactory("cf-async-"), REJECTED_HANDLER);
+    /**
+     * Runs the action, which submits jobs to the pool, so the jobs wait for a free place in the full work queue
+     * instead of being run by the calling thread. For the threads which serve other jobs, e.g. the staging ones,
+     * since a job run inline would hold them for the whole encode.
+     */
+    public static void runWithoutCallerRuns(Runnable action) {
+        ScopedValue.where(IS_CALLER_RUNS_DISABLED, true).run(action);
+    }
+
+    private static void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        if (!IS_CALLER_RUNS_DISABLED.isBound()) {
+            CALLER_RUNS_HANDLER.rejectedExecution(task, executor);
+            return;
+        }
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("The recode pool is shut down");
+        }
+
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        }
+    }
+
+    /**
+     * The extra threads of a shrunk pool finish their current jobs and then terminate.
+     */
+    private static void resize(ThreadPoolExecutor threadPoolExecutor, int poolSize) {
+        // The core size may not exceed the maximum size at any moment
+        if (poolSize > threadPoolExecutor.getMaximumPoolSize()) {
+            threadPoolExecutor.setMaximumPoolSize(poolSize);
+            threadPoolExecutor.setCorePoolSize(poolSize);
+        } else {
+            threadPoolExecutor.setCorePoolSize(poolSize);
+            threadPoolExecutor.setMaximumPoolSize(poolSize);
+        }
     }
 
     @PreDestroy
     private void destroy() throws InterruptedException {
+        if (this.concurrencyController != null) {
+            this.concurrencyController.close();
+        }
         if (this.executor != null) {
             this.executor.shutdown();
             //noinspection ResultOfMethodCallIgnored
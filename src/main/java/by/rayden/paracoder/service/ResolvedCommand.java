@@ -0,0 +1,46 @@
+package by.rayden.paracoder.service;
+
+import org.springframework.lang.Nullable;
+
+import java.util.List;
+
+/**
+ * A command with the resolved placeholders.
+ *
+ * @param text   the command text for the log and the target file lookup
+ * @param argv   the argv of each stage of the pipe (a command without a pipe has one stage)
+ * @param output the target file, when the template sets it explicitly
+ */
+public record ResolvedCommand(String text, List<List<String>> argv, @Nullable String output) {
+    public ResolvedCommand {
+        argv = List.copyOf(argv);
+    }
+
+    public ResolvedCommand(String text, List<List<String>> argv) {
+        this(text, argv, null);
+    }
+
+    /**
+     * Replaces each arg equal to the given one (and its occurrences in the text and the output).
+     *
+     * @return this command, if there is no such arg
+     */
+    public ResolvedCommand withArgReplaced(String arg, String replacement) {
+        if (this.argv.stream().noneMatch(args -> args.contains(arg))) {
+            return this;
+        }
+
+        List<List<String>> replacedArgv = this.argv.stream()
+                                                   .map(args -> args.stream()
+                                                                    .map(a -> a.equals(arg) ? replacement : a)
+                                                                    .toList())
+                                                   .toList();
+        String replacedOutput = arg.equals(this.output) ? replacement : this.output;
+        return new ResolvedCommand(this.text.replace(arg, replacement), replacedArgv, replacedOutput);
+    }
+
+    @Override
+    public String toString() {
+        return this.text;
+    }
+}
@@ -0,0 +1,224 @@
+package by.rayden.paracoder.service;
+
+import by.rayden.paracoder.utils.OutUtils;
+import org.jetbrains.annotations.VisibleForTesting;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the {@link JobMetrics} of a run and makes the end-of-run performance report.
+ */
+public class RunMetrics {
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+    private static final double SECONDS_PER_HOUR = 3600;
+    private static final double[] PERCENTILES = {50, 90, 99, 100};
+
+    private final long runStartNanos = System.nanoTime();
+    private final Queue<JobMetrics> jobMetricsQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The configured thread count, or 0 if it is adjusted while running.
+     */
+    private final int threadCount;
+
+    private record Metric(String name, String unit, ToDoubleFunction<JobMetrics> getter) {
+    }
+
+    private static final List<Metric> PROCESS_METRICS = List.of(
+        new Metric("queueWait", "s", jobMetrics -> jobMetrics.getQueueWaitNanos() / NANOS_PER_SECOND),
+        new Metric("startLatency", "ms", jobMetrics -> jobMetrics.getStartLatencyNanos() / NANOS_PER_MILLI),
+        new Metric("wallTime", "s", jobMetrics -> jobMetrics.getWallNanos() / NANOS_PER_SECOND),
+        new Metric("cpuTime", "s", jobMetrics -> jobMetrics.getCpuNanos() / NANOS_PER_SECOND),
+        new Metric("realtimeFactor", "x", JobMetrics::getRealtimeFactor)
+    );
+
+    private record Summary(int jobCount, long cachedJobCount, long failedJobCount, double runSeconds,
+                           long inputBytes, long outputBytes, double audioSeconds, double averageBusyThreads,
+                           @Nullable Double threadUtilisation) {
+
+        double throughputMBps() {
+            return this.runSeconds == 0 ? 0 : this.inputBytes / BYTES_PER_MB / this.runSeconds;
+        }
+
+        double audioHoursPerHour() {
+            return this.runSeconds == 0 ? 0 : this.audioSeconds / this.runSeconds;
+        }
+    }
+
+    public RunMetrics(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public void add(JobMetrics jobMetrics) {
+        this.jobMetricsQueue.add(jobMetrics);
+    }
+
+    public void printReport() {
+        Summary summary = summarize();
+        List<JobMetrics> processJobs = getProcessJobs();
+
+        OutUtils.ansiOut("");
+        OutUtils.ansiOut("@|bold Run report:|@ " + summary.jobCount() + " jobs (" + summary.cachedJobCount()
+            + " from cache, " + summary.failedJobCount() + " failed) in "
+            + formatDuration(summary.runSeconds()));
+
+        if (!processJobs.isEmpty()) {
+            OutUtils.ansiOut(String.format(Locale.ROOT, "%-20s %10s %10s %10s %10s", "", "p50", "p90", "p99", "max"));
+            for (Metric metric : PROCESS_METRICS) {
+                double[] percentiles = getPercentiles(processJobs, metric.getter());
+                OutUtils.ansiOut(String.format(Locale.ROOT, "%-20s %10.2f %10.2f %10.2f %10.2f",
+                    metric.name() + ", " + metric.unit(), percentiles[0], percentiles[1], percentiles[2],
+                    percentiles[3]));
+            }
+        }
+
+        OutUtils.ansiOut(String.format(Locale.ROOT, "Throughput: %.1f MB/s, %.2f audio-hours/hour",
+            summary.throughputMBps(), summary.audioHoursPerHour()));
+        String utilisation = summary.threadUtilisation() == null
+            ? ""
+            : String.format(Locale.ROOT, ", utilisation %.0f%% of %d", summary.threadUtilisation() * 100,
+                this.threadCount);
+        OutUtils.ansiOut(String.format(Locale.ROOT, "Busy threads: average %.1f%s",
+            summary.averageBusyThreads(), utilisation));
+    }
+
+    public void writeJson(Path jsonFilePath) throws IOException {
+        Files.writeString(jsonFilePath, toJson(), StandardCharsets.UTF_8);
+    }
+
+    @VisibleForTesting
+    String toJson() {
+        Summary summary = summarize();
+        List<JobMetrics> processJobs = getProcessJobs();
+
+        String percentiles = PROCESS_METRICS.stream()
+                                            .map(metric -> jsonString(metric.name()) + ": "
+                                                + percentilesToJson(getPercentiles(processJobs, metric.getter())))
+                                            .collect(Collectors.joining(", ", "{", "}"));
+
+        String jobs = this.jobMetricsQueue.stream()
+                                          .map(RunMetrics::jobToJson)
+                                          .collect(Collectors.joining(",\n    ", "[\n    ", "\n  ]"));
+
+        return "{\n"
+            + "  \"jobCount\": " + summary.jobCount() + ",\n"
+            + "  \"cachedJobCount\": " + summary.cachedJobCount() + ",\n"
+            + "  \"failedJobCount\": " + summary.failedJobCount() + ",\n"
+            + "  \"runSeconds\": " + jsonNumber(summary.runSeconds()) + ",\n"
+            + "  \"inputBytes\": " + summary.inputBytes() + ",\n"
+            + "  \"outputBytes\": " + summary.outputBytes() + ",\n"
+            + "  \"audioSeconds\": " + jsonNumber(summary.audioSeconds()) + ",\n"
+            + "  \"throughputMBps\": " + jsonNumber(summary.throughputMBps()) + ",\n"
+            + "  \"audioHoursPerHour\": " + jsonNumber(summary.audioHoursPerHour()) + ",\n"
+            + "  \"averageBusyThreads\": " + jsonNumber(summary.averageBusyThreads()) + ",\n"
+            + "  \"threadUtilisation\": "
+            + (summary.threadUtilisation() == null ? "null" : jsonNumber(summary.threadUtilisation())) + ",\n"
+            + "  \"percentiles\": " + percentiles + ",\n"
+            + "  \"jobs\": " + (this.jobMetricsQueue.isEmpty() ? "[]" : jobs) + "\n"
+            + "}\n";
+    }
+
+    private Summary summarize() {
+        double runSeconds = (System.nanoTime() - this.runStartNanos) / NANOS_PER_SECOND;
+        List<JobMetrics> allJobs = List.copyOf(this.jobMetricsQueue);
+
+        long busyNanos = allJobs.stream().mapToLong(JobMetrics::getBusyNanos).sum();
+        double averageBusyThreads = runSeconds == 0 ? 0 : busyNanos / NANOS_PER_SECOND / runSeconds;
+        Double threadUtilisation = this.threadCount > 0 ? averageBusyThreads / this.threadCount : null;
+
+        return new Summary(allJobs.size(),
+            allJobs.stream().filter(JobMetrics::isFromCache).count(),
+            allJobs.stream().filter(jobMetrics -> jobMetrics.getExitCode() != 0).count(),
+            runSeconds,
+            allJobs.stream().mapToLong(JobMetrics::getInputBytes).sum(),
+            allJobs.stream().mapToLong(JobMetrics::getOutputBytes).sum(),
+            allJobs.stream().mapToDouble(JobMetrics::getAudioSeconds).sum(),
+            averageBusyThreads,
+            threadUtilisation);
+    }
+
+    private List<JobMetrics> getProcessJobs() {
+        return this.jobMetricsQueue.stream().filter(JobMetrics::isProcessRun).toList();
+    }
+
+    /**
+     * The nearest-rank percentiles.
+     */
+    @VisibleForTesting
+    static double[] getPercentiles(List<JobMetrics> jobs, ToDoubleFunction<JobMetrics> getter) {
+        double[] values = jobs.stream().mapToDouble(getter).sorted().toArray();
+        if (values.length == 0) {
+            return new double[PERCENTILES.length];
+        }
+
+        return Arrays.stream(PERCENTILES)
+                     .map(percentile -> values[Math.max(0, (int) Math.ceil(percentile / 100 * values.length) - 1)])
+                     .toArray();
+    }
+
+    private static String jobToJson(JobMetrics jobMetrics) {
+        return "{\"target\": " + jsonString(jobMetrics.getTargetFilePath().toString())
+            + ", \"exitCode\": " + jobMetrics.getExitCode()
+            + ", \"fromCache\": " + jobMetrics.isFromCache()
+            + ", \"queueWaitSeconds\": " + jsonNumber(jobMetrics.getQueueWaitNanos() / NANOS_PER_SECOND)
+            + ", \"startLatencyMillis\": " + jsonNumber(jobMetrics.getStartLatencyNanos() / NANOS_PER_MILLI)
+            + ", \"wallSeconds\": " + jsonNumber(jobMetrics.getWallNanos() / NANOS_PER_SECOND)
+            + ", \"cpuSeconds\": " + jsonNumber(jobMetrics.getCpuNanos() / NANOS_PER_SECOND)
+            + ", \"inputBytes\": " + jobMetrics.getInputBytes()
+            + ", \"outputBytes\": " + jobMetrics.getOutputBytes()
+            + ", \"audioSeconds\": " + jsonNumber(jobMetrics.getAudioSeconds())
+            + ", \"realtimeFactor\": " + jsonNumber(jobMetrics.getRealtimeFactor())
+            + "}";
+    }
+
+    private static String percentilesToJson(double[] percentiles) {
+        return String.format(Locale.ROOT, "{\"p50\": %s, \"p90\": %s, \"p99\": %s, \"max\": %s}",
+            jsonNumber(percentiles[0]), jsonNumber(percentiles[1]), jsonNumber(percentiles[2]),
+            jsonNumber(percentiles[3]));
+    }
+
+    private static String jsonNumber(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String jsonString(String value) {
+        var json = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < ' ') {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        return json.append('"').toString();
+    }
+
+    private static String formatDuration(double seconds) {
+        Duration duration = Duration.ofMillis(Math.round(seconds * 1000));
+        return String.format(Locale.ROOT, "%02d:%02d:%02d", duration.toHours(), duration.toMinutesPart(),
+            duration.toSecondsPart());
+    }
+}
@@ -0,0 +1,197 @@
+package by.rayden.paracoder.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies the audio files of the submitted jobs to a local staging directory ahead of their recoding,
+ * so the recoders of the sources on a network share read a local file instead of doing many small reads
+ * (and seeks, for the CUE tracks) over the network.
+ * <p>
+ * The files are copied one at a time by one background thread with large sequential transfers, in the order
+ * the jobs are submitted, while the staged files fit into the byte budget. A staged file is shared by all the jobs
+ * of the same audio file (the tracks of a CUE image), and it is deleted when the last of them is completed.
+ * <p>
+ * The futures of the staged files are completed by a separate handoff thread, so the copying goes on while
+ * their dependent actions submit the jobs to the pool. The pool runs a job in the submitting thread when its queue
+ * is full, so the handoff thread waits for a free place in the queue instead (see
+ * {@link RecoderThreadPool#runWithoutCallerRuns}), and the next staged files are handed off as soon as
+ * the pool takes the next job.
+ */
+@Slf4j
+public class SourceStager implements AutoCloseable {
+    private static final long TRANSFER_CHUNK_BYTES = 64L * 1024 * 1024;
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    private final Path runStagingDir;
+    private final long budgetBytes;
+    private final ExecutorService copyExecutor;
+    private final ExecutorService handoffExecutor;
+
+    // Guarded by this
+    private final Map<Path, StagedFile> stagedFiles = new HashMap<>();
+    private final Queue<StagedFile> pendingFiles = new ArrayDeque<>();
+    private long reservedBytes;
+    private int nextFileId;
+
+    private static final class StagedFile {
+        private final Path sourceFilePath;
+        private final Path stagedFilePath;
+        private final long size;
+        private final CompletableFuture<Path> copied = new CompletableFuture<>();
+        private int jobCount;
+        private boolean isReserved;
+
+        private StagedFile(Path sourceFilePath, Path stagedFilePath, long size) {
+            this.sourceFilePath = sourceFilePath;
+            this.stagedFilePath = stagedFilePath;
+            this.size = size;
+        }
+    }
+
+    /**
+     * @param stagingDir  the local directory, a subdirectory of the run is created in it
+     * @param budgetBytes the max total size of the staged files. A bigger file is still staged, but only alone.
+     */
+    public SourceStager(Path stagingDir, long budgetBytes) throws IOException {
+        this.runStagingDir = Files.createTempDirectory(Files.createDirectories(stagingDir), "paracoder-staging");
+        this.budgetBytes = budgetBytes;
+        this.copyExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("source-stager").daemon().factory());
+        this.handoffExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("source-stager-handoff").daemon().factory());
+    }
+
+    /**
+     * Must be paired with {@link #release} when the job is completed.
+     *
+     * @return the future of the staged copy of the file. When the copy fails, it is completed with the source file
+     * itself, so the job reads it in place. The dependent actions run in the handoff thread.
+     */
+    public synchronized CompletableFuture<Path> stage(Path sourceFilePath, long size) {
+        StagedFile stagedFile = this.stagedFiles.computeIfAbsent(sourceFilePath, _ -> {
+            var newFile = new StagedFile(sourceFilePath,
+                this.runStagingDir.resolve(this.nextFileId++ + "-" + sourceFilePath.getFileName()), size);
+            this.pendingFiles.add(newFile);
+            return newFile;
+        });
+        stagedFile.jobCount++;
+        reserveNextFiles();
+        return stagedFile.copied;
+    }
+
+    /**
+     * Called when a job, which has staged the file, is completed.
+     */
+    public synchronized void release(Path sourceFilePath) {
+        StagedFile stagedFile = this.stagedFiles.get(sourceFilePath);
+        if (stagedFile == null || --stagedFile.jobCount > 0) {
+            return;
+        }
+
+        this.stagedFiles.remove(sourceFilePath);
+        if (stagedFile.isReserved) {
+            deleteQuietly(stagedFile.stagedFilePath);
+            this.reservedBytes -= stagedFile.size;
+        } else {
+            this.pendingFiles.remove(stagedFile);
+        }
+        reserveNextFiles();
+    }
+
+    /**
+     * The files are copied in the order of the jobs, so a big file is not overtaken by the smaller ones after it.
+     */
+    private void reserveNextFiles() {
+        StagedFile nextFile;
+        while ((nextFile = this.pendingFiles.peek()) != null) {
+            if (this.reservedBytes > 0 && this.reservedBytes + nextFile.size > this.budgetBytes) {
+                return;
+            }
+
+            this.pendingFiles.poll();
+            this.reservedBytes += nextFile.size;
+            nextFile.isReserved = true;
+            StagedFile fileToCopy = nextFile;
+            this.copyExecutor.execute(() -> complete(fileToCopy, copy(fileToCopy)));
+        }
+    }
+
+    private void complete(StagedFile stagedFile, Path readFilePath) {
+        try {
+            this.handoffExecutor.execute(
+                () -> RecoderThreadPool.runWithoutCallerRuns(() -> stagedFile.copied.complete(readFilePath)));
+        } catch (RejectedExecutionException e) {
+            log.debug("The stager is closed, the staged file is not handed off: {}", stagedFile.sourceFilePath);
+        }
+    }
+
+    /**
+     * @return the staged file, or the source file when the copy has failed
+     */
+    private static Path copy(StagedFile stagedFile) {
+        long startNanos = System.nanoTime();
+        try (var source = FileChannel.open(stagedFile.sourceFilePath, StandardOpenOption.READ);
+             var target = FileChannel.open(stagedFile.stagedFilePath, StandardOpenOption.CREATE_NEW,
+                 StandardOpenOption.WRITE)) {
+
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                position += source.transferTo(position, Math.min(TRANSFER_CHUNK_BYTES, size - position), target);
+            }
+            log.debug("Staged {} ({} bytes) in {} ms", stagedFile.sourceFilePath, size,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            return stagedFile.stagedFilePath;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Can't stage the file, it is read in place: {}", stagedFile.sourceFilePath, e);
+            deleteQuietly(stagedFile.stagedFilePath);
+            return stagedFile.sourceFilePath;
+        }
+    }
+
+    /**
+     * The files still staged (of the jobs which have not been completed) are deleted with the run directory.
+     */
+    @Override
+    public void close() {
+        this.copyExecutor.shutdownNow();
+        this.handoffExecutor.shutdownNow();
+        try {
+            if (!this.copyExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("The staging copy is not stopped in {} seconds", CLOSE_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            this.stagedFiles.values().forEach(stagedFile -> deleteQuietly(stagedFile.stagedFilePath));
+            this.stagedFiles.clear();
+            this.pendingFiles.clear();
+        }
+        deleteQuietly(this.runStagingDir);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.debug("Can't delete the staged file: {}", path, e);
+        }
+    }
+}
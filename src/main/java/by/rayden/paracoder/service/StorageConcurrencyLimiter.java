@@ -0,0 +1,170 @@
+package by.rayden.paracoder.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the number of jobs reading from each storage device (file store) at once, and the number of jobs
+ * writing to it, so a spinning disk doesn't thrash its seeks between too many files.
+ * <p>
+ * A job waiting for its device doesn't hold a pool thread: it is submitted to the pool only when it gets
+ * its permits, so the pool threads run the jobs of the other devices meanwhile. The read permit is always
+ * taken before the write one, so the jobs can't deadlock.
+ */
+@Slf4j
+public class StorageConcurrencyLimiter {
+    /**
+     * The limit value which disables the limit.
+     */
+    public static final int UNLIMITED = 0;
+
+    private static final Permits NO_PERMITS = new Permits(null, null);
+
+    private final int maxReads;
+    private final int maxWrites;
+    private final Map<FileStore, AsyncSemaphore> readSemaphores = new ConcurrentHashMap<>();
+    private final Map<FileStore, AsyncSemaphore> writeSemaphores = new ConcurrentHashMap<>();
+
+    /**
+     * getFileStore() is costly on Linux (it reads the mount table), and many files share the same directory.
+     */
+    private final Map<Path, Optional<FileStore>> dirFileStores = new ConcurrentHashMap<>();
+
+    /**
+     * The permits of one job. Must be released once, when the job's processes are finished.
+     */
+    public record Permits(@Nullable AsyncSemaphore readSemaphore, @Nullable AsyncSemaphore writeSemaphore) {
+        public void release() {
+            if (this.writeSemaphore != null) {
+                this.writeSemaphore.release();
+            }
+            if (this.readSemaphore != null) {
+                this.readSemaphore.release();
+            }
+        }
+    }
+
+    /**
+     * @param maxReads  the max jobs reading from one device at once, or {@link #UNLIMITED}
+     * @param maxWrites the max jobs writing to one device at once, or {@link #UNLIMITED}
+     */
+    public StorageConcurrencyLimiter(int maxReads, int maxWrites) {
+        this.maxReads = maxReads;
+        this.maxWrites = maxWrites;
+    }
+
+    public static StorageConcurrencyLimiter unlimited() {
+        return new StorageConcurrencyLimiter(UNLIMITED, UNLIMITED);
+    }
+
+    /**
+     * @return the future completed when the job may run. It is completed in the thread which has released
+     * the last awaited permit, or at once when the devices are free.
+     */
+    public CompletableFuture<Permits> acquire(Path sourceFilePath, Path targetFilePath) {
+        if (this.maxReads == UNLIMITED && this.maxWrites == UNLIMITED) {
+            return CompletableFuture.completedFuture(NO_PERMITS);
+        }
+
+        AsyncSemaphore readSemaphore = findSemaphore(this.readSemaphores, this.maxReads, sourceFilePath);
+        AsyncSemaphore writeSemaphore = findSemaphore(this.writeSemaphores, this.maxWrites, targetFilePath);
+        return acquire(readSemaphore)
+            .thenCompose(_ -> acquire(writeSemaphore))
+            .thenApply(_ -> new Permits(readSemaphore, writeSemaphore));
+    }
+
+    private static CompletableFuture<Void> acquire(@Nullable AsyncSemaphore semaphore) {
+        return semaphore != null ? semaphore.acquire() : CompletableFuture.completedFuture(null);
+    }
+
+    @Nullable
+    private AsyncSemaphore findSemaphore(Map<FileStore, AsyncSemaphore> semaphores, int limit, Path filePath) {
+        if (limit == UNLIMITED) {
+            return null;
+        }
+        return findFileStore(filePath)
+            .map(fileStore -> semaphores.computeIfAbsent(fileStore, _ -> new AsyncSemaphore(limit)))
+            .orElse(null);
+    }
+
+    /**
+     * The target file (and even its directory) may not exist yet, so the store of its nearest existing
+     * ancestor is taken. A file of an unknown store is not limited.
+     */
+    private Optional<FileStore> findFileStore(Path filePath) {
+        Path dir = filePath.toAbsolutePath().getParent();
+        if (dir == null) {
+            return Optional.empty();
+        }
+        return this.dirFileStores.computeIfAbsent(dir, StorageConcurrencyLimiter::getFileStore);
+    }
+
+    private static Optional<FileStore> getFileStore(Path dir) {
+        Path existingDir = dir;
+        while (existingDir != null && !Files.exists(existingDir)) {
+            existingDir = existingDir.getParent();
+        }
+        if (existingDir == null) {
+            return Optional.empty();
+        }
+
+        try {
+            return Optional.of(Files.getFileStore(existingDir));
+        } catch (IOException e) {
+            log.debug("Can't get the file store of: {}", existingDir, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * A semaphore whose waiters are futures instead of blocked threads. The permits are granted in the FIFO order,
+     * so the jobs of one device keep the order they were submitted in (the longest first).
+     */
+    public static class AsyncSemaphore {
+        private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+        private int availablePermits;
+
+        AsyncSemaphore(int permits) {
+            this.availablePermits = permits;
+        }
+
+        CompletableFuture<Void> acquire() {
+            synchronized (this) {
+                if (this.availablePermits > 0) {
+                    this.availablePermits--;
+                    return CompletableFuture.completedFuture(null);
+                }
+                var waiter = new CompletableFuture<Void>();
+                this.waiters.add(waiter);
+                return waiter;
+            }
+        }
+
+        /**
+         * The permit is handed to the next waiter, which is completed outside the lock,
+         * since its dependent actions are run by this thread.
+         */
+        void release() {
+            CompletableFuture<Void> waiter;
+            synchronized (this) {
+                waiter = this.waiters.poll();
+                if (waiter == null) {
+                    this.availablePermits++;
+                    return;
+                }
+            }
+            waiter.complete(null);
+        }
+    }
+}
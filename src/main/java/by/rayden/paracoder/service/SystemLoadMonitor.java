@@ -0,0 +1,115 @@
+package by.rayden.paracoder.service;
+
+import com.sun.management.OperatingSystemMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.VisibleForTesting;
+import org.springframework.lang.Nullable;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Samples the system CPU utilisation and the run queue length.
+ * <p>
+ * On Linux, they are read from "/proc/stat" (the CPU time counters since the previous sample)
+ * and "/proc/loadavg" (the number of currently runnable tasks).
+ * On other systems, the CPU load and the load average of the {@link OperatingSystemMXBean} are used
+ * (there is no load average on Windows, so the run queue length is unknown there).
+ */
+@Slf4j
+public class SystemLoadMonitor {
+    private static final Path PROC_STAT = Path.of("/proc/stat");
+    private static final Path PROC_LOADAVG = Path.of("/proc/loadavg");
+
+    /**
+     * "user nice system idle iowait irq softirq steal" times of the "cpu" line of /proc/stat.
+     * The guest times are already included in the user times.
+     */
+    private static final int CPU_TIME_FIELD_COUNT = 8;
+    private static final int IDLE_FIELD_INDEX = 3;
+    private static final int IOWAIT_FIELD_INDEX = 4;
+
+    /**
+     * @param cpuUtilisation from 0.0 to 1.0
+     * @param runQueueLength the number of runnable tasks, or NaN when unknown
+     */
+    public record SystemLoad(double cpuUtilisation, double runQueueLength, int cpuCount) {
+    }
+
+    @VisibleForTesting
+    record CpuTimes(long total, long idle) {
+    }
+
+    private final boolean useProcFs = Files.isReadable(PROC_STAT) && Files.isReadable(PROC_LOADAVG);
+    private final OperatingSystemMXBean osBean =
+        ManagementFactory.getPlatformMXBean(OperatingSystemMXBean.class);
+
+    @Nullable
+    private CpuTimes previousCpuTimes;
+
+    public SystemLoad sample() {
+        int cpuCount = Runtime.getRuntime().availableProcessors();
+
+        if (this.useProcFs) {
+            try {
+                return new SystemLoad(sampleProcCpuUtilisation(), readProcRunQueueLength(), cpuCount);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Error on reading the system load from /proc, the JMX values are used", e);
+            }
+        }
+
+        double loadAverage = this.osBean.getSystemLoadAverage();
+        return new SystemLoad(Math.max(0, this.osBean.getCpuLoad()), loadAverage < 0 ? Double.NaN : loadAverage,
+            cpuCount);
+    }
+
+    private double sampleProcCpuUtilisation() throws IOException {
+        CpuTimes cpuTimes = parseProcStatCpuLine(Files.readAllLines(PROC_STAT));
+        CpuTimes previous = this.previousCpuTimes;
+        this.previousCpuTimes = cpuTimes;
+
+        if (previous == null || cpuTimes.total() <= previous.total()) {
+            return this.osBean.getCpuLoad();
+        }
+        double idleShare = (double) (cpuTimes.idle() - previous.idle()) / (cpuTimes.total() - previous.total());
+        return Math.clamp(1.0 - idleShare, 0.0, 1.0);
+    }
+
+    private double readProcRunQueueLength() throws IOException {
+        return parseProcLoadavgRunnable(Files.readString(PROC_LOADAVG));
+    }
+
+    /**
+     * @param procStatLines like {@code cpu  4705 356 584 3699 23 23 0 0 0 0}
+     */
+    @VisibleForTesting
+    static CpuTimes parseProcStatCpuLine(List<String> procStatLines) {
+        String cpuLine = procStatLines.stream()
+                                      .filter(line -> line.startsWith("cpu "))
+                                      .findFirst()
+                                      .orElseThrow(() -> new IllegalStateException("No cpu line in /proc/stat"));
+
+        long[] times = Arrays.stream(cpuLine.trim().split("\\s+"))
+                             .skip(1)
+                             .limit(CPU_TIME_FIELD_COUNT)
+                             .mapToLong(Long::parseLong)
+                             .toArray();
+
+        long total = Arrays.stream(times).sum();
+        long idle = times[IDLE_FIELD_INDEX] + (times.length > IOWAIT_FIELD_INDEX ? times[IOWAIT_FIELD_INDEX] : 0);
+        return new CpuTimes(total, idle);
+    }
+
+    /**
+     * @param procLoadavg like {@code 0.20 0.18 0.12 1/80 11206}, where "1/80" is runnable/total tasks
+     */
+    @VisibleForTesting
+    static double parseProcLoadavgRunnable(String procLoadavg) {
+        String tasks = procLoadavg.trim().split("\\s+")[3];
+        return Integer.parseInt(tasks.substring(0, tasks.indexOf('/')));
+    }
+}
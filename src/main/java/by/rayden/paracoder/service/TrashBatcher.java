@@ -0,0 +1,127 @@
+package by.rayden.paracoder.service;
+
+import by.rayden.paracoder.win32native.OsNative;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deletes the source files to the trash in batches, in a background thread.
+ * <p>
+ * Each call of {@link OsNative#deleteToTrash} has a big fixed cost (on Windows, a shell file operation),
+ * so the files are collected until there are {@link #MAX_BATCH_SIZE} of them, or until
+ * {@link #MAX_BATCH_DELAY_MILLIS} have passed since the first one, and then deleted by one call.
+ * When the batch call fails, the files of the batch are deleted one by one, so the error is reported per file.
+ */
+@Slf4j
+public class TrashBatcher implements AutoCloseable {
+    static final int MAX_BATCH_SIZE = 64;
+    static final long MAX_BATCH_DELAY_MILLIS = 500;
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    private final OsNative osNative;
+    private final BlockingQueue<DeleteRequest> requests = new LinkedBlockingQueue<>();
+    private final Thread flushThread;
+    private volatile boolean isClosed;
+
+    private record DeleteRequest(Path path, CompletableFuture<Void> result) {
+    }
+
+    public TrashBatcher(OsNative osNative) {
+        this.osNative = osNative;
+        this.flushThread = Thread.ofPlatform().name("trash-batcher").daemon().start(this::flushUntilClosed);
+    }
+
+    /**
+     * @return completes when the file is in the trash, or completes exceptionally with the error of the file.
+     * The dependent actions of the future run in the batcher thread.
+     */
+    public CompletableFuture<Void> delete(Path path) {
+        if (this.isClosed) {
+            throw new IllegalStateException("The trash batcher is closed");
+        }
+        var request = new DeleteRequest(path, new CompletableFuture<>());
+        this.requests.add(request);
+        return request.result();
+    }
+
+    /**
+     * The already requested files are still deleted.
+     */
+    @Override
+    public void close() {
+        this.isClosed = true;
+        try {
+            this.flushThread.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flushUntilClosed() {
+        List<DeleteRequest> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        try {
+            while (!this.isClosed || !this.requests.isEmpty()) {
+                DeleteRequest first = this.requests.poll(MAX_BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_BATCH_DELAY_MILLIS);
+                while (batch.size() < MAX_BATCH_SIZE && !this.isClosed) {
+                    DeleteRequest next = this.requests.poll(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                this.requests.drainTo(batch, MAX_BATCH_SIZE - batch.size());
+
+                flush(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.addAll(this.requests);
+            batch.forEach(request -> request.result().completeExceptionally(e));
+        }
+    }
+
+    private void flush(List<DeleteRequest> batch) {
+        Path[] paths = batch.stream().map(DeleteRequest::path).toArray(Path[]::new);
+        log.debug("Deleting {} files to the trash", paths.length);
+
+        try {
+            this.osNative.deleteToTrash(paths);
+            batch.forEach(request -> request.result().complete(null));
+        } catch (IOException | RuntimeException e) {
+            log.debug("Error on deleting a batch of {} files to the trash, the files are deleted one by one",
+                paths.length, e);
+            batch.forEach(this::deleteOne);
+        }
+    }
+
+    /**
+     * A part of the batch may have been deleted before the batch call failed.
+     */
+    private void deleteOne(DeleteRequest request) {
+        try {
+            if (Files.exists(request.path(), LinkOption.NOFOLLOW_LINKS)) {
+                this.osNative.deleteToTrash(request.path());
+            }
+            request.result().complete(null);
+        } catch (IOException | RuntimeException e) {
+            request.result().completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package by.rayden.paracoder.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.Nullable;
+import picocli.CommandLine;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * The only writer of the console. The callers just put their lines into a lock-free queue,
+ * and the renderer thread renders the ANSI markup and prints them, so the pool threads don't contend
+ * for the console, and a slow console doesn't slow down the jobs.
+ * <p>
+ * When a status is set (the live progress view), it is drawn below the printed lines and redrawn
+ * every {@link #REFRESH_PERIOD_MILLIS}. Otherwise, the lines are just appended (the plain mode).
+ */
+@Slf4j
+public class ConsoleRenderer {
+    static final long REFRESH_PERIOD_MILLIS = 250;
+    private static final long FLUSH_TIMEOUT_SECONDS = 5;
+
+    private static final String ERASE_LINE = "\r\u001b[2K";
+    private static final String CURSOR_UP = "\u001b[1A";
+
+    private final Supplier<PrintStream> out;
+    private final Supplier<PrintStream> err;
+    private final Queue<Object> events = new ConcurrentLinkedQueue<>();
+
+    @Nullable
+    private volatile Supplier<List<String>> status;
+
+    @Nullable
+    private volatile Thread thread;
+
+    private volatile boolean isSilent;
+
+    /**
+     * The number of the status lines on the screen. Used by the renderer thread only.
+     */
+    private int statusLineCount;
+
+    private record Line(String text, boolean isErr, boolean isMarkup) {
+    }
+
+    private record Flush(CountDownLatch latch) {
+    }
+
+    /**
+     * The streams are taken on each write, since {@link System#out} is replaced by the ANSI console.
+     */
+    public ConsoleRenderer(Supplier<PrintStream> out, Supplier<PrintStream> err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * @param text the text with the picocli ANSI markup
+     */
+    public void print(String text, boolean isErr) {
+        if (!this.isSilent) {
+            enqueue(new Line(text, isErr, true));
+        }
+    }
+
+    public void printPlain(String text) {
+        if (!this.isSilent) {
+            enqueue(new Line(text, false, false));
+        }
+    }
+
+    /**
+     * @param isSilent true to drop the lines printed from now on (e.g. in a benchmark).
+     *                 The lines queued before are still printed.
+     */
+    public void setSilent(boolean isSilent) {
+        this.isSilent = isSilent;
+    }
+
+    /**
+     * @param status the supplier of the status lines (the markup is allowed). It is called by the renderer thread
+     *               only. The lines must be shorter than the console width, otherwise a wrapped line is not erased.
+     *               Null to erase the status and return to the plain mode.
+     */
+    public void setStatus(@Nullable Supplier<List<String>> status) {
+        this.status = status;
+        wakeUp();
+    }
+
+    /**
+     * Waits until all the lines queued before are printed.
+     */
+    public void flush() {
+        if (this.thread == null) {
+            return;
+        }
+
+        var flush = new Flush(new CountDownLatch(1));
+        enqueue(flush);
+        try {
+            if (!flush.latch().await(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("The console output is not flushed in {} seconds", FLUSH_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Object event) {
+        this.events.add(event);
+        startIfNeeded();
+        wakeUp();
+    }
+
+    private synchronized void startIfNeeded() {
+        if (this.thread == null) {
+            this.thread = Thread.ofPlatform().name("console-renderer").daemon().start(this::renderForever);
+        }
+    }
+
+    private void wakeUp() {
+        Thread rendererThread = this.thread;
+        if (rendererThread != null) {
+            LockSupport.unpark(rendererThread);
+        }
+    }
+
+    private void renderForever() {
+        long nextRefreshNanos = System.nanoTime();
+        while (true) {
+            Supplier<List<String>> currentStatus = this.status;
+            boolean isRefreshTime = System.nanoTime() - nextRefreshNanos >= 0;
+
+            boolean isStatusChanged = (currentStatus != null && isRefreshTime)
+                || (currentStatus == null && this.statusLineCount > 0);
+            if (!this.events.isEmpty() || isStatusChanged) {
+                try {
+                    render(currentStatus);
+                } catch (RuntimeException e) {
+                    log.error("Console rendering error", e);
+                }
+            }
+            if (isRefreshTime) {
+                nextRefreshNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REFRESH_PERIOD_MILLIS);
+            }
+
+            if (this.events.isEmpty()) {
+                LockSupport.parkNanos(this, Math.max(0, nextRefreshNanos - System.nanoTime()));
+            }
+        }
+    }
+
+    private void render(@Nullable Supplier<List<String>> currentStatus) {
+        eraseStatus();
+
+        Object event;
+        while ((event = this.events.poll()) != null) {
+            switch (event) {
+                case Line line -> printLine(line);
+                case Flush flush -> {
+                    this.out.get().flush();
+                    flush.latch().countDown();
+                }
+                default -> throw new IllegalStateException("Unknown console event: " + event);
+            }
+        }
+
+        if (currentStatus != null) {
+            drawStatus(currentStatus.get());
+        }
+        this.out.get().flush();
+    }
+
+    private void printLine(Line line) {
+        String text = line.isMarkup() ? CommandLine.Help.Ansi.ON.string(line.text()) : line.text();
+        if (line.isErr()) {
+            this.out.get().flush();
+            PrintStream errStream = this.err.get();
+            errStream.println(text);
+            errStream.flush();
+        } else {
+            this.out.get().println(text);
+        }
+    }
+
+    /**
+     * The cursor stays at the end of the last status line, so the status is erased from the bottom up.
+     */
+    private void eraseStatus() {
+        if (this.statusLineCount == 0) {
+            return;
+        }
+
+        var erase = new StringBuilder(ERASE_LINE);
+        for (int i = 1; i < this.statusLineCount; i++) {
+            erase.append(CURSOR_UP).append(ERASE_LINE);
+        }
+        this.out.get().print(erase);
+        this.statusLineCount = 0;
+    }
+
+    private void drawStatus(List<String> statusLines) {
+        PrintStream outStream = this.out.get();
+        for (int i = 0; i < statusLines.size(); i++) {
+            outStream.print(CommandLine.Help.Ansi.ON.string(statusLines.get(i)));
+            if (i < statusLines.size() - 1) {
+                outStream.println();
+            }
+        }
+        this.statusLineCount = statusLines.size();
+    }
+}
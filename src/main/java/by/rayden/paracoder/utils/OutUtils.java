@@ -1,16 +1,60 @@
 package by.rayden.paracoder.utils;
 
 import lombok.experimental.UtilityClass;
-import picocli.CommandLine;
+import org.springframework.lang.Nullable;
 
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The console output of the application. The lines are printed by the {@link ConsoleRenderer} thread,
+ * in the order of the calls.
+ */
 @UtilityClass
 public class OutUtils {
+    private final ConsoleRenderer RENDERER = new ConsoleRenderer(() -> System.out, () -> System.err);
 
     public void ansiOut(String str) {
-        System.out.println(CommandLine.Help.Ansi.ON.string(str));
+        RENDERER.print(str, false);
     }
 
     public void ansiErr(String str) {
-        System.err.println(CommandLine.Help.Ansi.ON.string(str));
+        RENDERER.print(str, true);
+    }
+
+    /**
+     * The text is printed as is, without rendering the ANSI markup.
+     */
+    public void plainOut(String str) {
+        RENDERER.printPlain(str);
+    }
+
+    /**
+     * @see ConsoleRenderer#setStatus(Supplier)
+     */
+    public void setStatus(@Nullable Supplier<List<String>> status) {
+        RENDERER.setStatus(status);
+    }
+
+    /**
+     * @see ConsoleRenderer#setSilent(boolean)
+     */
+    public void setSilent(boolean isSilent) {
+        RENDERER.setSilent(isSilent);
+    }
+
+    /**
+     * Must be called before the application exits, so the queued lines are not lost.
+     */
+    public void flush() {
+        RENDERER.flush();
+    }
+
+    /**
+     * @return true if the output is not redirected, so the live progress view can be drawn
+     */
+    public boolean isTerminal() {
+        var console = System.console();
+        return console != null && console.isTerminal();
     }
 }
@@ -0,0 +1,322 @@
+package by.rayden.paracoder.win32native;
+
+import com.sun.jna.WString;
+import com.sun.security.auth.module.UnixSystem;
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.VisibleForTesting;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The implementation for Linux (and other POSIX systems), which uses no native calls.
+ * <p>
+ * The files are deleted to the trash by the
+ * <a href="https://specifications.freedesktop.org/trash-spec/latest/">freedesktop.org Trash specification</a>:
+ * a file is renamed into the trash of its own file system, so it is not copied.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("!systemProperties['os.name'].startsWith('Windows')")
+public class OsNativeLinuxImpl implements OsNative {
+    private static final Path PROC_SELF_CMDLINE = Path.of("/proc/self/cmdline");
+    private static final DateTimeFormatter DELETION_DATE_FORMATTER =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    private static final String TRASH_INFO_EXT = ".trashinfo";
+    private static final int STICKY_BIT = 01000;
+
+    private final Path homeTrashDir;
+
+    /**
+     * The trash directory of each file system, or the home trash if there is no usable trash on it.
+     */
+    private final Map<FileStore, Path> trashDirs = new ConcurrentHashMap<>();
+
+    public OsNativeLinuxImpl() {
+        this(getHomeTrashDir());
+    }
+
+    @VisibleForTesting
+    OsNativeLinuxImpl(Path homeTrashDir) {
+        this.homeTrashDir = homeTrashDir;
+    }
+
+    /**
+     * The JVM gets the arguments in the encoding of the locale, so they are read as UTF-8 from /proc instead.
+     */
+    @Override
+    public String[] getUnicodeCommandLine() {
+        try {
+            String commandLine = Files.readString(PROC_SELF_CMDLINE, StandardCharsets.UTF_8);
+            return commandLine.isEmpty() ? new String[0] : commandLine.split("\0");
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading the program arguments from " + PROC_SELF_CMDLINE, e);
+        }
+    }
+
+    @Override
+    public String[] getCommandLineToArgv(WString lpCmdLine) {
+        return splitShellWords(lpCmdLine.toString()).toArray(String[]::new);
+    }
+
+    /**
+     * Splits the command line into the words as a POSIX shell does, without any expansions:
+     * the words are separated by the unquoted whitespaces, all the chars in single quotes are literal,
+     * and a backslash escapes the next char (in double quotes, only "$", "`", double quote, backslash and newline).
+     */
+    @VisibleForTesting
+    static List<String> splitShellWords(String commandLine) {
+        List<String> words = new ArrayList<>();
+        var word = new StringBuilder();
+        boolean isWordStarted = false;
+        int i = 0;
+
+        while (i < commandLine.length()) {
+            char c = commandLine.charAt(i++);
+            if (c == '\'') {
+                int end = commandLine.indexOf('\'', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated single quote: " + commandLine);
+                }
+                word.append(commandLine, i, end);
+                i = end + 1;
+                isWordStarted = true;
+            } else if (c == '"') {
+                i = appendDoubleQuoted(commandLine, i, word);
+                isWordStarted = true;
+            } else if (c == '\\') {
+                if (i < commandLine.length()) {
+                    char escaped = commandLine.charAt(i++);
+                    // A backslash-newline is a line continuation
+                    if (escaped != '\n') {
+                        word.append(escaped);
+                        isWordStarted = true;
+                    }
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (isWordStarted) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    isWordStarted = false;
+                }
+            } else {
+                word.append(c);
+                isWordStarted = true;
+            }
+        }
+
+        if (isWordStarted) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * @param start the index after the opening double quote
+     * @return the index after the closing double quote
+     */
+    private static int appendDoubleQuoted(String commandLine, int start, StringBuilder word) {
+        int i = start;
+        while (i < commandLine.length()) {
+            char c = commandLine.charAt(i++);
+            if (c == '"') {
+                return i;
+            }
+            if (c == '\\' && i < commandLine.length() && "$`\"\\\n".indexOf(commandLine.charAt(i)) >= 0) {
+                char escaped = commandLine.charAt(i++);
+                if (escaped != '\n') {
+                    word.append(escaped);
+                }
+            } else {
+                word.append(c);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated double quote: " + commandLine);
+    }
+
+    /**
+     * All the paths are tried, then the first error is thrown with the others suppressed.
+     */
+    @Override
+    public void deleteToTrash(Path... paths) throws IOException {
+        IOException error = null;
+        for (Path path : paths) {
+            try {
+                moveToTrash(path.toAbsolutePath());
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                } else {
+                    error.addSuppressed(e);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private void moveToTrash(Path path) throws IOException {
+        if (Files.notExists(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("Error on deleting source file to the trash: " + path + " doesn't exist");
+        }
+
+        FileStore fileStore = Files.getFileStore(path);
+        Path trashDir = this.trashDirs.computeIfAbsent(fileStore, store -> findTrashDir(path, store));
+        Path filesDir = createTrashSubDir(trashDir, "files");
+        Path infoDir = createTrashSubDir(trashDir, "info");
+
+        // The info file is created first, exclusively, so it reserves the name in the trash
+        String trashInfo = "[Trash Info]\n"
+            + "Path=" + encodePath(trashDir.equals(this.homeTrashDir) ? path : getTrashInfoPath(trashDir, path))
+            + "\n"
+            + "DeletionDate=" + LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).format(DELETION_DATE_FORMATTER)
+            + "\n";
+        Path infoFile = createTrashInfoFile(infoDir, path.getFileName().toString(), trashInfo);
+        String trashName = infoFile.getFileName().toString();
+        Path trashFile = filesDir.resolve(trashName.substring(0, trashName.length() - TRASH_INFO_EXT.length()));
+
+        try {
+            try {
+                Files.move(path, trashFile, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException _) {
+                // Only the home trash may be on another file system: the file is copied there
+                log.debug("Moving to the trash of another file system: {}", path);
+                Files.move(path, trashFile);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(infoFile);
+            throw new IOException("Error on deleting source file to the trash: " + path, e);
+        }
+        log.debug("Deleted to the trash: {} -> {}", path, trashFile);
+    }
+
+    private Path createTrashInfoFile(Path infoDir, String fileName, String trashInfo) throws IOException {
+        for (int index = 1; ; index++) {
+            String trashName = index == 1 ? fileName : fileName + "." + index;
+            Path infoFile = infoDir.resolve(trashName + TRASH_INFO_EXT);
+            try {
+                return Files.writeString(infoFile, trashInfo, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException _) {
+                // The name is taken by a file deleted before, the next index is tried
+            }
+        }
+    }
+
+    private static Path createTrashSubDir(Path trashDir, String name) throws IOException {
+        Path dir = trashDir.resolve(name);
+        if (!Files.isDirectory(dir)) {
+            Files.createDirectories(dir,
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        }
+        return dir;
+    }
+
+    /**
+     * The trash of the home directory is used when it is on the same file system, otherwise the trash
+     * in the top directory of the file system: "$topdir/.Trash/$uid" (if "$topdir/.Trash" is a sticky directory)
+     * or "$topdir/.Trash-$uid". If neither can be used, the home trash is used anyway.
+     */
+    private Path findTrashDir(Path path, FileStore fileStore) {
+        try {
+            Path homeTrashParent = getExistingParent(this.homeTrashDir);
+            if (homeTrashParent != null && Files.getFileStore(homeTrashParent).equals(fileStore)) {
+                return this.homeTrashDir;
+            }
+
+            Path topDir = getTopDir(path, fileStore);
+            long uid = new UnixSystem().getUid();
+
+            Path sharedTrash = topDir.resolve(".Trash");
+            if (Files.isDirectory(sharedTrash, LinkOption.NOFOLLOW_LINKS)
+                && ((int) Files.getAttribute(sharedTrash, "unix:mode") & STICKY_BIT) != 0) {
+                Path userTrash = sharedTrash.resolve(Long.toString(uid));
+                Files.createDirectories(userTrash);
+                return userTrash;
+            }
+
+            Path userTrash = topDir.resolve(".Trash-" + uid);
+            Files.createDirectories(userTrash);
+            return userTrash;
+        } catch (IOException | RuntimeException e) {
+            log.debug("No trash on the file system of {}, the home trash is used", path, e);
+            return this.homeTrashDir;
+        }
+    }
+
+    /**
+     * @return the mount point of the file system
+     */
+    private static Path getTopDir(Path path, FileStore fileStore) throws IOException {
+        Path topDir = path.getParent();
+        while (topDir.getParent() != null && Files.getFileStore(topDir.getParent()).equals(fileStore)) {
+            topDir = topDir.getParent();
+        }
+        return topDir;
+    }
+
+    @Nullable
+    private static Path getExistingParent(Path path) {
+        Path existing = path;
+        while (existing != null && !Files.exists(existing)) {
+            existing = existing.getParent();
+        }
+        return existing;
+    }
+
+    /**
+     * In a trash of the top directory, the path is relative to the top directory.
+     */
+    private static Path getTrashInfoPath(Path trashDir, Path path) {
+        Path topDir = trashDir.getFileName().toString().startsWith(".Trash-")
+            ? trashDir.getParent()
+            : trashDir.getParent().getParent();
+        return path.startsWith(topDir) ? topDir.relativize(path) : path;
+    }
+
+    /**
+     * The path is URL-escaped, as required by the specification.
+     */
+    @VisibleForTesting
+    static String encodePath(Path path) {
+        var encoded = new StringBuilder();
+        for (byte b : path.toString().getBytes(StandardCharsets.UTF_8)) {
+            int c = b & 0xFF;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || "/-_.~!$&'()*+,;=:@".indexOf(c) >= 0) {
+                encoded.append((char) c);
+            } else {
+                encoded.append('%').append(String.format("%02X", c));
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static Path getHomeTrashDir() {
+        String dataHome = System.getenv("XDG_DATA_HOME");
+        Path dataHomeDir = (dataHome == null || dataHome.isBlank())
+            ? Path.of(System.getProperty("user.home"), ".local", "share")
+            : Path.of(dataHome);
+        return dataHomeDir.resolve("Trash");
+    }
+}
@@ -4,6 +4,7 @@ import com.sun.jna.Pointer;
 import com.sun.jna.WString;
 import com.sun.jna.ptr.IntByReference;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
@@ -12,6 +13,7 @@ import java.util.Arrays;
 
 @Slf4j
 @Component
+@ConditionalOnExpression("systemProperties['os.name'].startsWith('Windows')")
 public class OsNativeWindowsImpl implements OsNative {
 
     @Override
@@ -38,7 +38,13 @@ public class CommandControllerTest {
             new CommandLine(this.commandController, this.cliFactory).getUsageMessage(CommandLine.Help.Ansi.OFF);
 
         assertThat(actual).contains(
-            List.of("Usage: paracoder [-dhrV] [-pd] [-pf] [-t=<threadCount>] [<inputPathList>...]",
+            List.of("Usage: paracoder [-dhirsVw] [--bridge-pipes] [--journal] [-pd] [-pf] [--plain-output] [--resume] "
+                    + "[--virtual-threads]",
+                "[--cache-dir=<cacheDir>] [--max-reads-per-device=<maxReadsPerDevice>]",
+                "[--max-writes-per-device=<maxWritesPerDevice>] [--metrics-json=<metricsJson>]",
+                "[--process-log-dir=<processLogDir>] [--staging-budget-mb=<stagingBudgetMb>]",
+                "[--staging-dir=<stagingDir>] [--stall-timeout-seconds=<stallTimeoutSeconds>] [-t=<threadCount>]",
+                "[--watch-settle-seconds=<watchSettleSeconds>] [<inputPathList>...]",
                 "This is a ParaCoder application",
                 "-h, --help                 Show this help message and exit",
                 "-V, --version              Print version information and exit"));
@@ -0,0 +1,36 @@
+package by.rayden.paracoder.service;
+
+import by.rayden.paracoder.service.SystemLoadMonitor.SystemLoad;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings("MagicNumber")
+class AdaptiveConcurrencyControllerTest {
+
+    @Test
+    void whenCpuIsNotSaturatedThenConcurrencyGrowsUpToLimit() {
+        assertThat(AdaptiveConcurrencyController.getNextConcurrency(4, new SystemLoad(0.5, 2, 4))).isEqualTo(5);
+        assertThat(AdaptiveConcurrencyController.getNextConcurrency(8, new SystemLoad(0.5, 2, 4))).isEqualTo(8);
+    }
+
+    @Test
+    void whenCpuIsSaturatedAndRunQueueIsLongThenConcurrencyShrinks() {
+        assertThat(AdaptiveConcurrencyController.getNextConcurrency(4, new SystemLoad(0.99, 9, 4))).isEqualTo(3);
+        assertThat(AdaptiveConcurrencyController.getNextConcurrency(1, new SystemLoad(0.99, 9, 4))).isEqualTo(1);
+    }
+
+    @Test
+    void whenCpuIsBusyWithoutOverloadThenConcurrencyIsKept() {
+        assertThat(AdaptiveConcurrencyController.getNextConcurrency(4, new SystemLoad(0.9, 4, 4))).isEqualTo(4);
+        assertThat(AdaptiveConcurrencyController.getNextConcurrency(4, new SystemLoad(0.99, 4, 4))).isEqualTo(4);
+    }
+
+    @Test
+    void whenRunQueueIsUnknownThenOnlyCpuUtilisationIsUsed() {
+        assertThat(AdaptiveConcurrencyController.getNextConcurrency(4, new SystemLoad(0.5, Double.NaN, 4)))
+            .isEqualTo(5);
+        assertThat(AdaptiveConcurrencyController.getNextConcurrency(4, new SystemLoad(0.99, Double.NaN, 4)))
+            .isEqualTo(3);
+    }
+}
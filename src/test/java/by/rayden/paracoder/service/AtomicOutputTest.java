@@ -0,0 +1,48 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AtomicOutputTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void partialPathKeepsTheExtension() {
+        assertThat(AtomicOutput.toPartialPath(Path.of("music", "01. Title.opus")))
+            .isEqualTo(Path.of("music", "01. Title.paracoder-part.opus"));
+        assertThat(AtomicOutput.toPartialPath(Path.of("music", "noext")))
+            .isEqualTo(Path.of("music", "noext.paracoder-part"));
+    }
+
+    @Test
+    void whenCommittedThenPartialFileReplacesTargetFile() throws IOException {
+        Path targetFile = Files.writeString(this.tempDir.resolve("a.opus"), "old");
+        Path partialFile = Files.writeString(AtomicOutput.toPartialPath(targetFile), "new");
+
+        AtomicOutput.commit(List.of(partialFile), List.of(targetFile));
+
+        assertThat(targetFile).hasContent("new");
+        assertThat(partialFile).doesNotExist();
+    }
+
+    @Test
+    void whenDiscardedThenOnlyPartialFileIsDeleted() throws IOException {
+        Path inPlaceTargetFile = Files.writeString(this.tempDir.resolve("b.opus"), "in place");
+        Path targetFile = this.tempDir.resolve("a.opus");
+        Path partialFile = Files.writeString(AtomicOutput.toPartialPath(targetFile), "half");
+
+        AtomicOutput.discard(List.of(partialFile, inPlaceTargetFile), List.of(targetFile, inPlaceTargetFile));
+
+        assertThat(partialFile).doesNotExist();
+        assertThat(inPlaceTargetFile).hasContent("in place");
+    }
+}
@@ -0,0 +1,55 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CollectToMapFileVisitorTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void whenDirFilesConsumerIsSetThenFilesArePassedPerDirectory() throws IOException {
+        Path dir1 = Files.createDirectories(this.tempDir.resolve("dir1"));
+        Path dir2 = Files.createDirectories(this.tempDir.resolve("dir2"));
+        Path file11 = Files.createFile(dir1.resolve("b.flac"));
+        Path file12 = Files.createFile(dir1.resolve("a.flac"));
+        Path file21 = Files.createFile(dir2.resolve("c.wav"));
+        Files.createFile(dir2.resolve("cover.jpg"));
+
+        List<Map<Path, BasicFileAttributes>> dirFilesList = new ArrayList<>();
+        var fileVisitor = new CollectToMapFileVisitor(Set.of("flac", "wav"), dirFilesList::add);
+        Files.walkFileTree(this.tempDir, fileVisitor);
+
+        assertThat(dirFilesList).hasSize(2);
+        assertThat(dirFilesList)
+            .anySatisfy(dirFiles -> assertThat(dirFiles.keySet()).containsExactly(file12, file11))
+            .anySatisfy(dirFiles -> assertThat(dirFiles.keySet()).containsExactly(file21));
+
+        assertThat(fileVisitor.getPathTree()).containsKeys(dir1, dir2, file11, file12, file21);
+    }
+
+    @Test
+    void whenInputIsFileThenItIsPassedToConsumerImmediately() throws IOException {
+        Path file = Files.createFile(this.tempDir.resolve("a.flac"));
+
+        List<Map<Path, BasicFileAttributes>> dirFilesList = new ArrayList<>();
+        var fileVisitor = new CollectToMapFileVisitor(Set.of("flac"), dirFilesList::add);
+        Files.walkFileTree(file, fileVisitor);
+
+        assertThat(dirFilesList).hasSize(1);
+        assertThat(dirFilesList.getFirst()).containsOnlyKeys(file);
+        assertThat(fileVisitor.getPathTree()).containsKeys(file, this.tempDir);
+    }
+}
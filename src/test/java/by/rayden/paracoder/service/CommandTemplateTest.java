@@ -0,0 +1,98 @@
+package by.rayden.paracoder.service;
+
+import by.rayden.paracoder.service.CommandTemplate.Placeholder;
+import by.rayden.paracoder.service.CommandTemplate.Syntax;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CommandTemplateTest {
+    private static final String TEMPLATE = "\"c:\\Rip\\ffmpeg.exe\" -i \"{{F}}\" {{CUE_METADATA}} -f wav - "
+        + "| opusenc --quiet - \"{{D}}{{P}}{{CUE_NUM}}. {{CUE_TITLE}}.opus\"";
+
+    private final CommandTemplate.Values values = new CommandTemplate.Values() {
+        private final Map<Placeholder, String> valueMap = Map.of(
+            Placeholder.F, "c:\\Music\\Album.flac",
+            Placeholder.D, "c:\\",
+            Placeholder.P, "Music\\",
+            Placeholder.CUE_NUM, "07",
+            Placeholder.CUE_TITLE, "Say \"Yes\" | No",
+            Placeholder.CUE_METADATA, " -metadata TITLE=\"Say \"Yes\" | No\" ");
+
+        @Override
+        public String get(Placeholder placeholder) {
+            return this.valueMap.get(placeholder);
+        }
+
+        @Override
+        public List<String> getArgs(Placeholder placeholder) {
+            return placeholder == Placeholder.CUE_METADATA
+                ? List.of("-metadata", "TITLE=Say \"Yes\" | No")
+                : CommandTemplate.Values.super.getArgs(placeholder);
+        }
+    };
+
+    @Test
+    void whenRenderedThenPlaceholdersAreReplacedInText() {
+        String command = CommandTemplate.compile(TEMPLATE).render(this.values);
+
+        assertThat(command).isEqualTo("\"c:\\Rip\\ffmpeg.exe\" -i \"c:\\Music\\Album.flac\""
+            + "  -metadata TITLE=\"Say \"Yes\" | No\"  -f wav - "
+            + "| opusenc --quiet - \"c:\\Music\\07. Say \"Yes\" | No.opus\"");
+    }
+
+    @Test
+    void whenRenderedToArgvThenValuesAreNotSplit() {
+        List<List<String>> argv = CommandTemplate.compile(TEMPLATE).renderArgv(this.values);
+
+        assertThat(argv).containsExactly(
+            List.of("c:\\Rip\\ffmpeg.exe", "-i", "c:\\Music\\Album.flac", "-metadata", "TITLE=Say \"Yes\" | No",
+                "-f", "wav", "-"),
+            List.of("opusenc", "--quiet", "-", "c:\\Music\\07. Say \"Yes\" | No.opus"));
+    }
+
+    @Test
+    void whenNoValueThenPlaceholderIsLeftUnresolved() {
+        CommandTemplate template = CommandTemplate.compile("ffmpeg -ss {{CUE_ST}} \"{{N}}.opus\" \"\"");
+        CommandTemplate.Values noValues = _ -> null;
+
+        assertThat(template.render(noValues)).isEqualTo("ffmpeg -ss {{CUE_ST}} \"{{N}}.opus\" \"\"");
+        assertThat(template.renderArgv(noValues))
+            .containsExactly(List.of("ffmpeg", "-ss", "{{CUE_ST}}", "{{N}}.opus", ""));
+    }
+
+    @Test
+    void whenBackslashesBeforeQuoteThenArgvToWRulesAreApplied() {
+        CommandTemplate template = CommandTemplate.compile("cmd \"a\\\\\" b\\\"c \"d\"\"e\"", Syntax.WINDOWS);
+
+        assertThat(template.renderArgv(_ -> null)).containsExactly(List.of("cmd", "a\\", "b\"c", "d\"e"));
+    }
+
+    @Test
+    void whenArgvTemplateThenArgsAreNotSplitAndOutputIsRendered() {
+        CommandTemplate template = CommandTemplate.of(
+            List.of(List.of("ffmpeg", "-i", "{{F}}", "{{CUE_METADATA}}", "-f", "wav", "-"),
+                List.of("opusenc", "-", "{{D}}{{P}}{{CUE_NUM}}. {{CUE_TITLE}}.opus")),
+            "{{D}}{{P}}{{CUE_NUM}}. {{CUE_TITLE}}.opus");
+
+        assertThat(template.getText()).isEqualTo("ffmpeg -i \"{{F}}\" \"{{CUE_METADATA}}\" -f wav - "
+            + "| opusenc - \"{{D}}{{P}}{{CUE_NUM}}. {{CUE_TITLE}}.opus\"");
+        assertThat(template.renderArgv(this.values)).containsExactly(
+            List.of("ffmpeg", "-i", "c:\\Music\\Album.flac", "-metadata", "TITLE=Say \"Yes\" | No", "-f", "wav", "-"),
+            List.of("opusenc", "-", "c:\\Music\\07. Say \"Yes\" | No.opus"));
+        assertThat(template.renderOutput(this.values)).isEqualTo("c:\\Music\\07. Say \"Yes\" | No.opus");
+        assertThat(CommandTemplate.compile(TEMPLATE).renderOutput(this.values)).isNull();
+    }
+
+    @Test
+    void whenPosixSyntaxThenSingleQuotesAndBackslashEscapesAreApplied() {
+        CommandTemplate template = CommandTemplate.compile("cmd 'it''s' \"a \\\"b\\\" c:\\d\" e\\ f '{{F}}'",
+            Syntax.POSIX);
+
+        assertThat(template.renderArgv(this.values))
+            .containsExactly(List.of("cmd", "its", "a \"b\" c:\\d", "e f", "c:\\Music\\Album.flac"));
+    }
+}
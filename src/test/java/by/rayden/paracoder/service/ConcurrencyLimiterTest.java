@@ -0,0 +1,53 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SuppressWarnings("MagicNumber")
+class ConcurrencyLimiterTest {
+
+    @Test
+    void whenLimitIsLoweredThenNewJobsWaitForRunningOnes() throws Exception {
+        var limiter = new ConcurrencyLimiter(2);
+        limiter.acquire();
+        limiter.acquire();
+
+        limiter.setLimit(1);
+        assertThat(limiter.getRunningCount()).isEqualTo(2);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?> waitingJob = executor.submit(() -> {
+                limiter.acquire();
+                return null;
+            });
+
+            limiter.release();
+            assertThatThrownBy(() -> waitingJob.get(200, TimeUnit.MILLISECONDS))
+                .isInstanceOf(TimeoutException.class);
+
+            limiter.release();
+            waitingJob.get(10, TimeUnit.SECONDS);
+        }
+        assertThat(limiter.getRunningCount()).isEqualTo(1);
+    }
+
+    @Test
+    void whenLimitIsRaisedThenMoreJobsCanRun() throws InterruptedException {
+        var limiter = new ConcurrencyLimiter(1);
+        limiter.acquire();
+
+        limiter.setLimit(3);
+        limiter.acquire();
+        limiter.acquire();
+
+        assertThat(limiter.getRunningCount()).isEqualTo(3);
+        assertThat(limiter.getLimit()).isEqualTo(3);
+    }
+}
@@ -1,6 +1,5 @@
 package by.rayden.paracoder.service;
 
-import org.assertj.core.data.TemporalUnitLessThanOffset;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.function.Executable;
@@ -12,8 +11,6 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.time.LocalTime;
-import java.time.temporal.ChronoUnit;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -101,13 +98,22 @@ class CueHelperTest {
         assertThat(cueTrackPayload.getTotalTracks()).isEqualTo(12);
         assertThat(cueTrackPayload.getAlbum()).isEqualTo("Почувствуй разницу");
 
-        final var inaccuracy = new TemporalUnitLessThanOffset(1, ChronoUnit.MICROS);
-
         // INDEX 01 00:57:57  --->>  57sec 57frames. (75 frames per second)
-        final int nanos = (int) ((57L * 1000_000_000L) / 75L);
-        assertThat(cueTrackPayload.getStartTime()).isCloseTo(LocalTime.of(0, 0, 57, nanos), inaccuracy);
-        // INDEX 01 03:49:00
-        assertThat(cueTrackPayload.getEndTime()).isCloseTo(LocalTime.of(0, 3, 49, 0), inaccuracy);
+        assertThat(cueTrackPayload.getStartTime()).isEqualTo(new CueTime(57 * 75 + 57));
+        // INDEX 01 03:49:00 of the next track
+        assertThat(cueTrackPayload.getEndTime()).isEqualTo(CueTime.ofMsf(3, 49, 0));
+    }
+
+    @Test
+    void getAllCueTracksPayloadList_ShouldEndLastTrackAtEndOfFile() throws IOException {
+        Path sourceFilePath = Paths.get("src/test/resources/cue/CyrillicUTF8.cue");
+        var cueTrackPayloads = this.cueHelper.getAllCueTracksPayloadList(sourceFilePath);
+
+        assertThat(cueTrackPayloads.getLast().getEndTime()).isNull();
+        // The tracks are gapless
+        for (int i = 1; i < cueTrackPayloads.size(); i++) {
+            assertThat(cueTrackPayloads.get(i).getStartTime()).isEqualTo(cueTrackPayloads.get(i - 1).getEndTime());
+        }
     }
 
     @Test
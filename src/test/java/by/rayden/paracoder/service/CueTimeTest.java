@@ -0,0 +1,40 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SuppressWarnings("MagicNumber")
+class CueTimeTest {
+
+    @Test
+    void toSamplesIsExactForCdFrames() {
+        var time = CueTime.ofMsf(3, 49, 1);
+
+        assertThat(time.frames()).isEqualTo((3 * 60 + 49) * 75 + 1);
+        assertThat(time.toSamples(44_100)).isEqualTo(time.frames() * 588);
+        assertThat(time.toSamples(48_000)).isEqualTo(time.frames() * 640);
+        assertThat(time.toSamples(96_000)).isEqualTo(time.frames() * 1280);
+    }
+
+    @Test
+    void toFFMpegTimeIsRoundedToMicros() {
+        // 1 frame = 13333.33 us, 2 frames = 26666.67 us
+        assertThat(CueTime.ofMsf(0, 57, 1).toFFMpegTime()).isEqualTo("00:00:57.013333");
+        assertThat(CueTime.ofMsf(0, 57, 2).toFFMpegTime()).isEqualTo("00:00:57.026667");
+    }
+
+    @Test
+    void toFFMpegTimeIsNotLimitedToOneDay() {
+        var time = CueTime.ofMsf(25 * 60 + 1, 2, 0);
+
+        assertThat(time.toFFMpegTime()).isEqualTo("25:01:02.000000");
+        assertThat(time).hasToString("1501:02:00");
+    }
+
+    @Test
+    void negativeTimeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new CueTime(-1));
+    }
+}
@@ -0,0 +1,57 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class FolderWatcherTest {
+    private static final Duration SETTLE_TIME = Duration.ofMillis(300);
+    private static final Duration TEST_TIMEOUT = Duration.ofSeconds(30);
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void whenNewFilesSettledThenTheyArePassedByDirectory() throws IOException {
+        Files.createFile(this.tempDir.resolve("old.flac"));
+
+        try (var folderWatcher = new FolderWatcher(List.of(this.tempDir), Set.of("flac", "cue"), false,
+            SETTLE_TIME)) {
+
+            Path cueFile = Files.writeString(this.tempDir.resolve("album.cue"), "FILE \"album.flac\" WAVE");
+            Path audioFile = Files.writeString(this.tempDir.resolve("album.flac"), "audio");
+            Files.createFile(this.tempDir.resolve("cover.jpg"));
+
+            Map<Path, List<Path>> settledFiles = assertTimeoutPreemptively(TEST_TIMEOUT,
+                folderWatcher::takeSettledFiles);
+
+            assertThat(settledFiles).containsOnlyKeys(this.tempDir.toAbsolutePath());
+            assertThat(settledFiles.get(this.tempDir.toAbsolutePath()))
+                .containsExactly(audioFile.toAbsolutePath(), cueFile.toAbsolutePath());
+        }
+    }
+
+    @Test
+    void whenRecurseThenFilesOfNewSubdirectoryArePassed() throws IOException {
+        try (var folderWatcher = new FolderWatcher(List.of(this.tempDir), Set.of("flac"), true, SETTLE_TIME)) {
+            Path albumDir = Files.createDirectories(this.tempDir.resolve("album").resolve("cd1"));
+            Path audioFile = Files.writeString(albumDir.resolve("01.flac"), "audio");
+
+            Map<Path, List<Path>> settledFiles = assertTimeoutPreemptively(TEST_TIMEOUT,
+                folderWatcher::takeSettledFiles);
+
+            assertThat(settledFiles).containsOnlyKeys(albumDir.toAbsolutePath());
+            assertThat(settledFiles.get(albumDir.toAbsolutePath())).containsExactly(audioFile.toAbsolutePath());
+        }
+    }
+}
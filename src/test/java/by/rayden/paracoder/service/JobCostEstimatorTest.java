@@ -0,0 +1,75 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.lang.Nullable;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings("MagicNumber")
+class JobCostEstimatorTest {
+    private final JobCostEstimator jobCostEstimator = new JobCostEstimator();
+
+    @Test
+    void whenSameSizeThenCompressedFormatCostsMore() {
+        double wavCost = this.jobCostEstimator.estimateCost(createJob("a.wav", 100_000_000L, null));
+        double flacCost = this.jobCostEstimator.estimateCost(createJob("a.flac", 100_000_000L, null));
+        double apeCost = this.jobCostEstimator.estimateCost(createJob("a.ape", 100_000_000L, null));
+
+        assertThat(flacCost).isGreaterThan(wavCost);
+        assertThat(apeCost).isGreaterThan(flacCost);
+    }
+
+    @Test
+    void whenBiggerFileThenCostsMore() {
+        double smallCost = this.jobCostEstimator.estimateCost(createJob("a.flac", 10_000_000L, null));
+        double bigCost = this.jobCostEstimator.estimateCost(createJob("b.WAV", 2_000_000_000L, null));
+
+        assertThat(bigCost).isGreaterThan(smallCost);
+    }
+
+    @Test
+    void whenCueTrackThenCostDependsOnTrackDuration() {
+        // About 10 minutes of CD audio in WAV
+        long audioFileSize = 10 * 60 * 176_400L;
+
+        var shortTrack = createTrack(CueTime.ofMsf(0, 0, 0), CueTime.ofMsf(1, 0, 0));
+        var longTrack = createTrack(CueTime.ofMsf(1, 0, 0), CueTime.ofMsf(6, 0, 0));
+        var lastTrack = createTrack(CueTime.ofMsf(6, 0, 0), null);
+
+        double shortCost = this.jobCostEstimator.estimateCost(createJob("a.wav", audioFileSize, shortTrack));
+        double longCost = this.jobCostEstimator.estimateCost(createJob("a.wav", audioFileSize, longTrack));
+        double lastCost = this.jobCostEstimator.estimateCost(createJob("a.wav", audioFileSize, lastTrack));
+
+        assertThat(longCost).isGreaterThan(lastCost);
+        assertThat(lastCost).isGreaterThan(shortCost);
+        assertThat(lastCost).isLessThan(this.jobCostEstimator.estimateCost(createJob("a.wav", audioFileSize, null)));
+    }
+
+    @Test
+    void whenLossyFormatThenAudioIsNotShorterThanItsLowBitrate() {
+        // 10 minutes of 128 kbps audio
+        long audioFileSize = 10 * 60 * 16_000L;
+
+        double mp3Seconds = this.jobCostEstimator.estimateAudioSeconds(createJob("a.mp3", audioFileSize, null));
+        double opusSeconds = this.jobCostEstimator.estimateAudioSeconds(createJob("a.opus", audioFileSize, null));
+        double flacSeconds = this.jobCostEstimator.estimateAudioSeconds(createJob("a.flac", audioFileSize, null));
+
+        assertThat(mp3Seconds).isGreaterThanOrEqualTo(10 * 60);
+        assertThat(opusSeconds).isGreaterThanOrEqualTo(mp3Seconds);
+        assertThat(flacSeconds).isLessThan(mp3Seconds);
+    }
+
+    private CueTrackPayload createTrack(CueTime startTime, @Nullable CueTime endTime) {
+        return CueTrackPayload.builder().startTime(startTime).endTime(endTime).build();
+    }
+
+    private RecodeJob createJob(String audioFileName, long audioFileSize, CueTrackPayload trackPayload) {
+        return RecodeJob.builder()
+                        .audioFilePath(Path.of(audioFileName))
+                        .audioFileSize(audioFileSize)
+                        .cueTrackPayload(trackPayload)
+                        .build();
+    }
+}
@@ -0,0 +1,50 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JobOutputLogTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void tailHasOnlyLastLines() throws IOException {
+        try (var outputLog = JobOutputLog.create(this.tempDir, Path.of("a.opus"), false)) {
+            assertThat(outputLog.readTail()).isEmpty();
+
+            String output = IntStream.rangeClosed(1, 100)
+                                     .mapToObj(i -> "line " + i)
+                                     .collect(Collectors.joining("\n", "", "\n"));
+            Files.writeString(outputLog.getLogFile(), output);
+
+            assertThat(outputLog.readTail()).hasSize(JobOutputLog.TAIL_LINES)
+                                            .startsWith("line 81")
+                                            .endsWith("line 100");
+        }
+    }
+
+    @Test
+    void whenLogIsNotKeptThenItIsDeletedOnClose() throws IOException {
+        Path keptLogFile;
+        try (var keptLog = JobOutputLog.create(this.tempDir, Path.of("a.opus"), true)) {
+            keptLogFile = keptLog.getLogFile();
+        }
+        Path logFile;
+        try (var outputLog = JobOutputLog.create(this.tempDir, Path.of("dir", "a.opus"), false)) {
+            logFile = outputLog.getLogFile();
+            assertThat(logFile).exists().isNotEqualTo(keptLogFile);
+        }
+
+        assertThat(keptLogFile).exists();
+        assertThat(logFile).doesNotExist();
+    }
+}
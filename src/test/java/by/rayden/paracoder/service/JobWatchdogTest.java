@@ -0,0 +1,53 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings("MagicNumber")
+class JobWatchdogTest {
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void whenNoProgressForStallTimeoutThenJobIsKilled() {
+        var watchdog = new JobWatchdog(60, 30, List.of(this.tempDir.resolve("out.opus")), 0);
+
+        assertThat(watchdog.check(SECOND_NANOS, 10 * SECOND_NANOS)).isNull();
+        assertThat(watchdog.check(SECOND_NANOS, 39 * SECOND_NANOS)).isNull();
+        assertThat(watchdog.check(SECOND_NANOS, 40 * SECOND_NANOS)).contains("no progress for 30 s");
+    }
+
+    @Test
+    void whenOutputFileGrowsThenJobIsNotStalled() throws Exception {
+        Path outputFile = this.tempDir.resolve("out.opus");
+        var watchdog = new JobWatchdog(60, 30, List.of(outputFile), 0);
+
+        Files.write(outputFile, new byte[10]);
+        assertThat(watchdog.check(0, 25 * SECOND_NANOS)).isNull();
+        Files.write(outputFile, new byte[20]);
+        assertThat(watchdog.check(0, 50 * SECOND_NANOS)).isNull();
+        assertThat(watchdog.check(0, 80 * SECOND_NANOS)).isNotNull();
+    }
+
+    @Test
+    void deadlineIsScaledFromAudioDuration() {
+        long shortDeadlineNanos = JobWatchdog.getDeadlineNanos(0);
+        long longDeadlineNanos = JobWatchdog.getDeadlineNanos(TimeUnit.HOURS.toSeconds(3));
+
+        assertThat(shortDeadlineNanos).isEqualTo(TimeUnit.SECONDS.toNanos(JobWatchdog.MIN_DEADLINE_SECONDS));
+        assertThat(longDeadlineNanos).isGreaterThan(TimeUnit.HOURS.toNanos(6));
+
+        var watchdog = new JobWatchdog(TimeUnit.HOURS.toSeconds(3), JobWatchdog.NO_STALL_TIMEOUT, List.of(), 0);
+        assertThat(watchdog.check(0, TimeUnit.HOURS.toNanos(5))).isNull();
+        assertThat(watchdog.check(0, longDeadlineNanos)).contains("has not finished");
+    }
+}
@@ -0,0 +1,52 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LastModifiedTimeCacheTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void getLastModifiedTime_ShouldReturnCachedTime() throws IOException {
+        Path file = Files.writeString(this.tempDir.resolve("a.wav"), "a");
+        FileTime fileTime = FileTime.fromMillis(1_000_000_000L);
+        Files.setLastModifiedTime(file, fileTime);
+        var cache = new LastModifiedTimeCache();
+
+        assertThat(cache.getLastModifiedTime(file)).isEqualTo(fileTime);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(2_000_000_000L));
+
+        assertThat(cache.getLastModifiedTime(file)).isEqualTo(fileTime);
+    }
+
+    @Test
+    void getLastModifiedTime_ShouldEvictLeastRecentlyUsed() throws IOException {
+        Path fileA = Files.writeString(this.tempDir.resolve("a.wav"), "a");
+        Path fileB = Files.writeString(this.tempDir.resolve("b.wav"), "b");
+        Path fileC = Files.writeString(this.tempDir.resolve("c.wav"), "c");
+        var cache = new LastModifiedTimeCache(2);
+
+        cache.getLastModifiedTime(fileA);
+        cache.getLastModifiedTime(fileB);
+        cache.getLastModifiedTime(fileA);
+        cache.getLastModifiedTime(fileC);
+        assertThat(cache.size()).isEqualTo(2);
+
+        // "b" has been evicted, so its new time is read
+        FileTime newTime = FileTime.fromMillis(2_000_000_000L);
+        Files.setLastModifiedTime(fileB, newTime);
+        Files.setLastModifiedTime(fileA, newTime);
+
+        assertThat(cache.getLastModifiedTime(fileA)).isNotEqualTo(newTime);
+        assertThat(cache.getLastModifiedTime(fileB)).isEqualTo(newTime);
+    }
+}
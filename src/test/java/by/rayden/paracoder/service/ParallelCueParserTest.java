@@ -0,0 +1,59 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelCueParserTest {
+    private static final Path VALID_CUE = Path.of("src/test/resources/cue/CyrillicUTF8.cue");
+    private static final Path NO_TITLE_CUE = Path.of("src/test/resources/cue/Invalid Format No Title.cue");
+    private static final Path NOT_EXISTS_CUE = Path.of("src/test/resources/cue/FileNotExistName.cue");
+
+    private final LastModifiedTimeCache lastModifiedTimeCache = new LastModifiedTimeCache();
+    private final ParallelCueParser cueParser = new ParallelCueParser(new CueHelper(), this.lastModifiedTimeCache);
+
+    @Test
+    void parse_ShouldPassEachCueFileWithItsTracksOrError() throws InterruptedException {
+        List<ParallelCueParser.ParsedCueFile> parsedCueFiles = new ArrayList<>();
+
+        this.cueParser.parse(List.of(VALID_CUE, NO_TITLE_CUE, NOT_EXISTS_CUE), parsedCueFiles::add);
+
+        Map<Path, ParallelCueParser.ParsedCueFile> byPath = parsedCueFiles
+            .stream()
+            .collect(Collectors.toMap(ParallelCueParser.ParsedCueFile::cueFilePath, Function.identity()));
+        assertThat(byPath).containsOnlyKeys(VALID_CUE, NO_TITLE_CUE, NOT_EXISTS_CUE);
+
+        var valid = byPath.get(VALID_CUE);
+        assertThat(valid.error()).isNull();
+        assertThat(valid.cueSheet()).isNotNull();
+        assertThat(valid.trackPayloads()).hasSize(12);
+        // All the tracks share one audio file
+        assertThat(this.lastModifiedTimeCache.size()).isEqualTo(1);
+
+        var noTitle = byPath.get(NO_TITLE_CUE);
+        assertThat(noTitle.cueSheet()).isNotNull();
+        assertThat(noTitle.trackPayloads()).isEmpty();
+        assertThat(noTitle.error()).hasMessage("The source CUE file has an invalid format. No TRACK TITLE.");
+
+        var notExists = byPath.get(NOT_EXISTS_CUE);
+        assertThat(notExists.cueSheet()).isNull();
+        assertThat(notExists.error()).isInstanceOf(NoSuchFileException.class);
+    }
+
+    @Test
+    void parse_ShouldParseSingleCueFileInCallerThread() throws InterruptedException {
+        List<Thread> consumerThreads = new ArrayList<>();
+
+        this.cueParser.parse(List.of(VALID_CUE), _ -> consumerThreads.add(Thread.currentThread()));
+
+        assertThat(consumerThreads).containsExactly(Thread.currentThread());
+    }
+}
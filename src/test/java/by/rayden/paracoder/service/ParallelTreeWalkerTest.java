@@ -0,0 +1,123 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelTreeWalkerTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void whenRecursiveThenMatchingFilesAndTheirDirsAreCollected() throws IOException {
+        Path dir1 = Files.createDirectories(this.tempDir.resolve("dir1"));
+        Path dir11 = Files.createDirectories(dir1.resolve("dir11"));
+        Path emptyDir = Files.createDirectories(this.tempDir.resolve("empty"));
+        Path file11 = Files.createFile(dir1.resolve("b.flac"));
+        Path file12 = Files.createFile(dir1.resolve("a.FLAC"));
+        Path file111 = Files.createFile(dir11.resolve("c.wav"));
+        Files.createFile(emptyDir.resolve("cover.jpg"));
+
+        List<Map<Path, BasicFileAttributes>> dirFilesList = new ArrayList<>();
+        var treeWalker = new ParallelTreeWalker(Set.of("flac", "wav"), Integer.MAX_VALUE, dirFilesList::add);
+        Map<Path, BasicFileAttributes> pathTree = treeWalker.walk(List.of(this.tempDir));
+
+        assertThat(pathTree).containsOnlyKeys(dir1, dir11, file11, file12, file111);
+        assertThat(dirFilesList).hasSize(2);
+        assertThat(dirFilesList)
+            .anySatisfy(dirFiles -> assertThat(dirFiles.keySet()).containsExactly(file12, file11))
+            .anySatisfy(dirFiles -> assertThat(dirFiles.keySet()).containsExactly(file111));
+    }
+
+    @Test
+    void whenTreeIsWalkedThenFilesAreSameAsOfSequentialWalker() throws IOException {
+        Set<String> extensions = Set.of("flac", "cue");
+        for (int artist = 0; artist < 5; artist++) {
+            for (int album = 0; album < 4; album++) {
+                Path albumDir = Files.createDirectories(
+                    this.tempDir.resolve("artist" + artist).resolve("album" + album));
+                for (int track = 0; track < 6; track++) {
+                    // Every other file doesn't match, so the filter is checked too
+                    Files.createFile(albumDir.resolve(track + ((track % 2 == 0) ? ".flac" : ".log")));
+                }
+            }
+        }
+
+        var fileVisitor = new CollectToMapFileVisitor(extensions);
+        Files.walkFileTree(this.tempDir, Set.<FileVisitOption>of(), Integer.MAX_VALUE, fileVisitor);
+        Map<Path, BasicFileAttributes> parallelTree =
+            new ParallelTreeWalker(extensions, Integer.MAX_VALUE, null).walk(List.of(this.tempDir));
+
+        assertThat(getFiles(parallelTree)).hasSize(60).isEqualTo(getFiles(fileVisitor.getPathTree()));
+    }
+
+    @Test
+    void whenConsumerLagsThenAllDirsArePassedToIt() throws IOException {
+        // More directories than the queue of the walked directories holds
+        for (int album = 0; album < 100; album++) {
+            Files.createFile(Files.createDirectories(this.tempDir.resolve("album" + album)).resolve("1.flac"));
+        }
+
+        List<Map<Path, BasicFileAttributes>> dirFilesList = new ArrayList<>();
+        var treeWalker = new ParallelTreeWalker(Set.of("flac"), Integer.MAX_VALUE, dirFiles -> {
+            if (dirFilesList.isEmpty()) {
+                sleep(200);
+            }
+            dirFilesList.add(dirFiles);
+        });
+        treeWalker.walk(List.of(this.tempDir));
+
+        assertThat(dirFilesList).hasSize(100);
+    }
+
+    @Test
+    void whenNotRecursiveThenSubdirectoriesAreSkipped() throws IOException {
+        Path dir1 = Files.createDirectories(this.tempDir.resolve("dir1"));
+        Path file = Files.createFile(this.tempDir.resolve("a.flac"));
+        Files.createFile(dir1.resolve("b.flac"));
+
+        var treeWalker = new ParallelTreeWalker(Set.of("flac"), 1, null);
+
+        assertThat(treeWalker.walk(List.of(this.tempDir))).containsOnlyKeys(this.tempDir, file);
+    }
+
+    @Test
+    void whenInputIsFileThenItAndItsDirAreCollected() throws IOException {
+        Path file = Files.createFile(this.tempDir.resolve("a.flac"));
+
+        List<Map<Path, BasicFileAttributes>> dirFilesList = new ArrayList<>();
+        var treeWalker = new ParallelTreeWalker(Set.of("flac"), Integer.MAX_VALUE, dirFilesList::add);
+
+        assertThat(treeWalker.walk(List.of(file))).containsOnlyKeys(file, this.tempDir);
+        assertThat(dirFilesList).hasSize(1);
+        assertThat(dirFilesList.getFirst()).containsOnlyKeys(file);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Set<Path> getFiles(Map<Path, BasicFileAttributes> pathTree) {
+        return pathTree.entrySet().stream()
+                       .filter(entry -> entry.getValue().isRegularFile())
+                       .map(Map.Entry::getKey)
+                       .collect(Collectors.toSet());
+    }
+}
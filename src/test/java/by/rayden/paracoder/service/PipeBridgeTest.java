@@ -0,0 +1,35 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings("MagicNumber")
+class PipeBridgeTest {
+
+    @Test
+    void whenSourceEndsThenAllDataIsWrittenToEverySink() throws InterruptedException {
+        // Several buffers long and not a multiple of the buffer size
+        byte[] data = new byte[DirectBufferPool.BUFFER_SIZE * 3 + 12345];
+        new Random(42).nextBytes(data);
+        var sink1 = new ByteArrayOutputStream();
+        var sink2 = new ByteArrayOutputStream();
+
+        var pipeBridge = new PipeBridge("test-pipe", new DirectBufferPool(),
+            Channels.newChannel(new ByteArrayInputStream(data)),
+            List.of(Channels.newChannel(sink1), Channels.newChannel(sink2)));
+        pipeBridge.start();
+
+        assertThat(pipeBridge.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(pipeBridge.getTransferredBytes()).isEqualTo(data.length);
+        assertThat(sink1.toByteArray()).isEqualTo(data);
+        assertThat(sink2.toByteArray()).isEqualTo(data);
+    }
+}
@@ -1,5 +1,6 @@
 package by.rayden.paracoder.service;
 
+import by.rayden.paracoder.cli.command.CommandController;
 import by.rayden.paracoder.win32native.OsNative;
 import by.rayden.paracoder.win32native.OsNativeWindowsImpl;
 import lombok.SneakyThrows;
@@ -111,7 +112,8 @@ class ProcessRunnerTest {
     void testProcessFactoryWithoutPiping() throws Exception {
         RecoderThreadPool recoderThreadPool = mock(RecoderThreadPool.class);
         OsNative osNative = new OsNativeWindowsImpl();
-        ProcessRunner processRunner = new ProcessRunner(recoderThreadPool, osNative);
+        ProcessRunner processRunner = new ProcessRunner(recoderThreadPool, osNative, mock(CommandController.class),
+            new DirectBufferPool());
 
         Process process = processRunner.runProcessWithoutRedirect("src\\test\\resources\\ShowArgs.exe p1 p2");
         ProcessResult res = execCapturedProcess(process);
@@ -130,7 +132,8 @@ class ProcessRunnerTest {
     void testProcessFactoryWithPiping() throws Exception {
         RecoderThreadPool recoderThreadPool = mock(RecoderThreadPool.class);
         OsNative osNative = new OsNativeWindowsImpl();
-        ProcessRunner processRunner = new ProcessRunner(recoderThreadPool, osNative);
+        ProcessRunner processRunner = new ProcessRunner(recoderThreadPool, osNative, mock(CommandController.class),
+            new DirectBufferPool());
 
         Process process = processRunner
             .runProcessWithoutRedirect("src\\test\\resources\\ShowArgs.exe p1 \"p2 3\" | more.com /C");
@@ -150,7 +153,8 @@ class ProcessRunnerTest {
     void testProcessFactoryWithPipingAndUnicodeParam() throws Exception {
         RecoderThreadPool recoderThreadPool = mock(RecoderThreadPool.class);
         OsNative osNative = new OsNativeWindowsImpl();
-        ProcessRunner processRunner = new ProcessRunner(recoderThreadPool, osNative);
+        ProcessRunner processRunner = new ProcessRunner(recoderThreadPool, osNative, mock(CommandController.class),
+            new DirectBufferPool());
         String unicodeFileName = "ბენდი sløwed L‘ÂME фыва 💃🕺🎼.flac";
 
         Process process = processRunner.runProcessWithoutRedirect("src\\test\\resources\\ShowArgs.exe p1 \""
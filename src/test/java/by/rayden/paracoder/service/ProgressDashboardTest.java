@@ -0,0 +1,52 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProgressDashboardTest {
+
+    @Test
+    void viewHasActiveJobsAndTotals() {
+        var dashboard = new ProgressDashboard();
+        RecodeJob job1 = makeJob("a.opus");
+        RecodeJob job2 = makeJob("b.opus");
+        RecodeJob job3 = makeJob("c.opus");
+
+        dashboard.jobSubmitted(job1, 100);
+        dashboard.jobSubmitted(job2, 100);
+        dashboard.jobSubmitted(job3, 100);
+        dashboard.jobStarted(job1);
+        dashboard.jobStarted(job2);
+        dashboard.jobCompleted(job1, 100, false);
+        dashboard.jobCompleted(job3, 100, true);
+
+        List<String> lines = dashboard.render();
+
+        assertThat(lines).hasSize(2);
+        assertThat(lines.getFirst()).contains(Thread.currentThread().getName(), "b.opus");
+        assertThat(lines.getLast()).contains("Jobs: 2/3", "1 failed");
+    }
+
+    @Test
+    void longFileNameIsCut() {
+        var dashboard = new ProgressDashboard();
+        RecodeJob job = makeJob("x".repeat(ProgressDashboard.MAX_FILE_NAME_LENGTH * 2) + ".opus");
+
+        dashboard.jobSubmitted(job, 100);
+        dashboard.jobStarted(job);
+
+        String cutFileName = "x".repeat(ProgressDashboard.MAX_FILE_NAME_LENGTH - 1) + "…";
+        assertThat(dashboard.render().getFirst()).contains(cutFileName).doesNotContain(".opus");
+    }
+
+    private static RecodeJob makeJob(String targetFileName) {
+        return RecodeJob.builder()
+                        .sourceFilePath(Path.of("a.flac"))
+                        .targetFilePath(Path.of(targetFileName))
+                        .build();
+    }
+}
@@ -0,0 +1,59 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RecodeCacheTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Mock
+    private RecodeCommand recodeCommand;
+
+    @Test
+    void whenIdenticalSourceIsRecodedThenTargetIsRestoredFromCache() throws IOException {
+        when(this.recodeCommand.getCacheKeyCommand(any())).thenReturn("opusenc \"{{F}}\" \"{{D}}{{P}}{{N}}.opus\"");
+        var recodeCache = new RecodeCache(this.tempDir.resolve("cache"), this.recodeCommand,
+            new DirectBufferPool());
+
+        RecodeJob job1 = createJob("dir1", "audio content", "encoded content");
+        assertThat(recodeCache.restore(job1, job1.getAudioFilePath())).isFalse();
+        recodeCache.store(job1, job1.getAudioFilePath());
+
+        RecodeJob job2 = createJob("dir2", "audio content", null);
+        assertThat(recodeCache.restore(job2, job2.getAudioFilePath())).isTrue();
+        assertThat(job2.getTargetFilePath()).hasContent("encoded content");
+
+        RecodeJob job3 = createJob("dir3", "other audio content", null);
+        assertThat(recodeCache.restore(job3, job3.getAudioFilePath())).isFalse();
+        assertThat(job3.getTargetFilePath()).doesNotExist();
+    }
+
+    private RecodeJob createJob(String dirName, String audioContent, String targetContent) throws IOException {
+        Path dir = Files.createDirectories(this.tempDir.resolve(dirName));
+        Path audioFile = Files.writeString(dir.resolve("track.flac"), audioContent);
+        Path targetFile = dir.resolve("track.opus");
+        if (targetContent != null) {
+            Files.writeString(targetFile, targetContent);
+        }
+
+        return RecodeJob.builder()
+                        .sourceFilePath(audioFile)
+                        .audioFilePath(audioFile)
+                        .targetFilePath(targetFile)
+                        .build();
+    }
+}
@@ -1,11 +1,19 @@
 package by.rayden.paracoder.service;
 
+import by.rayden.paracoder.config.PatternProperties;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.lang.Nullable;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 
 @ExtendWith(MockitoExtension.class)
@@ -45,4 +53,141 @@ class RecodeCommandTest {
             )
             .doesNotContain("DISCID", "DISCNUMBER", "GENRE");
     }
+
+    @Test
+    void whenTeeTemplateThenDecoderAndEncoderCommandsAreResolved() {
+        var teeTemplate = new PatternProperties.TeeTemplate();
+        teeTemplate.setDecoder("ffmpeg -i \"{{F}}\" -f flac -");
+        teeTemplate.setEncoders(List.of("opusenc - \"{{D}}{{P}}{{N}}.opus\"", "lame - \"{{D}}{{P}}{{N}}.mp3\""));
+
+        var patternProperties = new PatternProperties();
+        patternProperties.setCommandTemplate(Map.of("any", "opusenc \"{{F}}\" \"{{D}}{{P}}{{N}}.opus\""));
+        patternProperties.setTeeTemplate(Map.of("flac", teeTemplate));
+        var command = new RecodeCommand(patternProperties);
+
+        Path flacFile = Path.of("/music/album/track.flac");
+        assertThat(command.getCommand(flacFile)).isEqualTo("ffmpeg -i \"" + flacFile + "\" -f flac -");
+        assertThat(command.getTeeCommands(flacFile)).containsExactly(
+            "opusenc - \"" + flacFile.toString().replace("flac", "opus") + "\"",
+            "lame - \"" + flacFile.toString().replace("flac", "mp3") + "\"");
+
+        Path wavFile = Path.of("/music/album/track.wav");
+        assertThat(command.getCommand(wavFile)).startsWith("opusenc ");
+        assertThat(command.getTeeCommands(wavFile)).isEmpty();
+    }
+
+    @SuppressWarnings("MagicNumber")
+    @Test
+    void whenCueTrackResolvedThenArgvHasUnquotedMetadataArgs() {
+        var patternProperties = new PatternProperties();
+        patternProperties.setCommandTemplate(Map.of("cue_any",
+            "ffmpeg -i \"{{F}}\" -ss {{CUE_ST}} {{CUE_TO}} {{CUE_METADATA}}"
+                + " \"{{D}}{{P}}{{CUE_NUM}}. {{CUE_TITLE}}.opus\""));
+        var command = new RecodeCommand(patternProperties);
+
+        Path audioFile = Path.of("album.flac");
+        var trackPayload = CueTrackPayload
+            .builder()
+            .trackNumber(3)
+            .totalTracks(11)
+            .title("Say \"Yes\" | No")
+            .performer("Performer")
+            .startTime(CueTime.ofMsf(1, 2, 30))
+            .endTime(CueTime.ofMsf(4, 5, 0))
+            .audioFilePath(audioFile)
+            .sourceFilePath(Path.of("album.cue"))
+            .audioFileTime(FileTime.fromMillis(0))
+            .build();
+
+        ResolvedCommand resolvedCommand = command.resolveCommand(trackPayload);
+
+        assertThat(resolvedCommand.text()).isEqualTo(command.getCommand(trackPayload));
+        assertThat(resolvedCommand.argv()).containsExactly(List.of("ffmpeg", "-i", audioFile.toString(),
+            "-ss", "00:01:02.400000", "-to", "00:04:05.000000",
+            "-metadata", "ARTIST=Performer", "-metadata", "TITLE=Say \"Yes\" | No",
+            "-metadata", "TRACK=03", "-metadata", "TOTALTRACKS=11",
+            "03. Say ″Yes″ ￨ No.opus"));
+    }
+
+    @Test
+    void whenArgvTemplateThenItTakesPrecedenceOverCommandTemplate() {
+        var argvTemplate = new PatternProperties.ArgvTemplate();
+        argvTemplate.setStages(List.of(List.of("opusenc", "{{F}}", "{{D}}{{P}}{{N}}.opus")));
+        argvTemplate.setOutput("{{D}}{{P}}{{N}}.opus");
+
+        var patternProperties = new PatternProperties();
+        patternProperties.setCommandTemplate(Map.of("flac", "flac2opus \"{{F}}\" \"{{D}}{{P}}{{N}}.opus\""));
+        patternProperties.setArgvTemplate(Map.of("flac", argvTemplate));
+        var command = new RecodeCommand(patternProperties);
+
+        Path flacFile = Path.of("/music/album/track (live).flac");
+        String opusFile = flacFile.toString().replace("flac", "opus");
+        ResolvedCommand resolvedCommand = command.resolveCommand(flacFile);
+
+        assertThat(resolvedCommand.argv()).containsExactly(List.of("opusenc", flacFile.toString(), opusFile));
+        assertThat(resolvedCommand.output()).isEqualTo(opusFile);
+        assertThat(command.getCommandTemplates(flacFile))
+            .containsExactly("opusenc \"{{F}}\" \"{{D}}{{P}}{{N}}.opus\"");
+    }
+
+    @Test
+    void whenTemplateIsInvalidThenCommandIsNotCreated() {
+        var argvTemplate = new PatternProperties.ArgvTemplate();
+        argvTemplate.setStages(List.of(List.of("flac", "-d", "{{F}}"), List.of()));
+
+        var patternProperties = new PatternProperties();
+        patternProperties.setCommandTemplate(Map.of("any", "opusenc \"{{F}}\" \"{{D}}{{P}}{{N}}.opus\""));
+        patternProperties.setArgvTemplate(Map.of("flac", argvTemplate));
+
+        assertThatThrownBy(() -> new RecodeCommand(patternProperties))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("\"flac\"");
+    }
+
+    @SuppressWarnings("MagicNumber")
+    @Test
+    void whenCueSplitTemplateThenAllTracksAreWrittenByOneCommand() {
+        var splitTemplate = new PatternProperties.CueSplitTemplate();
+        splitTemplate.setInput("ffmpeg -i \"{{F}}\"");
+        splitTemplate.setOutput("-ss {{CUE_ST}} {{CUE_TO}} \"{{D}}{{P}}{{CUE_NUM}}. {{CUE_TITLE}}.opus\"");
+
+        var patternProperties = new PatternProperties();
+        patternProperties.setCommandTemplate(Map.of("cue_any", "ffmpeg -i \"{{F}}\" \"{{D}}{{P}}{{CUE_NUM}}.opus\""));
+        patternProperties.setCueSplitTemplate(Map.of("cue_flac", splitTemplate));
+        var command = new RecodeCommand(patternProperties);
+
+        Path audioFile = Path.of("album.flac");
+        List<CueTrackPayload> trackPayloads = List.of(
+            makeTrackPayload(audioFile, 1, "One", CueTime.ofMsf(0, 0, 0), CueTime.ofMsf(3, 10, 0)),
+            makeTrackPayload(audioFile, 2, "Two", CueTime.ofMsf(3, 10, 0), null));
+
+        assertThat(command.hasCueSplitTemplate(audioFile)).isTrue();
+        assertThat(command.hasCueSplitTemplate(Path.of("album.ape"))).isFalse();
+
+        ResolvedCommand splitCommand = command.resolveCueSplitCommand(trackPayloads);
+        assertThat(splitCommand.argv()).containsExactly(List.of("ffmpeg", "-i", audioFile.toString(),
+            "-ss", "00:00:00.000000", "-to", "00:03:10.000000", "01. One.opus",
+            "-ss", "00:03:10.000000", "02. Two.opus"));
+
+        assertThat(command.resolveCueSplitOutputs(trackPayloads))
+            .extracting(ResolvedCommand::text)
+            .containsExactly("-ss 00:00:00.000000 -to 00:03:10.000000 \"01. One.opus\"",
+                "-ss 00:03:10.000000  \"02. Two.opus\"");
+    }
+
+    private static CueTrackPayload makeTrackPayload(Path audioFile, int trackNumber, String title,
+                                                    CueTime startTime, @Nullable CueTime endTime) {
+        return CueTrackPayload
+            .builder()
+            .trackNumber(trackNumber)
+            .totalTracks(2)
+            .title(title)
+            .performer("Performer")
+            .startTime(startTime)
+            .endTime(endTime)
+            .audioFilePath(audioFile)
+            .sourceFilePath(Path.of("album.cue"))
+            .audioFileTime(FileTime.fromMillis(0))
+            .build();
+    }
 }
@@ -0,0 +1,63 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecodeJournalTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void whenRunIsKilledThenResumeSkipsDoneFilesAndDeletesOrphans() throws IOException {
+        Path doneFile = Files.writeString(this.tempDir.resolve("a.opus"), "done");
+        Path killedFile = this.tempDir.resolve("b.opus");
+        Path killedPartialFile = Files.writeString(AtomicOutput.toPartialPath(killedFile), "half");
+
+        try (var journal = RecodeJournal.open(this.tempDir, false)) {
+            journal.append(RecodeJournal.State.DONE, List.of(doneFile), List.of(AtomicOutput.toPartialPath(doneFile)));
+            journal.append(RecodeJournal.State.RUNNING, List.of(killedFile), List.of(killedPartialFile));
+        }
+
+        assertThat(this.tempDir.resolve(RecodeJournal.JOURNAL_FILE_NAME)).exists();
+        try (var journal = RecodeJournal.open(this.tempDir, true)) {
+            assertThat(killedPartialFile).doesNotExist();
+            assertThat(journal.isDone(List.of(doneFile))).isTrue();
+            assertThat(journal.isDone(List.of(doneFile, killedFile))).isFalse();
+        }
+    }
+
+    @Test
+    void whenNotResumedThenPreviousStatesAreForgotten() throws IOException {
+        Path doneFile = Files.writeString(this.tempDir.resolve("a.opus"), "done");
+        Path failedFile = this.tempDir.resolve("b.opus");
+
+        try (var journal = RecodeJournal.open(this.tempDir, false)) {
+            journal.append(RecodeJournal.State.DONE, List.of(doneFile), List.of(doneFile));
+            journal.append(RecodeJournal.State.FAILED, List.of(failedFile), List.of(failedFile));
+        }
+
+        try (var journal = RecodeJournal.open(this.tempDir, false)) {
+            assertThat(journal.isDone(List.of(doneFile))).isFalse();
+        }
+    }
+
+    @Test
+    void whenAllFilesAreDoneThenJournalIsDeletedOnClose() throws IOException {
+        Path targetFile = Files.writeString(this.tempDir.resolve("a.opus"), "done");
+
+        try (var journal = RecodeJournal.open(this.tempDir, false)) {
+            journal.append(RecodeJournal.State.RUNNING, List.of(targetFile), List.of(targetFile));
+            journal.append(RecodeJournal.State.DONE, List.of(targetFile), List.of(targetFile));
+        }
+
+        assertThat(this.tempDir.resolve(RecodeJournal.JOURNAL_FILE_NAME)).doesNotExist();
+    }
+}
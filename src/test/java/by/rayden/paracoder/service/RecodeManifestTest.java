@@ -0,0 +1,93 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecodeManifestTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void whenFileIsMarkedRecodedThenItIsUpToDateAfterReopen() throws IOException {
+        Path sourceFile = Files.writeString(this.tempDir.resolve("a.flac"), "data");
+        BasicFileAttributes attrs = Files.readAttributes(sourceFile, BasicFileAttributes.class);
+        String templateHash = RecodeManifest.hashTemplates(List.of("opusenc \"{{F}}\""));
+
+        try (var manifest = RecodeManifest.open(this.tempDir)) {
+            assertThat(manifest.isUpToDate(sourceFile, attrs, templateHash)).isFalse();
+            manifest.markRecoded(sourceFile, attrs, templateHash);
+        }
+
+        try (var manifest = RecodeManifest.open(this.tempDir)) {
+            assertThat(manifest.isUpToDate(sourceFile, attrs, templateHash)).isTrue();
+
+            String otherTemplateHash = RecodeManifest.hashTemplates(List.of("ffmpeg -i \"{{F}}\""));
+            assertThat(manifest.isUpToDate(sourceFile, attrs, otherTemplateHash)).isFalse();
+        }
+    }
+
+    @Test
+    void whenFileIsChangedThenItIsNotUpToDate() throws IOException {
+        Path sourceFile = Files.writeString(this.tempDir.resolve("a.flac"), "data");
+        BasicFileAttributes attrs = Files.readAttributes(sourceFile, BasicFileAttributes.class);
+        String templateHash = RecodeManifest.hashTemplates(List.of("opusenc \"{{F}}\""));
+
+        try (var manifest = RecodeManifest.open(this.tempDir)) {
+            manifest.markRecoded(sourceFile, attrs, templateHash);
+        }
+
+        Files.setLastModifiedTime(sourceFile, FileTime.fromMillis(attrs.lastModifiedTime().toMillis() + 2000));
+        BasicFileAttributes changedAttrs = Files.readAttributes(sourceFile, BasicFileAttributes.class);
+
+        try (var manifest = RecodeManifest.open(this.tempDir)) {
+            assertThat(manifest.isUpToDate(sourceFile, changedAttrs, templateHash)).isFalse();
+        }
+    }
+
+    @Test
+    void whenAudioFileOfCueFileIsChangedThenCueFileIsNotUpToDate() throws IOException {
+        Path cueFile = Files.writeString(this.tempDir.resolve("a.cue"), "FILE \"a.flac\" WAVE");
+        Path audioFile = Files.writeString(this.tempDir.resolve("a.flac"), "data");
+        BasicFileAttributes attrs = Files.readAttributes(cueFile, BasicFileAttributes.class);
+        List<String> templates = List.of("opusenc \"{{F}}\"");
+        String templateHash = RecodeManifest.hashTemplates(templates, List.of(audioFile));
+
+        try (var manifest = RecodeManifest.open(this.tempDir)) {
+            manifest.markRecoded(cueFile, attrs, templateHash);
+        }
+
+        Files.writeString(audioFile, "re-ripped data");
+        String changedTemplateHash = RecodeManifest.hashTemplates(templates, List.of(audioFile));
+
+        try (var manifest = RecodeManifest.open(this.tempDir)) {
+            assertThat(manifest.isUpToDate(cueFile, attrs, templateHash)).isTrue();
+            assertThat(manifest.isUpToDate(cueFile, attrs, changedTemplateHash)).isFalse();
+        }
+    }
+
+    @Test
+    void whenManifestHasOverriddenLinesThenItIsCompactedOnClose() throws IOException {
+        Path sourceFile = Files.writeString(this.tempDir.resolve("a.flac"), "data");
+        BasicFileAttributes attrs = Files.readAttributes(sourceFile, BasicFileAttributes.class);
+        String templateHash = RecodeManifest.hashTemplates(List.of("opusenc \"{{F}}\""));
+
+        try (var manifest = RecodeManifest.open(this.tempDir)) {
+            manifest.markRecoded(sourceFile, attrs, templateHash);
+            manifest.markRecoded(sourceFile, attrs, templateHash);
+            manifest.markRecoded(sourceFile, attrs, templateHash);
+        }
+
+        assertThat(this.tempDir.resolve(RecodeManifest.MANIFEST_FILE_NAME)).hasContent(
+            attrs.size() + "\t" + attrs.lastModifiedTime().toMillis() + "\t" + templateHash + "\ta.flac");
+    }
+}
@@ -0,0 +1,53 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings("MagicNumber")
+class RunMetricsTest {
+
+    @Test
+    void testNearestRankPercentiles() {
+        List<JobMetrics> jobs = IntStream.rangeClosed(1, 100)
+                                         .mapToObj(i -> {
+                                             var jobMetrics = new JobMetrics(Path.of(i + ".opus"));
+                                             jobMetrics.setInputBytes(i);
+                                             return jobMetrics;
+                                         })
+                                         .toList();
+
+        double[] percentiles = RunMetrics.getPercentiles(jobs, JobMetrics::getInputBytes);
+
+        assertThat(percentiles).containsExactly(50, 90, 99, 100);
+    }
+
+    @Test
+    void whenJobsAreAddedThenJsonHasSummaryAndJobs() {
+        var runMetrics = new RunMetrics(4);
+
+        var cachedJob = new JobMetrics(Path.of("a.opus"));
+        cachedJob.markStarted();
+        cachedJob.markEnded(true);
+        cachedJob.setExitCode(0);
+        cachedJob.setInputBytes(1000);
+        cachedJob.setOutputBytes(100);
+        runMetrics.add(cachedJob);
+
+        var failedJob = new JobMetrics(Path.of("b.opus"));
+        failedJob.setExitCode(1);
+        runMetrics.add(failedJob);
+
+        String json = runMetrics.toJson();
+
+        assertThat(json)
+            .contains("\"jobCount\": 2,", "\"cachedJobCount\": 1,", "\"failedJobCount\": 1,")
+            .contains("\"inputBytes\": 1000,", "\"outputBytes\": 100,")
+            .contains("{\"target\": \"a.opus\", \"exitCode\": 0, \"fromCache\": true,")
+            .contains("\"realtimeFactor\": {\"p50\": 0.000");
+    }
+}
@@ -0,0 +1,68 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceStagerTest {
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void whenFileIsStagedThenCopyIsSharedAndDeletedOnLastRelease() throws Exception {
+        Path sourceFile = createFile("image.flac", 1000);
+
+        try (var stager = new SourceStager(this.tempDir.resolve("staging"), 10_000)) {
+            Path stagedFile = stager.stage(sourceFile, 1000).get(10, TimeUnit.SECONDS);
+            Path sameStagedFile = stager.stage(sourceFile, 1000).get(10, TimeUnit.SECONDS);
+
+            assertThat(stagedFile).isNotEqualTo(sourceFile).isEqualTo(sameStagedFile);
+            assertThat(Files.readAllBytes(stagedFile)).isEqualTo(Files.readAllBytes(sourceFile));
+
+            stager.release(sourceFile);
+            assertThat(stagedFile).exists();
+            stager.release(sourceFile);
+            assertThat(stagedFile).doesNotExist();
+        }
+    }
+
+    @Test
+    void whenBudgetIsExceededThenNextFileWaitsForRelease() throws Exception {
+        Path firstFile = createFile("1.flac", 600);
+        Path secondFile = createFile("2.flac", 600);
+
+        try (var stager = new SourceStager(this.tempDir.resolve("staging"), 1000)) {
+            stager.stage(firstFile, 600).get(10, TimeUnit.SECONDS);
+            CompletableFuture<Path> secondStaged = stager.stage(secondFile, 600);
+
+            assertThat(secondStaged).isNotDone();
+
+            stager.release(firstFile);
+            assertThat(secondStaged.get(10, TimeUnit.SECONDS)).exists();
+        }
+    }
+
+    @Test
+    void whenCopyFailsThenSourceIsReadInPlace() throws Exception {
+        Path missingFile = this.tempDir.resolve("missing.flac");
+
+        try (var stager = new SourceStager(this.tempDir.resolve("staging"), 1000)) {
+            assertThat(stager.stage(missingFile, 100).get(10, TimeUnit.SECONDS)).isEqualTo(missingFile);
+        }
+    }
+
+    private Path createFile(String fileName, int size) throws IOException {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) i;
+        }
+        return Files.write(this.tempDir.resolve(fileName), content);
+    }
+}
@@ -0,0 +1,60 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StorageConcurrencyLimiterTest {
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void whenDeviceIsBusyThenJobWaitsForPermit() {
+        var limiter = new StorageConcurrencyLimiter(1, StorageConcurrencyLimiter.UNLIMITED);
+
+        CompletableFuture<StorageConcurrencyLimiter.Permits> first =
+            limiter.acquire(this.tempDir.resolve("a.flac"), this.tempDir.resolve("out/a.opus"));
+        CompletableFuture<StorageConcurrencyLimiter.Permits> second =
+            limiter.acquire(this.tempDir.resolve("b.flac"), this.tempDir.resolve("out/b.opus"));
+
+        assertThat(first).isCompleted();
+        assertThat(second).isNotDone();
+
+        first.join().release();
+        assertThat(second).isCompleted();
+    }
+
+    @Test
+    void whenWriteLimitIsReachedThenReadPermitIsHeldUntilWritePermit() {
+        var limiter = new StorageConcurrencyLimiter(2, 1);
+
+        CompletableFuture<StorageConcurrencyLimiter.Permits> first =
+            limiter.acquire(this.tempDir.resolve("a.flac"), this.tempDir.resolve("a.opus"));
+        CompletableFuture<StorageConcurrencyLimiter.Permits> second =
+            limiter.acquire(this.tempDir.resolve("b.flac"), this.tempDir.resolve("b.opus"));
+        CompletableFuture<StorageConcurrencyLimiter.Permits> third =
+            limiter.acquire(this.tempDir.resolve("c.flac"), this.tempDir.resolve("c.opus"));
+
+        assertThat(first).isCompleted();
+        assertThat(second).isNotDone();
+        assertThat(third).isNotDone();
+
+        first.join().release();
+        assertThat(second).isCompleted();
+        assertThat(third).isNotDone();
+    }
+
+    @Test
+    void whenUnlimitedThenPermitsAreGrantedAtOnce() {
+        var limiter = StorageConcurrencyLimiter.unlimited();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limiter.acquire(this.tempDir.resolve(i + ".flac"), this.tempDir.resolve(i + ".opus")))
+                .isCompleted();
+        }
+    }
+}
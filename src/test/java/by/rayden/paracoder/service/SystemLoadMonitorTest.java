@@ -0,0 +1,30 @@
+package by.rayden.paracoder.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings("MagicNumber")
+class SystemLoadMonitorTest {
+
+    @Test
+    void testParseProcStat() {
+        var procStatLines = List.of(
+            "cpu  4705 356 584 3699 23 23 0 0 0 0",
+            "cpu0 1393 280 134 1802 10 8 0 0 0 0",
+            "intr 1462898",
+            "procs_running 3");
+
+        var cpuTimes = SystemLoadMonitor.parseProcStatCpuLine(procStatLines);
+
+        assertThat(cpuTimes.total()).isEqualTo(4705 + 356 + 584 + 3699 + 23 + 23);
+        assertThat(cpuTimes.idle()).isEqualTo(3699 + 23);
+    }
+
+    @Test
+    void testParseProcLoadavg() {
+        assertThat(SystemLoadMonitor.parseProcLoadavgRunnable("0.20 0.18 0.12 5/80 11206\n")).isEqualTo(5);
+    }
+}
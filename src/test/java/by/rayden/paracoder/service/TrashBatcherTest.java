@@ -0,0 +1,100 @@
+package by.rayden.paracoder.service;
+
+import by.rayden.paracoder.win32native.OsNative;
+import com.sun.jna.WString;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrashBatcherTest {
+    @TempDir
+    private Path tempDir;
+
+    /**
+     * Deletes the files, but fails on the batches with the failing file and on the failing file itself.
+     */
+    private static class RecordingOsNative implements OsNative {
+        private final List<List<Path>> calls = new CopyOnWriteArrayList<>();
+        private final Path failingPath;
+
+        RecordingOsNative(Path failingPath) {
+            this.failingPath = failingPath;
+        }
+
+        @Override
+        public String[] getUnicodeCommandLine() {
+            return new String[0];
+        }
+
+        @Override
+        public String[] getCommandLineToArgv(WString lpCmdLine) {
+            return new String[0];
+        }
+
+        @Override
+        public void deleteToTrash(Path... paths) throws IOException {
+            this.calls.add(Arrays.asList(paths));
+            if (Arrays.asList(paths).contains(this.failingPath)) {
+                throw new IOException("Can't delete " + this.failingPath);
+            }
+            for (Path path : paths) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Test
+    void whenFilesRequestedTogetherThenTheyAreDeletedByOneCall() throws Exception {
+        List<Path> files = createFiles(3);
+        var osNative = new RecordingOsNative(this.tempDir.resolve("none"));
+
+        try (var trashBatcher = new TrashBatcher(osNative)) {
+            CompletableFuture.allOf(files.stream().map(trashBatcher::delete).toArray(CompletableFuture[]::new))
+                             .get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(osNative.calls).containsExactly(files);
+        assertThat(files).allSatisfy(file -> assertThat(file).doesNotExist());
+    }
+
+    @Test
+    void whenBatchFailsThenErrorIsReportedPerFile() throws Exception {
+        List<Path> files = createFiles(3);
+        var osNative = new RecordingOsNative(files.get(1));
+
+        CompletableFuture<Void> first;
+        CompletableFuture<Void> second;
+        CompletableFuture<Void> third;
+        try (var trashBatcher = new TrashBatcher(osNative)) {
+            first = trashBatcher.delete(files.get(0));
+            second = trashBatcher.delete(files.get(1));
+            third = trashBatcher.delete(files.get(2));
+            CompletableFuture.allOf(first, second, third).exceptionally(_ -> null).get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(first).isCompleted();
+        assertThat(second).isCompletedExceptionally();
+        assertThat(third).isCompleted();
+        assertThat(osNative.calls).containsExactly(files, List.of(files.get(0)), List.of(files.get(1)),
+            List.of(files.get(2)));
+        assertThat(files.get(1)).exists();
+    }
+
+    private List<Path> createFiles(int count) throws IOException {
+        Path[] files = new Path[count];
+        for (int i = 0; i < count; i++) {
+            files[i] = Files.writeString(this.tempDir.resolve("track" + i + ".flac"), "audio");
+        }
+        return List.of(files);
+    }
+}
@@ -0,0 +1,68 @@
+package by.rayden.paracoder.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsoleRendererTest {
+
+    @Test
+    void whenFlushedThenLinesArePrintedInOrder() {
+        var out = new ByteArrayOutputStream();
+        var err = new ByteArrayOutputStream();
+        var outStream = new PrintStream(out, true, StandardCharsets.UTF_8);
+        var errStream = new PrintStream(err, true, StandardCharsets.UTF_8);
+        var renderer = new ConsoleRenderer(() -> outStream, () -> errStream);
+
+        renderer.print("@|bold first|@", false);
+        renderer.print("error", true);
+        renderer.printPlain("@|not markup|@");
+        renderer.flush();
+
+        List<String> outLines = out.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(outLines).hasSize(2);
+        assertThat(outLines.getFirst()).contains("first").doesNotContain("@|");
+        assertThat(outLines.getLast()).isEqualTo("@|not markup|@");
+        assertThat(err.toString(StandardCharsets.UTF_8).lines()).containsExactly("error");
+    }
+
+    @Test
+    void whenSilentThenLinesAreDropped() {
+        var out = new ByteArrayOutputStream();
+        var outStream = new PrintStream(out, true, StandardCharsets.UTF_8);
+        var renderer = new ConsoleRenderer(() -> outStream, () -> outStream);
+
+        renderer.print("first", false);
+        renderer.setSilent(true);
+        renderer.print("dropped", false);
+        renderer.print("dropped error", true);
+        renderer.setSilent(false);
+        renderer.printPlain("last");
+        renderer.flush();
+
+        assertThat(out.toString(StandardCharsets.UTF_8).lines()).containsExactly("first", "last");
+    }
+
+    @Test
+    void whenStatusIsResetThenItIsErased() {
+        var out = new ByteArrayOutputStream();
+        var outStream = new PrintStream(out, true, StandardCharsets.UTF_8);
+        var renderer = new ConsoleRenderer(() -> outStream, () -> outStream);
+
+        renderer.setStatus(() -> List.of("status 1", "status 2"));
+        renderer.print("line", false);
+        renderer.flush();
+        renderer.setStatus(null);
+        renderer.print("last", false);
+        renderer.flush();
+
+        String output = out.toString(StandardCharsets.UTF_8);
+        assertThat(output).contains("line" + System.lineSeparator() + "status 1" + System.lineSeparator() + "status 2")
+                          .endsWith("\r\u001b[2K\u001b[1A\r\u001b[2Klast" + System.lineSeparator());
+    }
+}
@@ -0,0 +1,49 @@
+package by.rayden.paracoder.win32native;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OsNativeLinuxImplTest {
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void splitShellWordsTest() {
+        assertThat(OsNativeLinuxImpl.splitShellWords("  opusenc --bitrate 192 'a \"b\" c' \"d \\\"e\\\" \\f\" g\\ h  "))
+            .containsExactly("opusenc", "--bitrate", "192", "a \"b\" c", "d \"e\" \\f", "g h");
+        assertThat(OsNativeLinuxImpl.splitShellWords("'' \"\" x''y")).containsExactly("", "", "xy");
+    }
+
+    @Test
+    void encodePathTest() {
+        assertThat(OsNativeLinuxImpl.encodePath(Path.of("/music/Мара/01 #1.flac")))
+            .isEqualTo("/music/%D0%9C%D0%B0%D1%80%D0%B0/01%20%231.flac");
+    }
+
+    @EnabledOnOs(OS.LINUX)
+    @Test
+    void removeFileToTrashTest() throws IOException {
+        Path trashDir = this.tempDir.resolve("Trash");
+        Path first = Files.writeString(Files.createDirectories(this.tempDir.resolve("a")).resolve("track.flac"), "1");
+        Path second = Files.writeString(Files.createDirectories(this.tempDir.resolve("b")).resolve("track.flac"), "2");
+
+        var osNative = new OsNativeLinuxImpl(trashDir);
+        osNative.deleteToTrash(first, second);
+
+        assertThat(first).doesNotExist();
+        assertThat(second).doesNotExist();
+        assertThat(trashDir.resolve("files/track.flac")).hasContent("1");
+        assertThat(trashDir.resolve("files/track.flac.2")).hasContent("2");
+        assertThat(trashDir.resolve("info/track.flac.2.trashinfo"))
+            .content()
+            .startsWith("[Trash Info]\nPath=" + OsNativeLinuxImpl.encodePath(second) + "\nDeletionDate=");
+    }
+}
@@ -1,6 +1,8 @@
 package by.rayden.paracoder.win32native;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -10,6 +12,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 class OsNativeWindowsImplTest {
 
+    @EnabledOnOs(OS.WINDOWS)
     @Test
     void removeFileToTrashTest() throws IOException {
         Path path = Files.createTempFile("paracoder", "test.tmp");